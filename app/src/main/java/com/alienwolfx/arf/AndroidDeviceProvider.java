@@ -0,0 +1,140 @@
+package com.alienwolfx.arf;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Environment;
+import android.os.StatFs;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+
+/** Reads device and resource data from the system services, SIM data from {@link TelephonyModel}. */
+public class AndroidDeviceProvider implements DeviceProvider {
+
+    private final ActivityManager activityManager;
+    private final TelephonyModel telephony;
+
+    public AndroidDeviceProvider(Context context, TelephonyModel telephony) {
+        this.activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        this.telephony = telephony;
+    }
+
+    @Override
+    public void start(final Listener listener) {
+        telephony.start(new TelephonyModel.Listener() {
+            @Override
+            public void onSimChanged() {
+                listener.onSimChanged();
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        telephony.stop();
+    }
+
+    @Override
+    public long getGcCount() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return -1;
+        }
+        String count = Debug.getRuntimeStat("art.gc.gc-count");
+        try {
+            return count != null ? Long.parseLong(count) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public SystemResources getSystemResources() {
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+
+        StatFs stat = new StatFs(Environment.getDataDirectory().getPath());
+        long blockSize = stat.getBlockSizeLong();
+        long totalBlocks = stat.getBlockCountLong();
+        long availableBlocks = stat.getAvailableBlocksLong();
+
+        long totalMemory = memoryInfo.totalMem / (1024 * 1024);
+        long availableMemory = memoryInfo.availMem / (1024 * 1024);
+        long totalStorage = (totalBlocks * blockSize) / (1024 * 1024);
+        long availableStorage = (availableBlocks * blockSize) / (1024 * 1024);
+
+        return new SystemResources(
+            totalMemory,
+            availableMemory,
+            totalStorage,
+            availableStorage
+        );
+    }
+
+    @Override
+    public DeviceInfo getDeviceInfo() {
+        String model = Build.MODEL;
+        String manufacturer = Build.MANUFACTURER;
+        String version = Build.VERSION.RELEASE;
+        String serial = "";
+        
+        // Handle serial number for different API levels
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                serial = Build.SERIAL;
+            } else {
+                serial = Build.SERIAL != null ? Build.SERIAL : "";
+            }
+        } catch (Exception e) {
+            Log.e("MyHttpServer", "Error message", e);
+        }
+        
+        // Identity is read once when the telephony model starts
+        return new DeviceInfo(model, manufacturer, version, serial, telephony.getImei(), telephony.getEsn());
+    }
+
+    @Override
+    public SimInfo getSimInfo() {
+        return telephony.getSimInfo();
+    }
+
+    @Override
+    public LazyFields getDeviceFields() {
+        return new LazyFields()
+            .add("model", () -> Build.MODEL)
+            .add("manufacturer", () -> Build.MANUFACTURER)
+            .add("version", () -> Build.VERSION.RELEASE)
+            .add("serial", () -> Build.SERIAL != null ? Build.SERIAL : "")
+            .add("imei", telephony::getImei)
+            .add("esn", telephony::getEsn);
+    }
+
+    @Override
+    public LazyFields getSimFields() {
+        final SimInfo sim = telephony.getSimInfo();
+        return new LazyFields()
+            .add("carrierName", sim::getCarrierName)
+            .add("countryIso", sim::getCountryIso)
+            .add("simOperator", sim::getSimOperator)
+            .add("simState", sim::getSimState)
+            .add("simSerialNumber", sim::getSimSerialNumber);
+    }
+
+    @Override
+    public LazyFields getResourceFields() {
+        // One binder call covers both memory fields, one statfs both storage fields
+        final Callable<ActivityManager.MemoryInfo> memory = LazyFields.once(() -> {
+            ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+            activityManager.getMemoryInfo(memoryInfo);
+            return memoryInfo;
+        });
+        final Callable<StatFs> storage = LazyFields.once(() -> new StatFs(Environment.getDataDirectory().getPath()));
+        return new LazyFields()
+            .add("totalMemory", () -> memory.call().totalMem / (1024 * 1024))
+            .add("availableMemory", () -> memory.call().availMem / (1024 * 1024))
+            .add("totalStorage", () -> storage.call().getBlockCountLong() * storage.call().getBlockSizeLong() / (1024 * 1024))
+            .add("availableStorage",
+                () -> storage.call().getAvailableBlocksLong() * storage.call().getBlockSizeLong() / (1024 * 1024));
+    }
+}
@@ -0,0 +1,87 @@
+package com.alienwolfx.arf;
+
+import android.net.TrafficStats;
+
+import java.util.List;
+
+/**
+ * Combines the traffic counters with the cached link state from {@link LinkStateModel} and
+ * the radio state from {@link TelephonyModel}; nothing here blocks on a system service.
+ */
+public class AndroidNetworkProvider implements NetworkProvider {
+
+    private final TelephonyModel telephony;
+    private final LinkStateModel link;
+
+    public AndroidNetworkProvider(TelephonyModel telephony, LinkStateModel link) {
+        this.telephony = telephony;
+        this.link = link;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        link.start(listener);
+    }
+
+    @Override
+    public void stop() {
+        link.stop();
+    }
+
+    @Override
+    public NetworkStats getNetworkStats() {
+        // Get traffic statistics
+        long mobileRxBytes = TrafficStats.getMobileRxBytes();
+        long mobileTxBytes = TrafficStats.getMobileTxBytes();
+        long totalRxBytes = TrafficStats.getTotalRxBytes();
+        long totalTxBytes = TrafficStats.getTotalTxBytes();
+        
+        // Cellular state comes from the callback-driven model, not from binder calls here
+        String operator = telephony.getNetworkOperator();
+        String mcc = "";
+        String mnc = "";
+        if (operator.length() >= 5) {
+            mcc = operator.substring(0, 3);
+            mnc = operator.substring(3);
+        }
+        List<CellSignal> cells = telephony.getCells();
+        int signalStrength = telephony.getSignalStrength();
+
+        return new NetworkStats(
+            mobileRxBytes,
+            mobileTxBytes,
+            totalRxBytes,
+            totalTxBytes,
+            link.getState(),
+            operator,
+            mcc,
+            mnc,
+            signalStrength,
+            cells
+        );
+    }
+
+    @Override
+    public LazyFields getNetworkFields() {
+        final LinkState state = link.getState();
+        final String operator = telephony.getNetworkOperator();
+        final boolean hasCodes = operator.length() >= 5;
+        return new LazyFields()
+            .add("mobileRxBytes", TrafficStats::getMobileRxBytes)
+            .add("mobileTxBytes", TrafficStats::getMobileTxBytes)
+            .add("totalRxBytes", TrafficStats::getTotalRxBytes)
+            .add("totalTxBytes", TrafficStats::getTotalTxBytes)
+            .add("networkType", state::getTransport)
+            .add("connected", state::isConnected)
+            .add("metered", state::isMetered)
+            .add("validated", state::isValidated)
+            .add("operator", () -> operator)
+            .add("mcc", () -> hasCodes ? operator.substring(0, 3) : "")
+            .add("mnc", () -> hasCodes ? operator.substring(3) : "")
+            .add("signalStrength", telephony::getSignalStrength)
+            .add("cells", telephony::getCells)
+            .add("ipAddresses", state::getIpAddresses)
+            .add("interfaces", state::getInterfaces)
+            .add("dnsServers", state::getDnsServers);
+    }
+}
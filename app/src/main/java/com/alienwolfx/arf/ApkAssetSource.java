@@ -0,0 +1,91 @@
+package com.alienwolfx.arf;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assets bundled in the APK under one directory. Entries stored uncompressed are mapped
+ * straight out of the APK file, which build.gradle arranges for the WebUI's file types;
+ * anything aapt did compress has to be inflated onto the heap once instead. The APK cannot
+ * change while the process runs, so each asset is opened at most once.
+ */
+public class ApkAssetSource implements AssetSource {
+
+    private final AssetManager assets;
+    private final String root;
+    private final long lastModified;
+    private final Map<String, StaticAsset> opened = new ConcurrentHashMap<>();
+
+    public ApkAssetSource(Context context, String root) {
+        this.assets = context.getAssets();
+        this.root = root;
+        this.lastModified = lastUpdateTime(context);
+    }
+
+    @Override
+    public StaticAsset open(String path) throws IOException {
+        StaticAsset asset = opened.get(path);
+        if (asset != null) {
+            return asset;
+        }
+        String name = root + "/" + path;
+        try {
+            asset = map(name);
+        } catch (FileNotFoundException e) {
+            // Either missing or compressed; openFd cannot tell the two apart
+            asset = inflate(name);
+            if (asset == null) {
+                return null;
+            }
+        }
+        opened.put(path, asset);
+        return asset;
+    }
+
+    private StaticAsset map(String name) throws IOException {
+        AssetFileDescriptor fd = assets.openFd(name);
+        // The stream owns the descriptor; closing it leaves the mapping valid
+        try (FileInputStream in = fd.createInputStream()) {
+            return new StaticAsset(in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                fd.getStartOffset(), fd.getLength()), lastModified);
+        }
+    }
+
+    private StaticAsset inflate(String name) throws IOException {
+        InputStream in;
+        try {
+            in = assets.open(name);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream body = in) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = body.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new StaticAsset(ByteBuffer.wrap(out.toByteArray()), lastModified);
+    }
+
+    private static long lastUpdateTime(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+}
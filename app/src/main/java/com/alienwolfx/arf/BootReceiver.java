@@ -9,8 +9,8 @@ public class BootReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
-            Intent serviceIntent = new Intent(context, HttpService.class);
-            context.startService(serviceIntent);
+            ServerHolder.mark(ServerHolder.PHASE_BOOT_COMPLETED);
+            HttpService.start(context);
         }
     }
 
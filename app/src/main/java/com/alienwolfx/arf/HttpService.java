@@ -1,35 +1,106 @@
 package com.alienwolfx.arf;
 
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
 import android.os.IBinder;
-import java.io.IOException;
 
-public class HttpService extends Service {
+/**
+ * Keeps the process, and with it {@link ServerHolder}'s server, alive in the foreground.
+ * Nothing here blocks: the server is built and bound on the holder's own thread. Every
+ * start request retries a stopped or failed server, and a failed start takes the service
+ * out of the foreground rather than leaving a notification for a server that is not there.
+ */
+public class HttpService extends Service implements ServerHolder.Listener {
 
-    private MyHttpServer server;
+    private static final String CHANNEL_ID = "server";
+    private static final int NOTIFICATION_ID = 1;
+
+    /** Starts the service from a receiver or activity, in the foreground where that is required. */
+    public static void start(Context context) {
+        Intent intent = new Intent(context, HttpService.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(intent);
+        } else {
+            context.startService(intent);
+        }
+    }
+
+    public static void stop(Context context) {
+        context.stopService(new Intent(context, HttpService.class));
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
-        try {
-            server = new MyHttpServer(this);
-            server.start();
-        } catch (IOException e) {
-            e.printStackTrace();
+        ServerHolder.mark(ServerHolder.PHASE_SERVICE_CREATED);
+        ServerHolder.addListener(this);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Required after every startForegroundService, not just the first
+        startInForeground();
+        ServerHolder.State state = ServerHolder.getState();
+        if (state == ServerHolder.State.STOPPED || state == ServerHolder.State.FAILED) {
+            ServerHolder.start(this);
+        }
+        return START_STICKY;
+    }
+
+    @Override
+    public void onStateChanged(ServerHolder.State state) {
+        if (state == ServerHolder.State.FAILED) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                stopForeground(STOP_FOREGROUND_REMOVE);
+            } else {
+                stopForeground(true);
+            }
+            stopSelf();
         }
     }
 
     @Override
     public void onDestroy() {
+        ServerHolder.removeListener(this);
+        ServerHolder.stop();
         super.onDestroy();
-        if (server != null) {
-            server.stop();
-        }
     }
 
     @Override
     public IBinder onBind(Intent intent) {
         return null;
     }
+
+    private void startInForeground() {
+        Notification.Builder builder;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            manager.createNotificationChannel(
+                new NotificationChannel(CHANNEL_ID, "HTTP server", NotificationManager.IMPORTANCE_LOW));
+            builder = new Notification.Builder(this, CHANNEL_ID);
+        } else {
+            builder = new Notification.Builder(this);
+        }
+        PendingIntent openApp = PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class),
+            PendingIntent.FLAG_IMMUTABLE);
+        Notification notification = builder
+            .setContentTitle("Arf")
+            .setContentText("Serving on port " + MyHttpServer.PORT)
+            .setSmallIcon(R.mipmap.ic_launcher)
+            .setOngoing(true)
+            .setContentIntent(openApp)
+            .build();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_SPECIAL_USE);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+    }
 }
@@ -0,0 +1,297 @@
+package com.alienwolfx.arf;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cached state of the default network. On API 24+ a default-network callback feeds it the
+ * capabilities and link properties directly; older releases rebuild it from the legacy
+ * APIs whenever CONNECTIVITY_ACTION fires. Rebuilds run on one handler thread and publish
+ * an immutable {@link LinkState}, so requests only read a volatile field.
+ *
+ * <p>Tethering and hotspot interfaces come and go without touching the default network, so
+ * their broadcasts trigger a rebuild too, and a snapshot older than a few seconds is
+ * rebuilt in the background for whoever asks next.
+ */
+public class LinkStateModel {
+
+    private static final long DNS_LOOKUP_TIMEOUT_MS = 2000;
+    private static final long INTERFACES_MAX_AGE_MS = 5000;
+    // Hidden in the SDK, but sent by every release this app supports
+    private static final String ACTION_TETHER_STATE_CHANGED = "android.net.conn.TETHER_STATE_CHANGED";
+    private static final String ACTION_WIFI_AP_STATE_CHANGED = "android.net.wifi.WIFI_AP_STATE_CHANGED";
+
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+    // Only used below API 24, where DNS servers come from getprop
+    private final ShellSessionPool shellPool = new ShellSessionPool(1, DNS_LOOKUP_TIMEOUT_MS, "sh");
+    private volatile LinkState state = LinkState.DISCONNECTED;
+    private NetworkProvider.Listener listener;
+    private final Runnable refreshTask = this::publish;
+    private HandlerThread thread;
+    private volatile Handler handler;
+    private ConnectivityManager.NetworkCallback networkCallback;
+    private BroadcastReceiver connectivityReceiver;
+    private BroadcastReceiver tetherReceiver;
+    // Written on the model thread only
+    private Network network;
+    private NetworkCapabilities capabilities;
+    private LinkProperties linkProperties;
+
+    public LinkStateModel(Context context) {
+        this.context = context;
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    public LinkState getState() {
+        LinkState current = state;
+        Handler target = handler;
+        if (target != null && System.currentTimeMillis() - current.getUpdated() > INTERFACES_MAX_AGE_MS) {
+            // At most one rebuild queued; this caller still gets the snapshot it read
+            target.removeCallbacks(refreshTask);
+            target.post(refreshTask);
+        }
+        return current;
+    }
+
+    public synchronized void start(NetworkProvider.Listener listener) {
+        if (thread != null) {
+            return;
+        }
+        this.listener = listener;
+        thread = new HandlerThread("arf-link");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            final Handler target = handler;
+            networkCallback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(final Network available) {
+                    target.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Capabilities are only guaranteed to follow onAvailable from API 26
+                            network = available;
+                            capabilities = connectivityManager.getNetworkCapabilities(available);
+                            linkProperties = connectivityManager.getLinkProperties(available);
+                            publish();
+                        }
+                    });
+                }
+
+                @Override
+                public void onCapabilitiesChanged(final Network changed, final NetworkCapabilities caps) {
+                    target.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            network = changed;
+                            capabilities = caps;
+                            publish();
+                        }
+                    });
+                }
+
+                @Override
+                public void onLinkPropertiesChanged(final Network changed, final LinkProperties properties) {
+                    target.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            network = changed;
+                            linkProperties = properties;
+                            publish();
+                        }
+                    });
+                }
+
+                @Override
+                public void onLost(final Network lost) {
+                    target.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (lost.equals(network)) {
+                                network = null;
+                                capabilities = null;
+                                linkProperties = null;
+                                publish();
+                            }
+                        }
+                    });
+                }
+            };
+            connectivityManager.registerDefaultNetworkCallback(networkCallback);
+        } else {
+            connectivityReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    publish();
+                }
+            };
+            // Sticky broadcast: registering delivers the current state straight away
+            context.registerReceiver(connectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION), null, handler);
+        }
+        tetherReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                publish();
+            }
+        };
+        IntentFilter tetherFilter = new IntentFilter(ACTION_TETHER_STATE_CHANGED);
+        tetherFilter.addAction(ACTION_WIFI_AP_STATE_CHANGED);
+        context.registerReceiver(tetherReceiver, tetherFilter, null, handler);
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        if (networkCallback != null) {
+            connectivityManager.unregisterNetworkCallback(networkCallback);
+            networkCallback = null;
+        }
+        if (connectivityReceiver != null) {
+            try {
+                context.unregisterReceiver(connectivityReceiver);
+            } catch (IllegalArgumentException e) {
+                // Already unregistered by the system
+            }
+            connectivityReceiver = null;
+        }
+        try {
+            context.unregisterReceiver(tetherReceiver);
+        } catch (IllegalArgumentException e) {
+            // Already unregistered by the system
+        }
+        tetherReceiver = null;
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+        shellPool.close();
+    }
+
+    private void publish() {
+        LinkState next;
+        try {
+            next = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? fromCallback() : fromLegacy();
+        } catch (RuntimeException e) {
+            Log.e("MyHttpServer", "Error message", e);
+            return;
+        }
+        LinkState previous = state;
+        state = next;
+        if (!next.sameLink(previous) && listener != null) {
+            listener.onLinkChanged(next);
+        }
+    }
+
+    private LinkState fromCallback() {
+        if (network == null) {
+            return new LinkState(LinkState.DISCONNECTED.getTransport(), false, false, false,
+                readInterfaces(), Collections.<String>emptyList(), System.currentTimeMillis());
+        }
+        List<String> dnsServers = new ArrayList<>();
+        if (linkProperties != null) {
+            for (InetAddress address : linkProperties.getDnsServers()) {
+                dnsServers.add(address.getHostAddress());
+            }
+        }
+        boolean metered = capabilities == null
+            || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        boolean validated = capabilities != null
+            && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        return new LinkState(transportName(capabilities), true, metered, validated,
+            readInterfaces(), Collections.unmodifiableList(dnsServers), System.currentTimeMillis());
+    }
+
+    @SuppressWarnings("deprecation")
+    private LinkState fromLegacy() {
+        NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
+        String networkType = (activeNetwork != null) ? activeNetwork.getTypeName() : "unknown";
+        boolean isConnected = activeNetwork != null && activeNetwork.isConnected();
+        // No validation signal before API 23; a connected legacy network is taken at its word
+        return new LinkState(networkType, isConnected, connectivityManager.isActiveNetworkMetered(), isConnected,
+            readInterfaces(), readPropDnsServers(), System.currentTimeMillis());
+    }
+
+    private static String transportName(NetworkCapabilities caps) {
+        if (caps == null) {
+            return "unknown";
+        }
+        // Same names NetworkInfo.getTypeName() reported, so clients see no difference
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) {
+            return "VPN";
+        } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            return "WIFI";
+        } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return "MOBILE";
+        } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            return "ETHERNET";
+        } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_BLUETOOTH)) {
+            return "BLUETOOTH";
+        }
+        return "unknown";
+    }
+
+    /** Non-loopback addresses of every interface that has one, keyed by interface name. */
+    private static Map<String, List<String>> readInterfaces() {
+        Map<String, List<String>> interfaces = new LinkedHashMap<>();
+        try {
+            Enumeration<NetworkInterface> nets = NetworkInterface.getNetworkInterfaces();
+            while (nets != null && nets.hasMoreElements()) {
+                NetworkInterface netint = nets.nextElement();
+                List<String> addresses = new ArrayList<>();
+                Enumeration<InetAddress> inetAddresses = netint.getInetAddresses();
+                while (inetAddresses.hasMoreElements()) {
+                    InetAddress inetAddress = inetAddresses.nextElement();
+                    if (!inetAddress.isLoopbackAddress()) {
+                        addresses.add(inetAddress.getHostAddress());
+                    }
+                }
+                if (!addresses.isEmpty()) {
+                    interfaces.put(netint.getName(), Collections.unmodifiableList(addresses));
+                }
+            }
+        } catch (Exception e) {
+            Log.e("MyHttpServer", "Error message", e);
+        }
+        return Collections.unmodifiableMap(interfaces);
+    }
+
+    private List<String> readPropDnsServers() {
+        List<String> dnsServers = new ArrayList<>();
+        try {
+            // One pooled round trip instead of a fork per property
+            ShellProcess.Capture capture = new ShellProcess.Capture();
+            shellPool.exec("getprop net.dns1; getprop net.dns2; getprop net.dns3; getprop net.dns4",
+                DNS_LOOKUP_TIMEOUT_MS, 0, capture);
+            for (String dns : capture.getStdout().split("\n")) {
+                if (!dns.isEmpty()) {
+                    dnsServers.add(dns);
+                }
+            }
+        } catch (Exception e) {
+            Log.e("MyHttpServer", "Error message", e);
+        }
+        return Collections.unmodifiableList(dnsServers);
+    }
+}
@@ -10,11 +10,8 @@
     import androidx.appcompat.app.AlertDialog;
     import androidx.appcompat.app.AppCompatActivity;
 
-    import java.io.IOException;
+    public class MainActivity extends AppCompatActivity implements ServerHolder.Listener {
 
-    public class MainActivity extends AppCompatActivity {
-
-        private MyHttpServer server;
         private TextView statusText;
 
         @Override
@@ -31,6 +28,29 @@
             stopServerButton.setOnClickListener(v -> stopServer());
         }
 
+        @Override
+        protected void onStart() {
+            super.onStart();
+            ServerHolder.addListener(this);
+            onStateChanged(ServerHolder.getState());
+        }
+
+        @Override
+        protected void onStop() {
+            ServerHolder.removeListener(this);
+            super.onStop();
+        }
+
+        @Override
+        public void onStateChanged(ServerHolder.State state) {
+            switch (state) {
+                case STARTING: statusText.setText("Server Starting"); break;
+                case RUNNING: statusText.setText("Server Active"); break;
+                case FAILED: statusText.setText("Error starting server"); break;
+                default: statusText.setText("Server Inactive"); break;
+            }
+        }
+
         @Override
         public boolean onCreateOptionsMenu(Menu menu) {
             getMenuInflater().inflate(R.menu.main_menu, menu);
@@ -59,32 +79,16 @@
             }
         }
 
+        // The server belongs to HttpService, so it outlives this activity
         private void startServer() {
-            if (server == null) {
-                try {
-                    server = new MyHttpServer(this);
-                    server.start();
-                    statusText.setText("Server Active");
-                } catch (IOException e) {
-                    statusText.setText("Error starting server");
-                    e.printStackTrace();
-                }
-            } else {
+            if (ServerHolder.getState() == ServerHolder.State.RUNNING) {
                 statusText.setText("Server already running");
+                return;
             }
+            HttpService.start(this);
         }
 
         private void stopServer() {
-            if (server != null) {
-                server.stop();
-                server = null;
-                statusText.setText("Server Inactive");
-            }
-        }
-
-        @Override
-        protected void onDestroy() {
-            super.onDestroy();
-            stopServer();
+            HttpService.stop(this);
         }
     }
@@ -0,0 +1,142 @@
+package com.alienwolfx.arf;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Owns the process's one {@link MyHttpServer}, so the boot path and the activity can no
+ * longer race each other for the port. Creating and starting it touches system services,
+ * the SMS provider and disk, so that runs in order on one background thread; listeners
+ * hear about state changes on the main thread.
+ */
+final class ServerHolder {
+
+    enum State { STOPPED, STARTING, RUNNING, FAILED }
+
+    interface Listener {
+        void onStateChanged(State state);
+    }
+
+    static final String PHASE_DEVICE_BOOT = "device_boot";
+    static final String PHASE_BOOT_COMPLETED = "boot_completed";
+    static final String PHASE_SERVICE_CREATED = "service_created";
+    static final String PHASE_SERVER_CREATED = "server_created";
+
+    private static final ExecutorService LIFECYCLE = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "arf-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Phases seen before the server exists; handed to its trace when it is created
+    private static final Map<String, Long> earlyPhases = new LinkedHashMap<>();
+
+    // Only touched on the lifecycle thread
+    private static MyHttpServer server;
+    private static volatile State state = State.STOPPED;
+
+    private ServerHolder() {
+    }
+
+    /** Records a startup phase now, keeping the first time it was seen. */
+    static void mark(String phase) {
+        long now = System.nanoTime();
+        synchronized (earlyPhases) {
+            if (!earlyPhases.containsKey(phase)) {
+                earlyPhases.put(phase, now);
+            }
+        }
+    }
+
+    /** Creates and starts the server unless it is already up; returns immediately. */
+    static void start(Context context) {
+        final Context appContext = context.getApplicationContext();
+        LIFECYCLE.execute(() -> {
+            if (server != null) {
+                return;
+            }
+            setState(State.STARTING);
+            MyHttpServer created = null;
+            try {
+                created = new MyHttpServer(appContext);
+                StartupTrace trace = created.getStartupTrace();
+                // Same clock as System.nanoTime unless the device has slept since boot, which a dongle does not
+                trace.markAt(PHASE_DEVICE_BOOT, System.nanoTime() - SystemClock.elapsedRealtimeNanos());
+                synchronized (earlyPhases) {
+                    for (Map.Entry<String, Long> phase : earlyPhases.entrySet()) {
+                        trace.markAt(phase.getKey(), phase.getValue());
+                    }
+                    earlyPhases.clear();
+                }
+                trace.mark(PHASE_SERVER_CREATED);
+                created.start();
+            } catch (IOException | RuntimeException e) {
+                Log.e("MyHttpServer", "Error message", e);
+                release(created);
+                setState(State.FAILED);
+                return;
+            }
+            server = created;
+            Log.i("MyHttpServer", "Ready " + created.getStartupTrace().getPhaseMillis() + " ms");
+            setState(State.RUNNING);
+        });
+    }
+
+    static void stop() {
+        LIFECYCLE.execute(() -> {
+            if (server != null) {
+                server.stop();
+                server = null;
+            } else if (state == State.FAILED) {
+                // Keep the failure on screen after the service gives up
+                return;
+            }
+            setState(State.STOPPED);
+        });
+    }
+
+    // A start that failed part way may have bound the port or started providers
+    private static void release(MyHttpServer created) {
+        if (created == null) {
+            return;
+        }
+        try {
+            created.stop();
+        } catch (RuntimeException e) {
+            Log.e("MyHttpServer", "Error message", e);
+        }
+    }
+
+    static State getState() {
+        return state;
+    }
+
+    static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void setState(final State newState) {
+        state = newState;
+        MAIN.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onStateChanged(newState);
+            }
+        });
+    }
+}
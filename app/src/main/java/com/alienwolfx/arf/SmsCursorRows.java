@@ -0,0 +1,43 @@
+package com.alienwolfx.arf;
+
+import android.database.Cursor;
+
+/**
+ * Adapts an SMS provider cursor to {@link SmsListStream.Rows}, resolving the column
+ * indices once instead of per row.
+ */
+public class SmsCursorRows implements SmsListStream.Rows {
+
+    public static final String[] PROJECTION = {"_id", "address", "body", "date", "type", "read"};
+
+    private final Cursor cursor;
+    private final int idColumn;
+    private final int addressColumn;
+    private final int bodyColumn;
+    private final int dateColumn;
+    private final int typeColumn;
+    private final int readColumn;
+
+    public SmsCursorRows(Cursor cursor) {
+        this.cursor = cursor;
+        this.idColumn = cursor.getColumnIndexOrThrow("_id");
+        this.addressColumn = cursor.getColumnIndexOrThrow("address");
+        this.bodyColumn = cursor.getColumnIndexOrThrow("body");
+        this.dateColumn = cursor.getColumnIndexOrThrow("date");
+        this.typeColumn = cursor.getColumnIndexOrThrow("type");
+        this.readColumn = cursor.getColumnIndexOrThrow("read");
+    }
+
+    @Override public boolean next() { return cursor.moveToNext(); }
+    @Override public long id() { return cursor.getLong(idColumn); }
+    @Override public String address() { return cursor.getString(addressColumn); }
+    @Override public String body() { return cursor.getString(bodyColumn); }
+    @Override public long timestamp() { return cursor.getLong(dateColumn); }
+    @Override public int type() { return cursor.getInt(typeColumn); }
+    @Override public boolean read() { return cursor.getInt(readColumn) != 0; }
+    @Override public void close() { cursor.close(); }
+
+    public SmsMessage toMessage() {
+        return new SmsMessage(id(), address(), body(), timestamp(), type(), read());
+    }
+}
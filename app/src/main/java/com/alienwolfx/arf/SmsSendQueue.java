@@ -0,0 +1,388 @@
+package com.alienwolfx.arf;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.telephony.SmsManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Persistent outgoing SMS queue. Jobs are written to SQLite and drained on a dedicated
+ * thread at a fixed rate, so a large send returns immediately and survives a restart.
+ * Every part of every message gets its own sent and delivered PendingIntent, keyed by a
+ * data URI, and the results are recorded per message. Rate limiting and status changes are
+ * decided by {@link SmsSendPolicy}.
+ */
+public class SmsSendQueue implements SmsSender {
+
+    private static final String ACTION_SENT = "com.alienwolfx.arf.SMS_SENT";
+    private static final String ACTION_DELIVERED = "com.alienwolfx.arf.SMS_DELIVERED";
+    private static final String URI_SCHEME = "arf-sms";
+    private static final Uri SENT_FOLDER = Uri.parse("content://sms/sent");
+    private static final int SENT_FOLDER_BATCH = 25;
+    private static final long SENT_FOLDER_FLUSH_MS = 2000;
+    private static final long FINISHED_RETENTION_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private final Context context;
+    private final Helper helper;
+    private final SmsSendPolicy policy;
+    private final List<ContentValues> sentFolderBatch = new ArrayList<>();
+    private final Runnable drainTask = this::drain;
+    private final Runnable flushTask = this::flushSentFolder;
+    private HandlerThread thread;
+    private volatile Handler handler;
+    private BroadcastReceiver receiver;
+
+    public SmsSendQueue(Context context, int messagesPerMinute) {
+        this.context = context;
+        this.helper = new Helper(context);
+        this.policy = new SmsSendPolicy(messagesPerMinute, FINISHED_RETENTION_MS);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new HandlerThread("arf-sms-send");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onResult(intent, getResultCode());
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ACTION_SENT);
+        filter.addAction(ACTION_DELIVERED);
+        filter.addDataScheme(URI_SCHEME);
+        // Results are delivered on the send thread, so all queue state has a single writer
+        if (Build.VERSION.SDK_INT >= 33) {
+            context.registerReceiver(receiver, filter, null, handler, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(receiver, filter, null, handler);
+        }
+        handler.post(() -> {
+            recover(helper.getWritableDatabase());
+            drain();
+        });
+    }
+
+    private void recover(SQLiteDatabase db) {
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            try (Cursor cursor = db.query("messages", new String[] {"_id", "status", "updated"}, null, null,
+                    null, null, null)) {
+                while (cursor.moveToNext()) {
+                    String[] id = new String[] {Long.toString(cursor.getLong(0))};
+                    String status = cursor.getString(1);
+                    if (policy.isExpired(status, cursor.getLong(2), now)) {
+                        db.delete("messages", "_id = ?", id);
+                        continue;
+                    }
+                    String recovered = SmsSendPolicy.afterRestart(status);
+                    if (!recovered.equals(status)) {
+                        ContentValues values = new ContentValues();
+                        values.put("status", recovered);
+                        db.update("messages", values, "_id = ?", id);
+                    }
+                }
+            }
+            db.delete("jobs", "NOT EXISTS (SELECT 1 FROM messages WHERE job_id = jobs.id)", null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            context.unregisterReceiver(receiver);
+        } catch (IllegalArgumentException e) {
+            // Already unregistered
+        }
+        handler.removeCallbacks(drainTask);
+        handler.removeCallbacks(flushTask);
+        handler.post(() -> {
+            flushSentFolder();
+            helper.close();
+        });
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+    }
+
+    @Override
+    public String submit(List<String> addresses, List<String> bodies, boolean urgent) {
+        String jobId = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues job = new ContentValues();
+            job.put("id", jobId);
+            job.put("created", now);
+            db.insert("jobs", null, job);
+            for (int i = 0; i < addresses.size(); i++) {
+                ContentValues message = new ContentValues();
+                message.put("job_id", jobId);
+                message.put("address", addresses.get(i));
+                message.put("body", bodies.get(i));
+                message.put("priority", urgent ? 1 : 0);
+                message.put("status", STATUS_QUEUED);
+                message.put("updated", now);
+                db.insert("messages", null, message);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Handler current = handler;
+        if (current != null) {
+            current.post(drainTask);
+        }
+        return jobId;
+    }
+
+    /** Returns null for an unknown job. */
+    @Override
+    public JobStatus getJob(String jobId, boolean details) {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        long created;
+        try (Cursor cursor = db.query("jobs", new String[] {"created"}, "id = ?", new String[] {jobId},
+                null, null, null)) {
+            if (!cursor.moveToNext()) {
+                return null;
+            }
+            created = cursor.getLong(0);
+        }
+
+        JobStatus status = new JobStatus(jobId, created, details ? new ArrayList<MessageStatus>() : null);
+        try (Cursor cursor = db.query("messages", new String[] {"_id", "address", "status", "error_code"},
+                "job_id = ?", new String[] {jobId}, null, null, "_id")) {
+            while (cursor.moveToNext()) {
+                String state = cursor.getString(2);
+                status.count(state);
+                if (details) {
+                    status.add(new MessageStatus(cursor.getLong(0), cursor.getString(1), state,
+                        cursor.isNull(3) ? null : cursor.getInt(3)));
+                }
+            }
+        }
+        return status;
+    }
+
+    private void drain() {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        long id;
+        String address;
+        String body;
+        boolean urgent;
+        try (Cursor cursor = db.query("messages", new String[] {"_id", "address", "body", "priority"},
+                "status = ?", new String[] {STATUS_QUEUED}, null, null, "priority DESC, _id", "1")) {
+            if (!cursor.moveToNext()) {
+                return;
+            }
+            id = cursor.getLong(0);
+            address = cursor.getString(1);
+            body = cursor.getString(2);
+            urgent = cursor.getInt(3) != 0;
+        }
+
+        long wait = policy.reserve(urgent, System.currentTimeMillis());
+        if (wait > 0) {
+            handler.removeCallbacks(drainTask);
+            handler.postDelayed(drainTask, wait);
+            return;
+        }
+        send(db, id, address, body);
+        handler.post(drainTask);
+    }
+
+    private void send(SQLiteDatabase db, long id, String address, String body) {
+        try {
+            SmsManager smsManager = SmsManager.getDefault();
+            ArrayList<String> parts = smsManager.divideMessage(body);
+            ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts.size());
+            ArrayList<PendingIntent> deliveryIntents = new ArrayList<>(parts.size());
+            for (int part = 0; part < parts.size(); part++) {
+                sentIntents.add(resultIntent(ACTION_SENT, id, part));
+                deliveryIntents.add(resultIntent(ACTION_DELIVERED, id, part));
+            }
+
+            ContentValues values = new ContentValues();
+            values.put("status", STATUS_SENDING);
+            values.put("parts", parts.size());
+            values.put("updated", System.currentTimeMillis());
+            db.update("messages", values, "_id = ?", new String[] {Long.toString(id)});
+
+            if (parts.size() > 1) {
+                smsManager.sendMultipartTextMessage(address, null, parts, sentIntents, deliveryIntents);
+            } else {
+                smsManager.sendTextMessage(address, null, body, sentIntents.get(0), deliveryIntents.get(0));
+            }
+            addToSentFolder(address, body);
+        } catch (Exception e) {
+            Log.e("MyHttpServer", "Error message", e);
+            ContentValues values = new ContentValues();
+            values.put("status", STATUS_FAILED);
+            values.put("error_code", SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+            values.put("updated", System.currentTimeMillis());
+            db.update("messages", values, "_id = ?", new String[] {Long.toString(id)});
+        }
+    }
+
+    private PendingIntent resultIntent(String action, long id, int part) {
+        // The data URI makes every part's intent distinct; request code 0 alone would collapse them
+        Intent intent = new Intent(action, Uri.parse(URI_SCHEME + "://" + id + "/" + part));
+        intent.setPackage(context.getPackageName());
+        return PendingIntent.getBroadcast(context, (int) id, intent,
+            PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void onResult(Intent intent, int resultCode) {
+        Uri data = intent.getData();
+        if (data == null || data.getHost() == null) {
+            return;
+        }
+        String[] id = new String[] {data.getHost()};
+        SQLiteDatabase db = helper.getWritableDatabase();
+        String status;
+        int parts;
+        int partsSent;
+        int partsDelivered;
+        try (Cursor cursor = db.query("messages", new String[] {"status", "parts", "parts_sent", "parts_delivered"},
+                "_id = ?", id, null, null, null)) {
+            if (!cursor.moveToNext()) {
+                // Expired while the report was in flight
+                return;
+            }
+            status = cursor.getString(0);
+            parts = cursor.getInt(1);
+            partsSent = cursor.getInt(2);
+            partsDelivered = cursor.getInt(3);
+        }
+
+        // Reports arrive on the send thread, so nothing changes the row between read and write
+        ContentValues values = new ContentValues();
+        if (ACTION_SENT.equals(intent.getAction())) {
+            boolean ok = resultCode == Activity.RESULT_OK;
+            if (ok) {
+                values.put("parts_sent", ++partsSent);
+            } else {
+                values.put("error_code", resultCode);
+            }
+            values.put("status", SmsSendPolicy.afterSent(status, ok, partsSent, parts));
+        } else if (ACTION_DELIVERED.equals(intent.getAction())) {
+            SmsSendPolicy.Report report = deliveryReport(intent);
+            if (report == SmsSendPolicy.Report.PENDING) {
+                // Another report follows once the service centre gives up or gets through
+                return;
+            }
+            if (report == SmsSendPolicy.Report.DELIVERED) {
+                values.put("parts_delivered", ++partsDelivered);
+            }
+            values.put("status", SmsSendPolicy.afterDelivery(status, report, partsDelivered, parts));
+        } else {
+            return;
+        }
+        values.put("updated", System.currentTimeMillis());
+        db.update("messages", values, "_id = ?", id);
+    }
+
+    private static SmsSendPolicy.Report deliveryReport(Intent intent) {
+        byte[] pdu = intent.getByteArrayExtra("pdu");
+        if (pdu == null) {
+            return SmsSendPolicy.Report.DELIVERED;
+        }
+        String format = intent.getStringExtra("format");
+        android.telephony.SmsMessage report = Build.VERSION.SDK_INT >= 23
+            ? android.telephony.SmsMessage.createFromPdu(pdu, format)
+            : android.telephony.SmsMessage.createFromPdu(pdu);
+        if (report == null) {
+            return SmsSendPolicy.Report.DELIVERED;
+        }
+        return SmsSendPolicy.classify(report.getStatus(), "3gpp2".equals(format));
+    }
+
+    private void addToSentFolder(String address, String body) {
+        ContentValues values = new ContentValues();
+        values.put("address", address);
+        values.put("body", body);
+        values.put("type", 2);
+        values.put("read", 1);
+        values.put("date", System.currentTimeMillis());
+        sentFolderBatch.add(values);
+        if (sentFolderBatch.size() >= SENT_FOLDER_BATCH) {
+            flushSentFolder();
+        } else {
+            handler.removeCallbacks(flushTask);
+            handler.postDelayed(flushTask, SENT_FOLDER_FLUSH_MS);
+        }
+    }
+
+    private void flushSentFolder() {
+        if (sentFolderBatch.isEmpty()) {
+            return;
+        }
+        try {
+            context.getContentResolver().bulkInsert(SENT_FOLDER,
+                sentFolderBatch.toArray(new ContentValues[0]));
+        } catch (Exception e) {
+            // Not the default SMS app, or the provider refused the write
+            Log.e("MyHttpServer", "Error message", e);
+        }
+        sentFolderBatch.clear();
+    }
+
+    private static final class Helper extends SQLiteOpenHelper {
+        Helper(Context context) {
+            super(context, "sms_queue.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE jobs (id TEXT PRIMARY KEY, created INTEGER NOT NULL)");
+            db.execSQL("CREATE TABLE messages ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + " job_id TEXT NOT NULL,"
+                + " address TEXT NOT NULL,"
+                + " body TEXT NOT NULL,"
+                + " priority INTEGER NOT NULL DEFAULT 0,"
+                + " status TEXT NOT NULL,"
+                + " parts INTEGER NOT NULL DEFAULT 0,"
+                + " parts_sent INTEGER NOT NULL DEFAULT 0,"
+                + " parts_delivered INTEGER NOT NULL DEFAULT 0,"
+                + " error_code INTEGER,"
+                + " updated INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX messages_pending ON messages (status, priority, _id)");
+            db.execSQL("CREATE INDEX messages_job ON messages (job_id)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // Single schema version so far
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.alienwolfx.arf;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps an {@link SmsRing} in sync with the telephony provider. A ContentObserver on
+ * content://sms triggers a single bounded re-query, debounced because the provider
+ * fires several notifications per message.
+ */
+public class SmsStore implements SmsProvider {
+
+    private static final Uri SMS_URI = Uri.parse("content://sms");
+    private static final Uri INBOX_URI = Uri.parse("content://sms/inbox");
+    private static final Uri SENT_URI = Uri.parse("content://sms/sent");
+    private static final long REFRESH_DEBOUNCE_MS = 200;
+
+    private final ContentResolver contentResolver;
+    private final SmsRing ring;
+    private volatile Listener listener;
+    private final Runnable refreshTask = this::refresh;
+    private HandlerThread thread;
+    private Handler handler;
+    private ContentObserver observer;
+
+    public SmsStore(ContentResolver contentResolver, int capacity) {
+        this.contentResolver = contentResolver;
+        this.ring = new SmsRing(capacity, System.currentTimeMillis());
+    }
+
+    @Override
+    public SmsRing getRing() {
+        return ring;
+    }
+
+    @Override
+    public SmsListStream.Rows query(int type, SmsPosition before, SmsPosition after, int limit, boolean ascending) {
+        Uri uri = type == TYPE_INBOX ? INBOX_URI : type == TYPE_SENT ? SENT_URI : SMS_URI;
+        List<String> clauses = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        if (before != null) {
+            addBound(clauses, args, before, "<");
+        }
+        if (after != null) {
+            addBound(clauses, args, after, ">");
+        }
+        String selection = clauses.isEmpty() ? null : TextUtils.join(" AND ", clauses);
+        // _id breaks ties between messages stored in the same millisecond
+        String direction = ascending ? "ASC" : "DESC";
+        String sortOrder = "date " + direction + ", _id " + direction + " LIMIT " + limit;
+
+        Cursor cursor = contentResolver.query(uri, SmsCursorRows.PROJECTION, selection,
+            args.toArray(new String[0]), sortOrder);
+        return cursor != null ? new SmsCursorRows(cursor) : null;
+    }
+
+    private static void addBound(List<String> clauses, List<String> args, SmsPosition position, String op) {
+        String date = Long.toString(position.getTimestamp());
+        if (position.getId() == null) {
+            clauses.add("date " + op + " ?");
+            args.add(date);
+        } else {
+            clauses.add("(date " + op + " ? OR (date = ? AND _id " + op + " ?))");
+            args.add(date);
+            args.add(date);
+            args.add(Long.toString(position.getId()));
+        }
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (thread != null) {
+            return;
+        }
+        this.listener = listener;
+        thread = new HandlerThread("arf-sms");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        observer = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                listener.onProviderChanged();
+                handler.removeCallbacks(refreshTask);
+                handler.postDelayed(refreshTask, REFRESH_DEBOUNCE_MS);
+            }
+        };
+        try {
+            contentResolver.registerContentObserver(SMS_URI, true, observer);
+        } catch (SecurityException e) {
+            Log.e("MyHttpServer", "Error message", e);
+        }
+        handler.post(refreshTask);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        contentResolver.unregisterContentObserver(observer);
+        handler.removeCallbacks(refreshTask);
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+        observer = null;
+    }
+
+    private void refresh() {
+        List<SmsMessage> latest = new ArrayList<>(ring.getCapacity());
+        try (Cursor cursor = contentResolver.query(SMS_URI, SmsCursorRows.PROJECTION, null, null,
+                "date DESC, _id DESC LIMIT " + ring.getCapacity())) {
+            if (cursor == null) {
+                return;
+            }
+            SmsCursorRows rows = new SmsCursorRows(cursor);
+            while (rows.next()) {
+                latest.add(rows.toMessage());
+            }
+        } catch (Exception e) {
+            Log.e("MyHttpServer", "Error message", e);
+            return;
+        }
+        long previousVersion = ring.getVersion();
+        if (ring.update(latest, latest.size() < ring.getCapacity())) {
+            listener.onWindowChanged(previousVersion);
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package com.alienwolfx.arf;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.telephony.CellInfo;
+import android.telephony.CellInfoGsm;
+import android.telephony.CellInfoLte;
+import android.telephony.CellInfoNr;
+import android.telephony.CellInfoWcdma;
+import android.telephony.CellSignalStrength;
+import android.telephony.CellSignalStrengthLte;
+import android.telephony.CellSignalStrengthNr;
+import android.telephony.PhoneStateListener;
+import android.telephony.ServiceState;
+import android.telephony.SignalStrength;
+import android.telephony.TelephonyCallback;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * In-memory view of the radio and SIM, kept current by telephony callbacks and the SIM
+ * state broadcast instead of binder calls on the request path. All updates run on one
+ * handler thread and publish a new immutable {@link State}, so readers never lock.
+ */
+public class TelephonyModel {
+
+    /** Called on the model thread after the SIM fields changed. */
+    public interface Listener {
+        void onSimChanged();
+    }
+
+    private static final String ACTION_SIM_STATE_CHANGED = "android.intent.action.SIM_STATE_CHANGED";
+    private static final int UNAVAILABLE = Integer.MAX_VALUE;
+    // Signal callbacks can fire several times a second; cell info is re-polled at most this often
+    private static final long CELL_INFO_REFRESH_MS = 10000;
+
+    private final Context context;
+    private final TelephonyManager telephonyManager;
+    private volatile State state = new State(new SimInfo("", "", "", -1, ""), "", "", "",
+        Collections.<CellSignal>emptyList(), Collections.<CellSignal>emptyList());
+    private HandlerThread thread;
+    private volatile Handler handler;
+    private BroadcastReceiver simStateReceiver;
+    private PhoneStateListener phoneStateListener;
+    private TelephonyCallback telephonyCallback;
+    private long lastCellInfoRequest;
+    private final Executor modelExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            Handler current = handler;
+            if (current != null) {
+                current.post(command);
+            }
+        }
+    };
+
+    public TelephonyModel(Context context) {
+        this.context = context;
+        this.telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+    }
+
+    /** Reads the SIM and device identity once, then follows callbacks until {@link #stop()}. */
+    public synchronized void start(final Listener listener) {
+        if (thread != null || telephonyManager == null) {
+            return;
+        }
+        State initial = state.withSim(readSimInfo());
+        String[] ids = readDeviceIds();
+        state = initial.withDeviceIds(ids[0], ids[1]).withOperator(safeNetworkOperator());
+
+        thread = new HandlerThread("arf-telephony");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        simStateReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                state = state.withSim(readSimInfo());
+                listener.onSimChanged();
+            }
+        };
+        context.registerReceiver(simStateReceiver, new IntentFilter(ACTION_SIM_STATE_CHANGED), null, handler);
+        // PhoneStateListener binds to the looper of the thread that creates it
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                registerCallbacks();
+                requestCellInfo();
+            }
+        });
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            context.unregisterReceiver(simStateReceiver);
+        } catch (IllegalArgumentException e) {
+            // Already unregistered by the system
+        }
+        final HandlerThread finished = thread;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (telephonyCallback != null) {
+                    telephonyManager.unregisterTelephonyCallback(telephonyCallback);
+                } else if (phoneStateListener != null) {
+                    telephonyManager.listen(phoneStateListener, PhoneStateListener.LISTEN_NONE);
+                }
+                telephonyCallback = null;
+                phoneStateListener = null;
+                finished.quitSafely();
+            }
+        });
+        thread = null;
+        handler = null;
+        simStateReceiver = null;
+    }
+
+    public SimInfo getSimInfo() {
+        return state.sim;
+    }
+
+    public String getImei() {
+        return state.imei;
+    }
+
+    public String getEsn() {
+        return state.esn;
+    }
+
+    public String getNetworkOperator() {
+        return state.operator;
+    }
+
+    /** Registered cells from the last cell-info update, or from signal strength when that is all we have. */
+    public List<CellSignal> getCells() {
+        State current = state;
+        return current.cells.isEmpty() ? current.signalCells : current.cells;
+    }
+
+    /** dBm of the first registered cell, or -1 before any measurement arrived. */
+    public int getSignalStrength() {
+        for (CellSignal cell : getCells()) {
+            if (cell.getDbm() != null) {
+                return cell.getDbm();
+            }
+        }
+        return -1;
+    }
+
+    private void registerCallbacks() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            try {
+                telephonyCallback = new FullCallback();
+                telephonyManager.registerTelephonyCallback(modelExecutor, telephonyCallback);
+            } catch (SecurityException e) {
+                // Cell info needs location permission; keep signal and service state without it
+                telephonyCallback = new SignalCallback();
+                telephonyManager.registerTelephonyCallback(modelExecutor, telephonyCallback);
+            }
+            return;
+        }
+        phoneStateListener = new PhoneStateListener() {
+            @Override
+            public void onSignalStrengthsChanged(SignalStrength signalStrength) {
+                onSignalStrengths(signalStrength);
+            }
+
+            @Override
+            public void onServiceStateChanged(ServiceState serviceState) {
+                onServiceState(serviceState);
+            }
+
+            @Override
+            public void onCellInfoChanged(List<CellInfo> cellInfo) {
+                onCellInfo(cellInfo);
+            }
+        };
+        int events = PhoneStateListener.LISTEN_SIGNAL_STRENGTHS | PhoneStateListener.LISTEN_SERVICE_STATE;
+        try {
+            telephonyManager.listen(phoneStateListener, events | PhoneStateListener.LISTEN_CELL_INFO);
+        } catch (SecurityException e) {
+            telephonyManager.listen(phoneStateListener, events);
+        }
+    }
+
+    private void onSignalStrengths(SignalStrength signalStrength) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            List<CellSignal> cells = new ArrayList<>();
+            for (CellSignalStrength strength : signalStrength.getCellSignalStrengths()) {
+                CellSignal cell = toCellSignal(strength);
+                if (cell != null) {
+                    cells.add(cell);
+                }
+            }
+            state = state.withSignalCells(Collections.unmodifiableList(cells));
+        }
+        requestCellInfo();
+    }
+
+    private void onServiceState(ServiceState serviceState) {
+        String operator = serviceState.getOperatorNumeric();
+        if (operator != null) {
+            state = state.withOperator(operator);
+        }
+    }
+
+    private void onCellInfo(List<CellInfo> cellInfo) {
+        if (cellInfo == null) {
+            return;
+        }
+        List<CellSignal> cells = new ArrayList<>();
+        for (CellInfo info : cellInfo) {
+            if (info.isRegistered()) {
+                CellSignal cell = toCellSignal(info);
+                if (cell != null) {
+                    cells.add(cell);
+                }
+            }
+        }
+        state = state.withCells(Collections.unmodifiableList(cells));
+    }
+
+    /** Asks the modem for fresh measurements; the answer arrives through {@link #onCellInfo}. */
+    private void requestCellInfo() {
+        long now = SystemClock.elapsedRealtime();
+        if (lastCellInfoRequest != 0 && now - lastCellInfoRequest < CELL_INFO_REFRESH_MS) {
+            return;
+        }
+        lastCellInfoRequest = now;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                telephonyManager.requestCellInfoUpdate(modelExecutor, new TelephonyManager.CellInfoCallback() {
+                    @Override
+                    public void onCellInfo(List<CellInfo> cellInfo) {
+                        TelephonyModel.this.onCellInfo(cellInfo);
+                    }
+                });
+            } else {
+                // Still a binder call, but on the model thread and rate limited
+                onCellInfo(telephonyManager.getAllCellInfo());
+            }
+        } catch (SecurityException e) {
+            // No location permission: signal strength callbacks are the only source
+        }
+    }
+
+    private static CellSignal toCellSignal(CellInfo info) {
+        if (info instanceof CellInfoLte) {
+            return toCellSignal(((CellInfoLte) info).getCellSignalStrength());
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && info instanceof CellInfoNr) {
+            return toCellSignal(((CellInfoNr) info).getCellSignalStrength());
+        }
+        if (info instanceof CellInfoWcdma) {
+            return toCellSignal(((CellInfoWcdma) info).getCellSignalStrength());
+        }
+        if (info instanceof CellInfoGsm) {
+            return toCellSignal(((CellInfoGsm) info).getCellSignalStrength());
+        }
+        return null;
+    }
+
+    private static CellSignal toCellSignal(CellSignalStrength strength) {
+        if (strength == null) {
+            return null;
+        }
+        if (strength instanceof CellSignalStrengthLte) {
+            CellSignalStrengthLte lte = (CellSignalStrengthLte) strength;
+            Integer rsrp = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? available(lte.getRsrp()) : null;
+            Integer rsrq = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? available(lte.getRsrq()) : null;
+            Integer sinr = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? available(lte.getRssnr()) : null;
+            return new CellSignal("lte", lte.getLevel(), available(lte.getDbm()), rsrp, rsrq, sinr);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && strength instanceof CellSignalStrengthNr) {
+            CellSignalStrengthNr nr = (CellSignalStrengthNr) strength;
+            return new CellSignal("nr", nr.getLevel(), available(nr.getDbm()),
+                available(nr.getSsRsrp()), available(nr.getSsRsrq()), available(nr.getSsSinr()));
+        }
+        String type = strength.getClass().getSimpleName().replace("CellSignalStrength", "").toLowerCase();
+        return new CellSignal(type, strength.getLevel(), available(strength.getDbm()), null, null, null);
+    }
+
+    private static Integer available(int value) {
+        return value == UNAVAILABLE ? null : value;
+    }
+
+    private SimInfo readSimInfo() {
+        String carrierName = "";
+        String countryIso = "";
+        String simOperator = "";
+        int simState = -1;
+        String simSerialNumber = "";
+
+        try {
+            // Get carrier name based on API level
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) { // Android P (API 28) and above
+                carrierName = telephonyManager.getSimCarrierIdName() != null ? telephonyManager.getSimCarrierIdName().toString() : "";
+            } else {
+                carrierName = telephonyManager.getNetworkOperatorName();
+            }
+
+            countryIso = telephonyManager.getSimCountryIso();
+            simOperator = telephonyManager.getSimOperator();
+            simState = telephonyManager.getSimState();
+
+            // Get SIM serial number based on API level
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) { // Android O (API 26) and above
+                simSerialNumber = telephonyManager.getSimSerialNumber();
+            }
+        } catch (SecurityException e) {
+            Log.e("MyHttpServer", "Error message", e);
+        }
+
+        return new SimInfo(carrierName, countryIso, simOperator, simState, simSerialNumber);
+    }
+
+    private String[] readDeviceIds() {
+        String imei = "";
+        String esn = "";
+        try {
+            // For Android 4.4.4, only use getDeviceId()
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                imei = telephonyManager.getImei();
+            } else {
+                imei = telephonyManager.getDeviceId();
+            }
+        } catch (SecurityException se) {
+            imei = "";
+        }
+        // Only try to get CDMA device ID on supported devices
+        try {
+            if (telephonyManager.getPhoneType() == TelephonyManager.PHONE_TYPE_CDMA) {
+                esn = telephonyManager.getDeviceId();
+            }
+        } catch (SecurityException se) {
+            esn = "";
+        }
+        return new String[] {imei, esn};
+    }
+
+    private String safeNetworkOperator() {
+        try {
+            String operator = telephonyManager.getNetworkOperator();
+            return operator != null ? operator : "";
+        } catch (SecurityException e) {
+            return "";
+        }
+    }
+
+    private static final class State {
+        final SimInfo sim;
+        final String imei;
+        final String esn;
+        final String operator;
+        final List<CellSignal> cells;
+        final List<CellSignal> signalCells;
+
+        State(SimInfo sim, String imei, String esn, String operator,
+              List<CellSignal> cells, List<CellSignal> signalCells) {
+            this.sim = sim;
+            this.imei = imei;
+            this.esn = esn;
+            this.operator = operator;
+            this.cells = cells;
+            this.signalCells = signalCells;
+        }
+
+        State withSim(SimInfo sim) {
+            return new State(sim, imei, esn, operator, cells, signalCells);
+        }
+
+        State withDeviceIds(String imei, String esn) {
+            return new State(sim, imei, esn, operator, cells, signalCells);
+        }
+
+        State withOperator(String operator) {
+            return new State(sim, imei, esn, operator, cells, signalCells);
+        }
+
+        State withCells(List<CellSignal> cells) {
+            return new State(sim, imei, esn, operator, cells, signalCells);
+        }
+
+        State withSignalCells(List<CellSignal> signalCells) {
+            return new State(sim, imei, esn, operator, cells, signalCells);
+        }
+    }
+
+    private class FullCallback extends TelephonyCallback implements TelephonyCallback.SignalStrengthsListener,
+            TelephonyCallback.ServiceStateListener, TelephonyCallback.CellInfoListener {
+        @Override
+        public void onSignalStrengthsChanged(SignalStrength signalStrength) {
+            onSignalStrengths(signalStrength);
+        }
+
+        @Override
+        public void onServiceStateChanged(ServiceState serviceState) {
+            onServiceState(serviceState);
+        }
+
+        @Override
+        public void onCellInfoChanged(List<CellInfo> cellInfo) {
+            onCellInfo(cellInfo);
+        }
+    }
+
+    private class SignalCallback extends TelephonyCallback implements TelephonyCallback.SignalStrengthsListener,
+            TelephonyCallback.ServiceStateListener {
+        @Override
+        public void onSignalStrengthsChanged(SignalStrength signalStrength) {
+            onSignalStrengths(signalStrength);
+        }
+
+        @Override
+        public void onServiceStateChanged(ServiceState serviceState) {
+            onServiceState(serviceState);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.alienwolfx.arf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip of a JSON body: NanoHTTPD's stream with a fresh Deflater per response, the pooled
+ * encoder, and a sampled snapshot spliced around a payload deflated once. CPU saved is only
+ * half of the trade; the README lists the compressed size of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+
+    private static final byte[] HEAD = "{\"success\":true,\"message\":\"Success\",\"sampledAt\":1700000000000,\"sampleAgeMs\":412,\"data\":"
+        .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TAIL = "}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"2048", "16384"})
+    public int size;
+
+    private final GzipEncoder encoder = new GzipEncoder(4);
+    private byte[] body;
+    private byte[] segment;
+
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; json.length() < size; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i)
+                .append(",\"address\":\"+1555000").append(i % 100)
+                .append("\",\"body\":\"Test message ").append(i)
+                .append("\",\"timestamp\":").append(1700000000000L - i * 60000L).append(",\"type\":1}");
+        }
+        body = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        segment = encoder.deflateSegment(body, GzipEncoder.CACHED_LEVEL);
+    }
+
+    @Benchmark
+    public byte[] gzipStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] pooledGzip() {
+        return encoder.gzip(body, 0, body.length, GzipEncoder.DYNAMIC_LEVEL);
+    }
+
+    @Benchmark
+    public byte[] splicedSnapshot() {
+        return encoder.splice(HEAD, segment, body, TAIL);
+    }
+}
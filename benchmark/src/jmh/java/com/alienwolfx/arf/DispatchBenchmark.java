@@ -0,0 +1,59 @@
+package com.alienwolfx.arf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/** Route lookup as serve() does it, against the regex-and-switch dispatch it replaced. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+    private static final Pattern API_PATTERN = Pattern.compile("/api/v1/(\\d{4})");
+
+    @Param({"/api/v1/1006", "/api/v1/batch", "/api/v1/9999", "/favicon.ico"})
+    public String uri;
+
+    private ApiRegistry registry;
+
+    @Setup
+    public void setUp() {
+        registry = new ApiRegistry();
+        for (int funcNo = 1000; funcNo <= 1013; funcNo++) {
+            registry.register(funcNo, route());
+        }
+        registry.register("/api/v1/batch", route());
+        registry.register("/metrics", route());
+    }
+
+    @Benchmark
+    public ApiRoute registryLookup() {
+        return registry.lookup(uri);
+    }
+
+    @Benchmark
+    public int regexDispatch() {
+        Matcher matcher = API_PATTERN.matcher(uri);
+        if (matcher.matches()) {
+            return Integer.parseInt(matcher.group(1));
+        }
+        return "/api/v1/batch".equals(uri) ? 0 : -1;
+    }
+
+    private static ApiRoute route() {
+        return new ApiRoute(Collections.singleton(NanoHTTPD.Method.GET), true, 0, session -> null);
+    }
+}
@@ -0,0 +1,132 @@
+package com.alienwolfx.arf;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+
+/** In-memory SMS provider result in {@link SmsCursorRows#PROJECTION} column order. */
+class FakeCursor implements Cursor {
+
+    private final long[] ids;
+    private final String[] addresses;
+    private final String[] bodies;
+    private final long[] dates;
+    private final int[] types;
+    private final int[] reads;
+    private int position = -1;
+    private boolean closed;
+
+    FakeCursor(int rows) {
+        ids = new long[rows];
+        addresses = new String[rows];
+        bodies = new String[rows];
+        dates = new long[rows];
+        types = new int[rows];
+        reads = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            ids[i] = rows - i;
+            addresses[i] = "+1555010" + (i % 100);
+            bodies[i] = "Your verification code is " + (100000 + i) + ". It expires in 10 minutes.";
+            dates[i] = 1700000000000L - i * 60000L;
+            types[i] = i % 3 == 0 ? 2 : 1;
+            reads[i] = i % 2;
+        }
+    }
+
+    @Override public int getCount() { return ids.length; }
+    @Override public int getPosition() { return position; }
+    @Override public boolean move(int offset) { return moveToPosition(position + offset); }
+
+    @Override
+    public boolean moveToPosition(int target) {
+        position = Math.max(-1, Math.min(target, ids.length));
+        return position >= 0 && position < ids.length;
+    }
+
+    @Override public boolean moveToFirst() { return moveToPosition(0); }
+    @Override public boolean moveToLast() { return moveToPosition(ids.length - 1); }
+    @Override public boolean moveToNext() { return moveToPosition(position + 1); }
+    @Override public boolean moveToPrevious() { return moveToPosition(position - 1); }
+    @Override public boolean isFirst() { return position == 0 && ids.length > 0; }
+    @Override public boolean isLast() { return position == ids.length - 1 && ids.length > 0; }
+    @Override public boolean isBeforeFirst() { return position < 0 || ids.length == 0; }
+    @Override public boolean isAfterLast() { return position >= ids.length || ids.length == 0; }
+
+    @Override
+    public int getColumnIndex(String name) {
+        for (int i = 0; i < SmsCursorRows.PROJECTION.length; i++) {
+            if (SmsCursorRows.PROJECTION[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String name) {
+        int index = getColumnIndex(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + name + "' does not exist");
+        }
+        return index;
+    }
+
+    @Override public String getColumnName(int column) { return SmsCursorRows.PROJECTION[column]; }
+    @Override public String[] getColumnNames() { return SmsCursorRows.PROJECTION.clone(); }
+    @Override public int getColumnCount() { return SmsCursorRows.PROJECTION.length; }
+    @Override public byte[] getBlob(int column) { throw new UnsupportedOperationException(); }
+
+    @Override
+    public String getString(int column) {
+        switch (column) {
+            case 1: return addresses[position];
+            case 2: return bodies[position];
+            default: return Long.toString(getLong(column));
+        }
+    }
+
+    @Override
+    public void copyStringToBuffer(int column, CharArrayBuffer buffer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public short getShort(int column) { return (short) getLong(column); }
+    @Override public int getInt(int column) { return (int) getLong(column); }
+
+    @Override
+    public long getLong(int column) {
+        switch (column) {
+            case 0: return ids[position];
+            case 3: return dates[position];
+            case 4: return types[position];
+            case 5: return reads[position];
+            default: return Long.parseLong(getString(column));
+        }
+    }
+
+    @Override public float getFloat(int column) { return getLong(column); }
+    @Override public double getDouble(int column) { return getLong(column); }
+
+    @Override
+    public int getType(int column) {
+        return column == 1 || column == 2 ? FIELD_TYPE_STRING : FIELD_TYPE_INTEGER;
+    }
+
+    @Override public boolean isNull(int column) { return (column == 1 || column == 2) && getString(column) == null; }
+    @Override public void deactivate() { }
+    @Override public boolean requery() { return true; }
+    @Override public void close() { closed = true; }
+    @Override public boolean isClosed() { return closed; }
+    @Override public void registerContentObserver(ContentObserver observer) { }
+    @Override public void unregisterContentObserver(ContentObserver observer) { }
+    @Override public void registerDataSetObserver(DataSetObserver observer) { }
+    @Override public void unregisterDataSetObserver(DataSetObserver observer) { }
+    @Override public void setNotificationUri(ContentResolver resolver, Uri uri) { }
+    @Override public boolean getWantsAllOnMoveCalls() { return false; }
+    @Override public Bundle getExtras() { return null; }
+    @Override public Bundle respond(Bundle extras) { return null; }
+}
@@ -0,0 +1,85 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envelope encoding per payload type: the codec's in-place buffer against reflective
+ * Gson into a String and then a byte array, which is what handlers used to do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    @Param({"message", "messages", "delta", "rates"})
+    public String payload;
+
+    private final JsonCodec codec = new JsonCodec();
+    private final Gson reflective = new Gson();
+    private Object data;
+
+    @Setup
+    public void setUp() {
+        List<SmsMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            messages.add(new SmsMessage(i, "+15550100" + i, "Message body number " + i + " with some text", 1700000000000L + i, 1, i % 2 == 0));
+        }
+        switch (payload) {
+            case "message":
+                data = messages.get(0);
+                break;
+            case "messages":
+                data = messages;
+                break;
+            case "delta":
+                data = new SmsRing.Delta(42, false, messages.subList(0, 10), Arrays.asList(3L, 7L));
+                break;
+            case "rates":
+                List<ProcStatReader.InterfaceRate> interfaces = new ArrayList<>();
+                interfaces.add(new ProcStatReader.InterfaceRate("rmnet_data0", 123456789, 23456789, 5120L, 1024L));
+                interfaces.add(new ProcStatReader.InterfaceRate("wlan0", 987654321, 87654321, 20480L, null));
+                data = new ProcStatReader.Rates(2000L, interfaces, 17.5, 1024000L, 512000L);
+                break;
+            default:
+                throw new IllegalArgumentException(payload);
+        }
+    }
+
+    @Benchmark
+    public int codecEnvelope() throws IOException {
+        return codec.envelope(true, "Success", data).size();
+    }
+
+    @Benchmark
+    public int reflectiveString() {
+        return reflective.toJson(new Envelope(true, "Success", data)).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static class Envelope {
+        private final boolean success;
+        private final String message;
+        private final Object data;
+
+        Envelope(boolean success, String message, Object data) {
+            this.success = success;
+            this.message = message;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.alienwolfx.arf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffering of shell output: the capture sink alone, fed the chunk sizes the pump
+ * threads produce, and a real process end to end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ShellOutputBenchmark {
+
+    @Param({"4096", "1048576"})
+    public int bytes;
+
+    private String chunk;
+
+    @Setup
+    public void setUp() {
+        char[] text = new char[Math.min(bytes, 8192)];
+        Arrays.fill(text, 'x');
+        chunk = new String(text);
+    }
+
+    @Benchmark
+    public int capture() {
+        ShellProcess.Capture capture = new ShellProcess.Capture();
+        for (int written = 0; written < bytes; written += chunk.length()) {
+            capture.onOutput(false, chunk);
+        }
+        return capture.getStdout().length();
+    }
+
+    @Benchmark
+    public int processCapture() throws IOException, InterruptedException {
+        ShellProcess.Capture capture = new ShellProcess.Capture();
+        new ShellProcess("head -c " + bytes + " /dev/zero | tr '\\0' x", 10000, 2L * bytes, capture).start();
+        if (capture.await(10000) == null) {
+            throw new IllegalStateException("Shell did not exit");
+        }
+        return capture.getStdout().length();
+    }
+}
@@ -0,0 +1,58 @@
+package com.alienwolfx.arf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One short command forked per call versus written to a pooled shell. The pooled command
+ * is a builtin, as the DNS lookup would be if it read properties without exec'ing getprop;
+ * an external binary in a pooled session still pays for its own fork.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShellSessionBenchmark {
+
+    private ShellSessionPool pool;
+
+    @Setup
+    public void setUp() throws Exception {
+        pool = new ShellSessionPool(1, 5000, "sh");
+        // Start the session outside the measurement
+        pooled();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public String forkPerCall() throws IOException, InterruptedException {
+        Process process = Runtime.getRuntime().exec(new String[] {"sh", "-c", "echo 1"});
+        String line;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            line = reader.readLine();
+        }
+        process.waitFor();
+        return line;
+    }
+
+    @Benchmark
+    public String pooled() throws IOException, InterruptedException {
+        ShellProcess.Capture capture = new ShellProcess.Capture();
+        pool.exec("echo 1", 5000, 0, capture);
+        return capture.getStdout();
+    }
+}
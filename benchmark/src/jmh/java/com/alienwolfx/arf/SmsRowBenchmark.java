@@ -0,0 +1,56 @@
+package com.alienwolfx.arf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Provider row mapping, both into SmsMessage objects and streamed as a 1002 page. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SmsRowBenchmark {
+
+    @Param({"10", "200"})
+    public int rows;
+
+    private FakeCursor cursor;
+    private final byte[] chunk = new byte[8192];
+
+    @Setup
+    public void setUp() {
+        cursor = new FakeCursor(rows);
+    }
+
+    @Benchmark
+    public List<SmsMessage> toMessages() {
+        cursor.moveToPosition(-1);
+        SmsCursorRows source = new SmsCursorRows(cursor);
+        List<SmsMessage> messages = new ArrayList<>(rows);
+        while (source.next()) {
+            messages.add(source.toMessage());
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public void streamPage(Blackhole blackhole) throws IOException {
+        cursor.moveToPosition(-1);
+        try (SmsListStream stream = new SmsListStream(new SmsCursorRows(cursor), rows, false)) {
+            int n;
+            while ((n = stream.read(chunk, 0, chunk.length)) != -1) {
+                blackhole.consume(n);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.alienwolfx.arf;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/**
+ * Decides whether a request may run before any handler work is done. Every client gets a
+ * token bucket per route, sized by the route's {@link ApiRoute.Lane}. Expensive routes
+ * also share a few permits, so shell commands and SMS queries can never occupy every
+ * worker and cached reads always find one free. Rejections are immediate: waiting would
+ * only hold a worker and push up everyone's tail latency.
+ */
+public class AdmissionControl {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final Limit cheap;
+    private final Limit expensive;
+    private final Limit stream;
+    private final Semaphore expensivePermits;
+    private final long idleNanos;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong laneRejected = new AtomicLong();
+
+    /**
+     * @param expensiveConcurrency expensive requests allowed to run at once, across clients
+     * @param idleMs               buckets unused this long are dropped; a bucket refills fully
+     *                             well before then, so dropping it changes nothing
+     */
+    public AdmissionControl(Limit cheap, Limit expensive, Limit stream, int expensiveConcurrency, long idleMs) {
+        this.cheap = cheap;
+        this.expensive = expensive;
+        this.stream = stream;
+        this.expensivePermits = new Semaphore(expensiveConcurrency);
+        this.idleNanos = idleMs * 1000000L;
+        this.nextSweep = new AtomicLong(System.nanoTime() + idleNanos);
+    }
+
+    /**
+     * Admits a request or says why not. An admitted {@link ApiRoute.Lane#EXPENSIVE} request
+     * holds a permit until {@link #release} is called.
+     *
+     * @return null if admitted
+     */
+    public Rejection admit(String client, String route, ApiRoute.Lane lane) {
+        long now = System.nanoTime();
+        sweep(now);
+        Limit limit = limit(lane);
+        String key = client + ' ' + route;
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            Bucket created = new Bucket(limit, now);
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        long waitNanos = bucket.take(limit, now);
+        if (waitNanos > 0) {
+            rateLimited.incrementAndGet();
+            return new Rejection(Response.Status.TOO_MANY_REQUESTS, "Rate limit exceeded for " + route,
+                seconds(waitNanos));
+        }
+        if (lane == ApiRoute.Lane.EXPENSIVE && !expensivePermits.tryAcquire()) {
+            laneRejected.incrementAndGet();
+            // The token is spent anyway; a client retrying in a loop should still run dry
+            return new Rejection(Response.Status.SERVICE_UNAVAILABLE, "Server busy with other expensive requests", 1);
+        }
+        return null;
+    }
+
+    public void release(ApiRoute.Lane lane) {
+        if (lane == ApiRoute.Lane.EXPENSIVE) {
+            expensivePermits.release();
+        }
+    }
+
+    /** Requests turned away because their bucket was empty. */
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    /** Requests turned away because every expensive permit was taken. */
+    public long getLaneRejected() {
+        return laneRejected.get();
+    }
+
+    public int getTrackedBuckets() {
+        return buckets.size();
+    }
+
+    private Limit limit(ApiRoute.Lane lane) {
+        switch (lane) {
+            case EXPENSIVE: return expensive;
+            case STREAM: return stream;
+            default: return cheap;
+        }
+    }
+
+    /** Drops idle buckets; one caller per interval does the walk, the rest skip straight past. */
+    private void sweep(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + idleNanos)) {
+            return;
+        }
+        Iterator<Bucket> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastUsed > idleNanos) {
+                it.remove();
+            }
+        }
+    }
+
+    private static int seconds(long nanos) {
+        return (int) Math.max(1, (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+    }
+
+    /** Burst size and sustained rate of one bucket. */
+    public static class Limit {
+        final double capacity;
+        final double perNano;
+
+        public Limit(int burst, double perSecond) {
+            this.capacity = burst;
+            this.perNano = perSecond / NANOS_PER_SECOND;
+        }
+    }
+
+    public static class Rejection {
+        private final Response.Status status;
+        private final String message;
+        private final int retryAfterSeconds;
+
+        Rejection(Response.Status status, String message, int retryAfterSeconds) {
+            this.status = status;
+            this.message = message;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public Response.Status getStatus() { return status; }
+        public String getMessage() { return message; }
+        public int getRetryAfterSeconds() { return retryAfterSeconds; }
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long refilledAt;
+        // Read unlocked by the sweep; a stale value only delays eviction
+        volatile long lastUsed;
+
+        Bucket(Limit limit, long now) {
+            this.tokens = limit.capacity;
+            this.refilledAt = now;
+            this.lastUsed = now;
+        }
+
+        /** Takes a token and returns 0, or returns how long until one is available. */
+        synchronized long take(Limit limit, long now) {
+            tokens = Math.min(limit.capacity, tokens + (now - refilledAt) * limit.perNano);
+            refilledAt = now;
+            lastUsed = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / limit.perNano);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.alienwolfx.arf;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/** Serves one API route; method and body-size checks have already been applied. */
+public interface ApiHandler {
+    NanoHTTPD.Response handle(NanoHTTPD.IHTTPSession session);
+}
@@ -0,0 +1,74 @@
+package com.alienwolfx.arf;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Route table filled at startup. Function routes (/api/v1/NNNN) live in an array indexed
+ * by function number and are resolved by reading the four digits in place; other routes
+ * are exact-match paths. Neither lookup allocates.
+ */
+public class ApiRegistry {
+
+    public static final String FUNCTION_PREFIX = "/api/v1/";
+
+    private static final int FIRST_FUNCTION = 1000;
+    private static final int FUNCTION_SLOTS = 1000;
+
+    private final ApiRoute[] functions = new ApiRoute[FUNCTION_SLOTS];
+    private final Map<String, ApiRoute> paths = new HashMap<>();
+    private final Map<String, ApiRoute> all = new LinkedHashMap<>();
+
+    public void register(int funcNo, ApiRoute route) {
+        if (funcNo < FIRST_FUNCTION || funcNo >= FIRST_FUNCTION + FUNCTION_SLOTS) {
+            throw new IllegalArgumentException("Function number out of range: " + funcNo);
+        }
+        if (functions[funcNo - FIRST_FUNCTION] != null) {
+            throw new IllegalStateException("Function already registered: " + funcNo);
+        }
+        functions[funcNo - FIRST_FUNCTION] = route;
+        all.put(Integer.toString(funcNo), route);
+    }
+
+    public void register(String path, ApiRoute route) {
+        if (paths.put(path, route) != null) {
+            throw new IllegalStateException("Path already registered: " + path);
+        }
+        all.put(path, route);
+    }
+
+    /** Every route in registration order, keyed by function number or path. */
+    public Map<String, ApiRoute> getRoutes() {
+        return Collections.unmodifiableMap(all);
+    }
+
+    /** Returns null for an unknown function number. */
+    public ApiRoute function(int funcNo) {
+        int index = funcNo - FIRST_FUNCTION;
+        return index >= 0 && index < FUNCTION_SLOTS ? functions[index] : null;
+    }
+
+    /** Returns null when no route matches. */
+    public ApiRoute lookup(String uri) {
+        int funcNo = functionNumber(uri);
+        return funcNo >= 0 ? function(funcNo) : paths.get(uri);
+    }
+
+    /** The function number of a /api/v1/NNNN uri, or -1 if the uri has another shape. */
+    public static int functionNumber(String uri) {
+        if (uri.length() != FUNCTION_PREFIX.length() + 4 || !uri.startsWith(FUNCTION_PREFIX)) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = FUNCTION_PREFIX.length(); i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,82 @@
+package com.alienwolfx.arf;
+
+import java.util.Set;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/** A registered handler together with the request constraints it declares. */
+public class ApiRoute {
+
+    /** Which admission budget a route draws from; see {@link AdmissionControl}. */
+    public enum Lane {
+        /** Cached or sampled reads. */
+        CHEAP,
+        /** Work that forks, queries a provider or sends something. */
+        EXPENSIVE,
+        /** Long-lived streams, capped by their own subscriber limit once connected. */
+        STREAM
+    }
+
+    private final Set<NanoHTTPD.Method> methods;
+    private final String allowHeader;
+    private final boolean cacheable;
+    private final long maxBodyBytes;
+    private final Lane lane;
+    private final ApiHandler handler;
+    private final RouteMetrics metrics = new RouteMetrics();
+
+    /**
+     * @param cacheable    read-only with a finite response, so it may be cached, revalidated
+     *                     or replayed, e.g. as part of a batch
+     * @param maxBodyBytes largest accepted request body; 0 for routes that take none
+     */
+    public ApiRoute(Set<NanoHTTPD.Method> methods, boolean cacheable, long maxBodyBytes, ApiHandler handler) {
+        this(methods, cacheable, maxBodyBytes, cacheable ? Lane.CHEAP : Lane.EXPENSIVE, handler);
+    }
+
+    public ApiRoute(Set<NanoHTTPD.Method> methods, boolean cacheable, long maxBodyBytes, Lane lane,
+                    ApiHandler handler) {
+        this.methods = methods;
+        this.cacheable = cacheable;
+        this.maxBodyBytes = maxBodyBytes;
+        this.lane = lane;
+        this.handler = handler;
+        StringBuilder allow = new StringBuilder();
+        for (NanoHTTPD.Method method : methods) {
+            if (allow.length() > 0) {
+                allow.append(", ");
+            }
+            allow.append(method.name());
+        }
+        // Built once so a 405 does not have to
+        this.allowHeader = allow.toString();
+    }
+
+    public boolean allows(NanoHTTPD.Method method) {
+        return methods.contains(method);
+    }
+
+    public String getAllowHeader() {
+        return allowHeader;
+    }
+
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    public long getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    public Lane getLane() {
+        return lane;
+    }
+
+    public ApiHandler getHandler() {
+        return handler;
+    }
+
+    public RouteMetrics getMetrics() {
+        return metrics;
+    }
+}
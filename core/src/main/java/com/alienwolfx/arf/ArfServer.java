@@ -0,0 +1,1266 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * The HTTP API itself, free of Android types. Everything device-specific comes in through
+ * {@link Providers}, so the same server runs inside the app and on a plain JVM.
+ */
+public class ArfServer extends NanoHTTPD {
+
+    private static final Logger LOG = Logger.getLogger(ArfServer.class.getName());
+
+    private static final String BATCH_URI = "/api/v1/batch";
+    private static final String METRICS_URI = "/metrics";
+    private static final String READY_URI = "/ready";
+    private static final String MIME_TYPE_JSON = "application/json";
+    private static final String ENCODING_ERROR = "{\"success\":false,\"message\":\"Error encoding response\"}";
+    private static final String MIME_TYPE_NDJSON = "application/x-ndjson";
+    private static final int WORKER_THREADS = 8;
+    private static final int ACCEPT_QUEUE_CAPACITY = 32;
+    private static final int RETRY_AFTER_SECONDS = 1;
+    private static final long TELEMETRY_INTERVAL_MS = 2000;
+    private static final long DEVICE_INFO_MAX_AGE_MS = 10 * 60 * 1000;
+    private static final long SIM_INFO_MAX_AGE_MS = 60 * 1000;
+    private static final String CACHE_REVALIDATE = "no-cache";
+    private static final String CACHE_STABLE = "private, max-age=60";
+    private static final int SMS_DEFAULT_LIMIT = 10;
+    private static final int SMS_MAX_LIMIT = 10000;
+    private static final int SMS_BULK_MAX_MESSAGES = 1000;
+    private static final long SHELL_DEFAULT_TIMEOUT_MS = 30000;
+    private static final long SHELL_MAX_TIMEOUT_MS = 10 * 60 * 1000;
+    private static final int SHELL_POOL_SIZE = 2;
+    private static final long SHELL_POOL_WAIT_MS = 5000;
+    private static final long SHELL_DEFAULT_MAX_BYTES = 1024 * 1024;
+    private static final long SHELL_MAX_BUFFERED_BYTES = 8 * 1024 * 1024;
+    private static final long SHELL_MAX_STREAMED_BYTES = 256 * 1024 * 1024;
+    private static final int MAX_EVENT_SUBSCRIBERS = 4;
+    private static final long EVENT_HEARTBEAT_MS = 15000;
+    private static final String MIME_TYPE_EVENT_STREAM = "text/event-stream";
+    private static final String[] HISTORY_FIELDS = {
+        "rxBytesPerSecond", "txBytesPerSecond", "cpuUsagePercent", "memAvailableKb", "signalStrength"
+    };
+    // One hour of raw samples at the telemetry interval, seven days of one-minute averages
+    private static final int HISTORY_RAW_CAPACITY = (int) (60 * 60 * 1000 / TELEMETRY_INTERVAL_MS);
+    private static final int HISTORY_ROLLUP_CAPACITY = 7 * 24 * 60;
+    private static final long HISTORY_FLUSH_INTERVAL_MS = 60 * 1000;
+    private static final long HISTORY_DEFAULT_RANGE_MS = 60 * 60 * 1000;
+    private static final int BATCH_THREADS = 4;
+    private static final int BATCH_QUEUE_CAPACITY = 32;
+    private static final int BATCH_MAX_ITEMS = 16;
+    private static final long BATCH_TIMEOUT_MS = 10000;
+    private static final int BATCH_MAX_ITEM_BYTES = 256 * 1024;
+    // Every item is buffered, streamed routes included; keep the whole batch small on a low-RAM device
+    private static final int BATCH_MAX_TOTAL_BYTES = 256 * 1024;
+    // Per client and route. A dashboard polling every route each second stays well inside these.
+    private static final int CHEAP_BURST = 100;
+    private static final double CHEAP_PER_SECOND = 50;
+    private static final int EXPENSIVE_BURST = 10;
+    private static final double EXPENSIVE_PER_SECOND = 2;
+    private static final int STREAM_BURST = 4;
+    private static final double STREAM_PER_SECOND = 0.2;
+    // Leaves most workers to cheap reads whatever the expensive routes are doing
+    private static final int EXPENSIVE_CONCURRENCY = WORKER_THREADS / 4;
+    private static final long ADMISSION_IDLE_MS = 5 * 60 * 1000;
+    private static final Set<Method> GET = Collections.singleton(Method.GET);
+    private static final Set<Method> POST = Collections.singleton(Method.POST);
+    private static final long MAX_REQUEST_BODY_BYTES = 64 * 1024;
+    private static final long MAX_BULK_BODY_BYTES = 1024 * 1024;
+    private static final String TOPIC_NETWORK = "network";
+    private static final String TOPIC_RESOURCES = "resources";
+    private static final String TOPIC_RATES = "rates";
+    private static final String TOPIC_SMS = "sms";
+    private static final String TOPIC_LINK = "link";
+    private final JsonCodec json = new JsonCodec();
+    private final Providers providers;
+    private final BoundedAsyncRunner asyncRunner;
+    private final TelemetrySampler telemetry;
+    private final ResponseCache responseCache = new ResponseCache();
+    private final GzipEncoder gzip = new GzipEncoder(WORKER_THREADS);
+    private final ProcStatReader procStats = new ProcStatReader();
+    private final MetricHistory history;
+    private volatile int latestSignalStrength = Integer.MIN_VALUE;
+    private final ShellSessionPool shellPool = new ShellSessionPool(SHELL_POOL_SIZE, SHELL_POOL_WAIT_MS, "sh");
+    private final BatchRunner batchRunner = new BatchRunner(BATCH_THREADS, BATCH_QUEUE_CAPACITY,
+        BATCH_TIMEOUT_MS, BATCH_MAX_ITEM_BYTES, BATCH_MAX_TOTAL_BYTES);
+    private final EventHub eventHub = new EventHub(MAX_EVENT_SUBSCRIBERS, EVENT_HEARTBEAT_MS);
+    private final ApiRegistry routes = new ApiRegistry();
+    private final MetricsExporter metricsExporter = new MetricsExporter();
+    private final StartupTrace startupTrace = new StartupTrace();
+    private final AdmissionControl admission;
+    private final StaticAssets assets;
+    private final StockApiProxy stockApi;
+
+    public ArfServer(int port, File dataDir, Providers providers) {
+        this(port, dataDir, providers, newAdmissionControl());
+    }
+
+    /** A null {@code admission} lets every request through, e.g. for load tests from one client. */
+    public ArfServer(int port, File dataDir, Providers providers, AdmissionControl admission) {
+        this(port, dataDir, providers, new BoundedAsyncRunner(WORKER_THREADS, ACCEPT_QUEUE_CAPACITY,
+            BoundedAsyncRunner.OverflowPolicy.REJECT, RETRY_AFTER_SECONDS), admission);
+    }
+
+    public ArfServer(int port, File dataDir, Providers providers, BoundedAsyncRunner asyncRunner) {
+        this(port, dataDir, providers, asyncRunner, newAdmissionControl());
+    }
+
+    public ArfServer(int port, File dataDir, Providers providers, BoundedAsyncRunner asyncRunner,
+                     AdmissionControl admission) {
+        super(port);
+        this.admission = admission;
+        this.asyncRunner = asyncRunner;
+        setAsyncRunner(asyncRunner);
+        this.providers = providers;
+        this.assets = providers.getAssets() != null ? new StaticAssets(providers.getAssets()) : null;
+        this.stockApi = providers.getStockApi();
+        this.telemetry = new TelemetrySampler(json, TELEMETRY_INTERVAL_MS);
+        telemetry.register(1001, providers.getDevice()::getSystemResources);
+        telemetry.register(1006, this::sampleNetworkStats);
+        telemetry.register(1010, this::sampleRates, () -> procStats.peek(System.currentTimeMillis()));
+        this.history = new MetricHistory(dataDir, HISTORY_FIELDS,
+            HISTORY_RAW_CAPACITY, HISTORY_ROLLUP_CAPACITY, HISTORY_FLUSH_INTERVAL_MS);
+
+        // One sampler feeds both the polled snapshots and the event stream
+        telemetry.setListener((funcNo, snapshot) -> eventHub.publish(topicFor(funcNo), snapshot.getData()));
+        registerRoutes();
+    }
+
+    private void registerRoutes() {
+        // Cacheable routes are read-only and finite, which is also what makes them safe to batch
+        routes.register(1000, new ApiRoute(GET, true, 0, this::handleDeviceInfo));
+        routes.register(1001, new ApiRoute(GET, true, 0, this::handleSystemResources));
+        routes.register(1002, new ApiRoute(GET, true, 0, ApiRoute.Lane.EXPENSIVE, this::handleSmsMessages));
+        routes.register(1003, new ApiRoute(POST, false, MAX_REQUEST_BODY_BYTES, this::handleSendSms));
+        routes.register(1004, new ApiRoute(POST, false, MAX_REQUEST_BODY_BYTES, this::handleShellCommand));
+        routes.register(1005, new ApiRoute(GET, true, 0, this::handleSimInfo));
+        routes.register(1006, new ApiRoute(GET, true, 0, this::handleNetworkStats));
+        routes.register(1007, new ApiRoute(GET, true, 0, this::handleServerStats));
+        routes.register(1008, new ApiRoute(GET, true, 0, this::handleSmsDelta));
+        routes.register(1009, new ApiRoute(GET, false, 0, ApiRoute.Lane.STREAM, this::handleEventStream));
+        routes.register(1010, new ApiRoute(GET, true, 0, session -> handleSampled(1010, session)));
+        routes.register(1011, new ApiRoute(GET, true, 0, ApiRoute.Lane.EXPENSIVE, this::handleHistory));
+        routes.register(1012, new ApiRoute(POST, false, MAX_BULK_BODY_BYTES, this::handleBulkSms));
+        routes.register(1013, new ApiRoute(GET, true, 0, this::handleSmsJob));
+        if (stockApi != null) {
+            // GETs are read-only as far as this server is concerned, so they can be batched too
+            routes.register(1014, new ApiRoute(GET, true, 0, this::handleStockGet));
+            routes.register(1015, new ApiRoute(POST, false, MAX_REQUEST_BODY_BYTES, this::handleStockPost));
+        }
+        // The batch itself only fans out; each item is admitted on its own route's lane
+        routes.register(BATCH_URI, new ApiRoute(POST, false, MAX_REQUEST_BODY_BYTES, ApiRoute.Lane.CHEAP,
+            this::handleBatch));
+        routes.register(METRICS_URI, new ApiRoute(GET, false, 0, ApiRoute.Lane.CHEAP, this::handleMetrics));
+        routes.register(READY_URI, new ApiRoute(GET, false, 0, ApiRoute.Lane.CHEAP, this::handleReady));
+    }
+
+    public static AdmissionControl newAdmissionControl() {
+        return new AdmissionControl(
+            new AdmissionControl.Limit(CHEAP_BURST, CHEAP_PER_SECOND),
+            new AdmissionControl.Limit(EXPENSIVE_BURST, EXPENSIVE_PER_SECOND),
+            new AdmissionControl.Limit(STREAM_BURST, STREAM_PER_SECOND),
+            EXPENSIVE_CONCURRENCY, ADMISSION_IDLE_MS);
+    }
+
+    /**
+     * Binds, then starts the providers and sampler. Meanwhile the WebUI is served and every
+     * API route, {@code /ready} included, answers 503. Returns once ready, so call it off
+     * the main thread.
+     */
+    @Override
+    public void start(int timeout, boolean daemon) throws IOException {
+        super.start(timeout, daemon);
+        startupTrace.mark(StartupTrace.BOUND);
+        try {
+            history.open();
+        } catch (IOException e) {
+            // Serve without history rather than not at all
+            LOG.log(Level.SEVERE, "Error message", e);
+        }
+        telemetry.start();
+        // Bump cached versions when the underlying data changes so ETags go stale
+        final SmsProvider sms = providers.getSms();
+        sms.start(new SmsProvider.Listener() {
+            @Override
+            public void onProviderChanged() {
+                responseCache.invalidate(1002);
+            }
+
+            @Override
+            public void onWindowChanged(long previousVersion) {
+                // A read between the change and the refresh got the old window under the new
+                // ETag; bump again so that tag stops revalidating
+                responseCache.invalidate(1002);
+                SmsRing.Delta delta = sms.getRing().since(previousVersion);
+                try {
+                    eventHub.publish(TOPIC_SMS, json.encode(delta));
+                } catch (IOException e) {
+                    LOG.log(Level.SEVERE, "Error message", e);
+                }
+            }
+        });
+        providers.getSmsSender().start();
+        providers.getDevice().start(() -> responseCache.invalidate(1005));
+        providers.getNetwork().start(link -> {
+            try {
+                eventHub.publish(TOPIC_LINK, json.encode(link));
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Error message", e);
+            }
+        });
+        // Request bodies are parsed reflectively; build those adapters now, not on the first POST
+        json.prepare(BatchRequest.class, SendSmsRequest.class, BulkSmsRequest.class, ShellCommandRequest.class);
+        startupTrace.mark(StartupTrace.READY);
+    }
+
+    /** Startup phases so far; the app adds the ones that happen before the server exists. */
+    public StartupTrace getStartupTrace() {
+        return startupTrace;
+    }
+
+    @Override
+    public void stop() {
+        eventHub.closeAll();
+        shellPool.close();
+        batchRunner.shutdown();
+        telemetry.stop();
+        history.close();
+        providers.getSms().stop();
+        providers.getSmsSender().stop();
+        providers.getDevice().stop();
+        providers.getNetwork().stop();
+        super.stop();
+    }
+
+    @Override
+    protected ClientHandler createClientHandler(Socket finalAccept, InputStream inputStream) {
+        return new BoundedAsyncRunner.RejectableClientHandler(this, inputStream, finalAccept, asyncRunner,
+            (in, out, address) -> new HTTPSession(getTempFileManagerFactory().create(), in, out, address));
+    }
+
+    @Override
+    protected boolean useGzipWhenAccepted(Response response) {
+        // Buffered bodies are encoded in negotiateEncoding; NanoHTTPD only gzips streams.
+        // Its gzip stream only flushes on completion, which would hold back events. A 304
+        // must have no body, but would otherwise get an empty gzip stream.
+        return response.getHeader("Content-Length") == null && response.getStatus() != Response.Status.NOT_MODIFIED
+            && !MIME_TYPE_EVENT_STREAM.equals(response.getMimeType()) && super.useGzipWhenAccepted(response);
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        String uri = session.getUri();
+        Response response = serve(uri, session);
+        // Tell the client up front rather than dropping the connection once it goes idle
+        if (asyncRunner.getQueueDepth() > 0) {
+            response.closeConnection(true);
+        }
+        // Readiness probes are not what we are timing
+        if (!READY_URI.equals(uri)) {
+            startupTrace.mark(StartupTrace.FIRST_RESPONSE);
+        }
+        return response;
+    }
+
+    private Response serve(String uri, IHTTPSession session) {
+        ApiRoute route = routes.lookup(uri);
+        if (route == null) {
+            Response asset = serveAsset(session);
+            if (asset != null) {
+                return asset;
+            }
+            return createErrorResponse(ApiRegistry.functionNumber(uri) >= 0 ? "Function not found" : "404 Not Found",
+                Response.Status.NOT_FOUND);
+        }
+        // Until the providers are up, handlers would answer, and cache, empty identities and a dead link
+        if (!startupTrace.has(StartupTrace.READY) && !READY_URI.equals(uri)) {
+            Response response = createErrorResponse("Starting", Response.Status.SERVICE_UNAVAILABLE);
+            response.addHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+            return response;
+        }
+        return admitAndDispatch(route, uri, session);
+    }
+
+    /** Dispatches the request if its client still has budget on the route's lane, else answers 429 or 503. */
+    private Response admitAndDispatch(ApiRoute route, String uri, IHTTPSession session) {
+        if (admission == null) {
+            return dispatch(route, session);
+        }
+        final ApiRoute.Lane lane = route.getLane();
+        AdmissionControl.Rejection rejection = admission.admit(session.getRemoteIpAddress(), uri, lane);
+        if (rejection != null) {
+            Response response = createErrorResponse(rejection.getMessage(), rejection.getStatus());
+            response.addHeader("Retry-After", Integer.toString(rejection.getRetryAfterSeconds()));
+            return route.getMetrics().track(response, route.getMetrics().begin());
+        }
+        if (lane != ApiRoute.Lane.EXPENSIVE) {
+            return dispatch(route, session);
+        }
+        Response response;
+        try {
+            response = dispatch(route, session);
+        } catch (RuntimeException | Error e) {
+            admission.release(lane);
+            throw e;
+        }
+        // Streamed bodies are produced while they are sent, so the permit lasts until the body is closed
+        InputStream data = response.getData();
+        if (data == null) {
+            admission.release(lane);
+        } else {
+            response.setData(new FilterInputStream(data) {
+                private boolean released;
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!released) {
+                            released = true;
+                            admission.release(lane);
+                        }
+                    }
+                }
+            });
+        }
+        return response;
+    }
+
+    /** The WebUI asset at the uri, or null to fall through to a 404. */
+    private Response serveAsset(IHTTPSession session) {
+        Method method = session.getMethod();
+        if (assets == null || (method != Method.GET && method != Method.HEAD)
+                || session.getUri().startsWith(ApiRegistry.FUNCTION_PREFIX)) {
+            return null;
+        }
+        try {
+            return assets.serve(session);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error message", e);
+            return createErrorResponse("Error reading asset", Response.Status.INTERNAL_ERROR);
+        }
+    }
+
+    private Response dispatch(ApiRoute route, IHTTPSession session) {
+        RouteMetrics metrics = route.getMetrics();
+        long start = metrics.begin();
+        Response response;
+        try {
+            response = handle(route, session);
+        } catch (RuntimeException | Error e) {
+            metrics.fail(Response.Status.INTERNAL_ERROR.getRequestStatus(), start);
+            throw e;
+        }
+        return metrics.track(response, start);
+    }
+
+    private Response handle(ApiRoute route, IHTTPSession session) {
+        if (!route.allows(session.getMethod())) {
+            Response response = createErrorResponse("Method not allowed", Response.Status.METHOD_NOT_ALLOWED);
+            response.addHeader("Allow", route.getAllowHeader());
+            return response;
+        }
+        String contentLength = session.getHeaders().get("content-length");
+        if (contentLength != null) {
+            long length;
+            try {
+                length = Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                return createErrorResponse("Invalid Content-Length", Response.Status.BAD_REQUEST);
+            }
+            if (length > route.getMaxBodyBytes()) {
+                return createErrorResponse("Request body too large", Response.Status.PAYLOAD_TOO_LARGE);
+            }
+        }
+
+        Response response = route.getHandler().handle(session);
+        if (!route.isCacheable() && response.getHeader("Cache-Control") == null) {
+            response.addHeader("Cache-Control", "no-store");
+        }
+        return negotiateEncoding(session, response);
+    }
+
+    /**
+     * Gzips buffered bodies of {@link GzipEncoder#MIN_SIZE} bytes or more for clients that
+     * accept it. Runs before the route metrics wrap the body, so they count wire bytes.
+     * Precompressed cache hits arrive already encoded and pass through.
+     */
+    private Response negotiateEncoding(IHTTPSession session, Response response) {
+        String mimeType = response.getMimeType();
+        if (mimeType == null || MIME_TYPE_EVENT_STREAM.equals(mimeType)
+                || !(mimeType.contains("json") || mimeType.startsWith("text/"))
+                || response.getHeader("Content-Encoding") != null) {
+            return response;
+        }
+        String contentLength = response.getHeader("Content-Length");
+        if (contentLength == null) {
+            // Streamed: NanoHTTPD gzips it on the fly when the header mentions gzip at all
+            response.addHeader("Vary", "Accept-Encoding");
+            String acceptEncoding = session.getHeaders().get("accept-encoding");
+            String etag = response.getHeader("ETag");
+            if (etag != null && response.getStatus() == Response.Status.OK
+                    && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                response.addHeader("ETag", ResponseCache.gzipVariant(etag));
+            }
+            return response;
+        }
+        int length = Integer.parseInt(contentLength);
+        if (length < GzipEncoder.MIN_SIZE) {
+            return response;
+        }
+        response.addHeader("Vary", "Accept-Encoding");
+        if (!GzipEncoder.accepts(session.getHeaders().get("accept-encoding"))) {
+            return response;
+        }
+        byte[] body = new byte[length];
+        try (InputStream in = response.getData()) {
+            int read = 0;
+            while (read < length) {
+                int n = in.read(body, read, length - read);
+                if (n < 0) {
+                    throw new EOFException("Body shorter than Content-Length");
+                }
+                read += n;
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error message", e);
+            return createErrorResponse("Error encoding response", Response.Status.INTERNAL_ERROR);
+        }
+        setGzipBody(response, gzip.gzip(body, 0, length, GzipEncoder.DYNAMIC_LEVEL));
+        return response;
+    }
+
+    /** Replaces the body with its gzip form; an ETag already set becomes the gzip variant's. */
+    private static void setGzipBody(Response response, byte[] gzipped) {
+        response.setData(new ByteArrayInputStream(gzipped));
+        response.addHeader("Content-Length", Integer.toString(gzipped.length));
+        response.addHeader("Content-Encoding", "gzip");
+        String etag = response.getHeader("ETag");
+        if (etag != null) {
+            response.addHeader("ETag", ResponseCache.gzipVariant(etag));
+        }
+    }
+
+    private static boolean acceptsGzip(IHTTPSession session, int length) {
+        return length >= GzipEncoder.MIN_SIZE && GzipEncoder.accepts(session.getHeaders().get("accept-encoding"));
+    }
+
+    private Response handleBatch(IHTTPSession session) {
+        BatchRequest request;
+        try {
+            Map<String, String> files = new HashMap<>();
+            session.parseBody(files);
+            request = json.fromJson(files.get("postData"), BatchRequest.class);
+        } catch (Exception e) {
+            return createErrorResponse("Invalid batch request", Response.Status.BAD_REQUEST);
+        }
+        if (request == null || request.getRequests() == null || request.getRequests().isEmpty()) {
+            return createErrorResponse("requests is required", Response.Status.BAD_REQUEST);
+        }
+        if (request.getRequests().size() > BATCH_MAX_ITEMS) {
+            return createErrorResponse("At most " + BATCH_MAX_ITEMS + " requests per batch", Response.Status.BAD_REQUEST);
+        }
+        for (BatchRunner.Item item : request.getRequests()) {
+            ApiRoute route = routes.function(item.getFuncNo());
+            if (route == null || !route.isCacheable()) {
+                return createErrorResponse("Function " + item.getFuncNo() + " cannot be batched", Response.Status.BAD_REQUEST);
+            }
+        }
+
+        try {
+            // Items are charged like standalone requests, so a batch cannot skip the per-route
+            // buckets or the expensive lane's permits
+            byte[] body = batchRunner.run(this, session, request.getRequests(),
+                (funcNo, itemSession) -> admitAndDispatch(routes.function(funcNo), itemSession.getUri(), itemSession));
+            return newBufferedResponse(Response.Status.OK, MIME_TYPE_JSON, body);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error message", e);
+            return createErrorResponse("Error executing batch: " + e.getMessage(), Response.Status.INTERNAL_ERROR);
+        }
+    }
+
+    private Response handleDeviceInfo(IHTTPSession session) {
+        if (getParam(session, "fields") != null) {
+            return handleProjected(session, providers.getDevice().getDeviceFields());
+        }
+        return handleCached(session, 1000, DEVICE_INFO_MAX_AGE_MS, CACHE_STABLE, providers.getDevice()::getDeviceInfo);
+    }
+
+    private Response handleSystemResources(IHTTPSession session) {
+        if (getParam(session, "fields") != null) {
+            return handleProjected(session, providers.getDevice().getResourceFields());
+        }
+        return handleSampled(1001, session);
+    }
+
+    private Response handleSmsMessages(IHTTPSession session) {
+        // The observer bumps the version on every change, so no provider query is needed for a 304
+        String query = session.getQueryParameterString();
+        String etag = "W/\"1002-" + responseCache.versionTag(1002) + "-"
+            + Integer.toHexString(query != null ? query.hashCode() : 0) + "\"";
+        if (ResponseCache.matches(session.getHeaders().get("if-none-match"), etag)) {
+            return createNotModifiedResponse(etag, CACHE_REVALIDATE);
+        }
+
+        int limit;
+        SmsPosition before;
+        SmsPosition after;
+        try {
+            String limitParam = getParam(session, "limit");
+            limit = limitParam != null ? Integer.parseInt(limitParam) : SMS_DEFAULT_LIMIT;
+            before = parsePosition(getParam(session, "before"), getParam(session, "beforeId"));
+            after = parsePosition(getParam(session, "after"), getParam(session, "afterId"));
+        } catch (NumberFormatException e) {
+            return createErrorResponse("Invalid limit, before or after parameter", Response.Status.BAD_REQUEST);
+        }
+        if (limit < 1 || limit > SMS_MAX_LIMIT) {
+            return createErrorResponse("limit must be between 1 and " + SMS_MAX_LIMIT, Response.Status.BAD_REQUEST);
+        }
+
+        String box = getParam(session, "box");
+        int type;
+        if (box == null || "inbox".equals(box)) {
+            type = SmsProvider.TYPE_INBOX;
+        } else if ("sent".equals(box)) {
+            type = SmsProvider.TYPE_SENT;
+        } else if ("all".equals(box)) {
+            type = SmsRing.TYPE_ANY;
+        } else {
+            return createErrorResponse("box must be inbox, sent or all", Response.Status.BAD_REQUEST);
+        }
+
+        // Keyset pagination on (date, id): walk backwards from "before", or forwards from "after" alone
+        boolean ascending = after != null && before == null;
+
+        // Recent pages come from the observed in-memory window without touching the provider
+        SmsListStream.Rows windowRows = providers.getSms().getRing().select(type, before, after, limit);
+        if (windowRows != null) {
+            Response response = newChunkedResponse(Response.Status.OK, MIME_TYPE_JSON,
+                new SmsListStream(windowRows, limit, ascending));
+            addValidators(response, etag, CACHE_REVALIDATE);
+            return response;
+        }
+
+        SmsListStream.Rows rows = null;
+        try {
+            rows = providers.getSms().query(type, before, after, limit, ascending);
+            if (rows == null) {
+                return createErrorResponse("SMS provider unavailable", Response.Status.INTERNAL_ERROR);
+            }
+            Response response = newChunkedResponse(Response.Status.OK, MIME_TYPE_JSON,
+                new SmsListStream(rows, limit, ascending));
+            addValidators(response, etag, CACHE_REVALIDATE);
+            return response;
+        } catch (SecurityException e) {
+            return createErrorResponse("SMS permission denied: " + e.getMessage(), Response.Status.FORBIDDEN);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error message", e);
+            if (rows != null) {
+                rows.close();
+            }
+            return createErrorResponse("Error reading SMS: " + e.getMessage(), Response.Status.INTERNAL_ERROR);
+        }
+    }
+
+    /** A timestamp with an optional id tie-breaker, or null if there is no timestamp. */
+    private static SmsPosition parsePosition(String timestamp, String id) {
+        if (timestamp == null) {
+            return null;
+        }
+        return new SmsPosition(Long.parseLong(timestamp), id != null ? Long.valueOf(id) : null);
+    }
+
+    private Response handleSmsDelta(IHTTPSession session) {
+        long since;
+        try {
+            String sinceParam = getParam(session, "since");
+            since = sinceParam != null ? Long.parseLong(sinceParam) : 0;
+        } catch (NumberFormatException e) {
+            return createErrorResponse("Invalid since parameter", Response.Status.BAD_REQUEST);
+        }
+
+        // Unchanged since the client's version: answer without building a delta
+        SmsRing ring = providers.getSms().getRing();
+        String etag = smsDeltaEtag(ring.getVersion(), since);
+        if (ResponseCache.matches(session.getHeaders().get("if-none-match"), etag)) {
+            return createNotModifiedResponse(etag, CACHE_REVALIDATE);
+        }
+
+        SmsRing.Delta delta = ring.since(since);
+        Response httpResponse = createJsonResponse(Response.Status.OK, true, "Success", delta);
+        addValidators(httpResponse, smsDeltaEtag(delta.getVersion(), since), CACHE_REVALIDATE);
+        return httpResponse;
+    }
+
+    private String smsDeltaEtag(long version, long since) {
+        return "W/\"1008-" + responseCache.getEpoch() + "." + version + "-" + since + "\"";
+    }
+
+    private Response handleHistory(IHTTPSession session) {
+        long now = System.currentTimeMillis();
+        long from;
+        long to;
+        try {
+            String fromParam = getParam(session, "from");
+            from = fromParam != null ? Long.parseLong(fromParam) : now - HISTORY_DEFAULT_RANGE_MS;
+            String toParam = getParam(session, "to");
+            to = toParam != null ? Long.parseLong(toParam) : now;
+        } catch (NumberFormatException e) {
+            return createErrorResponse("Invalid from or to parameter", Response.Status.BAD_REQUEST);
+        }
+        if (from > to) {
+            return createErrorResponse("from must not be after to", Response.Status.BAD_REQUEST);
+        }
+
+        String resolution = getParam(session, "resolution");
+        if (resolution == null || "auto".equals(resolution)) {
+            resolution = history.resolutionFor(from);
+        } else if (!MetricHistory.RESOLUTION_RAW.equals(resolution) && !MetricHistory.RESOLUTION_ROLLUP.equals(resolution)) {
+            return createErrorResponse("resolution must be raw, 1m or auto", Response.Status.BAD_REQUEST);
+        }
+        return newChunkedResponse(Response.Status.OK, MIME_TYPE_JSON, history.query(resolution, from, to));
+    }
+
+    private ProcStatReader.Rates sampleRates() {
+        long now = System.currentTimeMillis();
+        ProcStatReader.Rates rates = procStats.sample(now);
+        long rx = 0;
+        long tx = 0;
+        boolean haveRates = false;
+        for (ProcStatReader.InterfaceRate rate : rates.getInterfaces()) {
+            if (rate.getRxBytesPerSecond() != null && !"lo".equals(rate.getName())) {
+                rx += rate.getRxBytesPerSecond();
+                tx += rate.getTxBytesPerSecond();
+                haveRates = true;
+            }
+        }
+        int signal = latestSignalStrength;
+        history.record(now, new float[] {
+            haveRates ? rx : Float.NaN,
+            haveRates ? tx : Float.NaN,
+            rates.getCpuUsagePercent() != null ? rates.getCpuUsagePercent().floatValue() : Float.NaN,
+            rates.getMemAvailableKb() != null ? rates.getMemAvailableKb() : Float.NaN,
+            signal != Integer.MIN_VALUE ? signal : Float.NaN
+        });
+        return rates;
+    }
+
+    private NetworkStats sampleNetworkStats() throws Exception {
+        NetworkStats stats = providers.getNetwork().getNetworkStats();
+        latestSignalStrength = stats.getSignalStrength();
+        return stats;
+    }
+
+    private static String topicFor(int funcNo) {
+        switch (funcNo) {
+            case 1006:
+                return TOPIC_NETWORK;
+            case 1010:
+                return TOPIC_RATES;
+            default:
+                return TOPIC_RESOURCES;
+        }
+    }
+
+    private Response handleEventStream(IHTTPSession session) {
+        Set<String> topics = new HashSet<>();
+        String topicsParam = getParam(session, "topics");
+        if (topicsParam == null || topicsParam.isEmpty()) {
+            Collections.addAll(topics, TOPIC_NETWORK, TOPIC_RESOURCES, TOPIC_RATES, TOPIC_SMS, TOPIC_LINK);
+        } else {
+            for (String topic : topicsParam.split(",")) {
+                String trimmed = topic.trim();
+                if (!TOPIC_NETWORK.equals(trimmed) && !TOPIC_RESOURCES.equals(trimmed)
+                        && !TOPIC_RATES.equals(trimmed) && !TOPIC_SMS.equals(trimmed)
+                        && !TOPIC_LINK.equals(trimmed)) {
+                    return createErrorResponse("Unknown topic: " + trimmed, Response.Status.BAD_REQUEST);
+                }
+                topics.add(trimmed);
+            }
+        }
+
+        // Each stream pins a worker thread, so the hub caps concurrent subscribers
+        EventHub.Subscription subscription = eventHub.subscribe(topics);
+        if (subscription == null) {
+            Response busy = createErrorResponse("Too many event stream clients", Response.Status.SERVICE_UNAVAILABLE);
+            busy.addHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+            return busy;
+        }
+        Response response = newChunkedResponse(Response.Status.OK, MIME_TYPE_EVENT_STREAM, subscription);
+        response.addHeader("Cache-Control", "no-cache");
+        return response;
+    }
+
+    private Response handleSendSms(IHTTPSession session) {
+        try {
+            Map<String, String> files = new HashMap<>();
+            session.parseBody(files);
+            String postData = files.get("postData");
+            if (postData == null) {
+                return createErrorResponse("Missing request body", Response.Status.BAD_REQUEST);
+            }
+
+            SendSmsRequest request = json.fromJson(postData, SendSmsRequest.class);
+            if (request == null || request.getPhoneNumber() == null || request.getMessage() == null) {
+                return createErrorResponse("Invalid SMS request format", Response.Status.BAD_REQUEST);
+            }
+
+            // Single sends jump the bulk queue and skip its rate limit
+            String jobId = providers.getSmsSender().submit(Collections.singletonList(request.getPhoneNumber()),
+                Collections.singletonList(request.getMessage()), true);
+            return createSuccessResponse("SMS queued for sending", new SmsJobReference(jobId, 1));
+        } catch (Exception e) {
+            return createErrorResponse("Error processing request: " + e.getMessage(), 
+                                     Response.Status.INTERNAL_ERROR);
+        }
+    }
+
+    private Response handleBulkSms(IHTTPSession session) {
+        BulkSmsRequest request;
+        try {
+            Map<String, String> files = new HashMap<>();
+            session.parseBody(files);
+            request = json.fromJson(files.get("postData"), BulkSmsRequest.class);
+        } catch (Exception e) {
+            return createErrorResponse("Invalid bulk SMS request", Response.Status.BAD_REQUEST);
+        }
+        if (request == null) {
+            return createErrorResponse("Missing request body", Response.Status.BAD_REQUEST);
+        }
+
+        // Either one message to many numbers, or an explicit list of messages
+        List<String> addresses = new ArrayList<>();
+        List<String> bodies = new ArrayList<>();
+        if (request.getPhoneNumbers() != null && request.getMessage() != null) {
+            for (String phoneNumber : request.getPhoneNumbers()) {
+                addresses.add(phoneNumber);
+                bodies.add(request.getMessage());
+            }
+        }
+        if (request.getMessages() != null) {
+            for (SendSmsRequest message : request.getMessages()) {
+                addresses.add(message.getPhoneNumber());
+                bodies.add(message.getMessage());
+            }
+        }
+        if (addresses.isEmpty()) {
+            return createErrorResponse("phoneNumbers and message, or messages, are required", Response.Status.BAD_REQUEST);
+        }
+        if (addresses.size() > SMS_BULK_MAX_MESSAGES) {
+            return createErrorResponse("At most " + SMS_BULK_MAX_MESSAGES + " messages per job", Response.Status.BAD_REQUEST);
+        }
+        for (int i = 0; i < addresses.size(); i++) {
+            if (isEmpty(addresses.get(i)) || isEmpty(bodies.get(i))) {
+                return createErrorResponse("Message " + i + " has no phone number or text", Response.Status.BAD_REQUEST);
+            }
+        }
+
+        try {
+            String jobId = providers.getSmsSender().submit(addresses, bodies, false);
+            return createJsonResponse(Response.Status.ACCEPTED, true, "SMS job queued",
+                new SmsJobReference(jobId, addresses.size()));
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error message", e);
+            return createErrorResponse("Error queuing SMS job: " + e.getMessage(), Response.Status.INTERNAL_ERROR);
+        }
+    }
+
+    private Response handleSmsJob(IHTTPSession session) {
+        String jobId = getParam(session, "id");
+        if (jobId == null || jobId.isEmpty()) {
+            return createErrorResponse("id is required", Response.Status.BAD_REQUEST);
+        }
+        String details = getParam(session, "details");
+        SmsSender.JobStatus status = providers.getSmsSender().getJob(jobId, "1".equals(details) || "true".equals(details));
+        if (status == null) {
+            return createErrorResponse("Unknown job", Response.Status.NOT_FOUND);
+        }
+        return createSuccessResponse("Success", status);
+    }
+
+    /** Proxies ?path=/goform/... to the stock API; every other parameter goes along as the query. */
+    private Response handleStockGet(IHTTPSession session) {
+        String path = getParam(session, "path");
+        if (path == null || !path.startsWith("/")) {
+            return createErrorResponse("path must start with /", Response.Status.BAD_REQUEST);
+        }
+        String fresh = getParam(session, "fresh");
+        try {
+            Response response = createStockResponse(stockApi.get(path, stockQuery(session), session.getHeaders(),
+                "1".equals(fresh) || "true".equals(fresh)));
+            response.addHeader("Cache-Control", CACHE_REVALIDATE);
+            return response;
+        } catch (IOException e) {
+            return createStockErrorResponse(e);
+        }
+    }
+
+    private Response handleStockPost(IHTTPSession session) {
+        String path = getParam(session, "path");
+        if (path == null || !path.startsWith("/")) {
+            return createErrorResponse("path must start with /", Response.Status.BAD_REQUEST);
+        }
+        try {
+            byte[] body = readBody(session);
+            return createStockResponse(stockApi.post(path, stockQuery(session), session.getHeaders(),
+                session.getHeaders().get("content-type"), body));
+        } catch (IOException e) {
+            return createStockErrorResponse(e);
+        }
+    }
+
+    private static Response createStockResponse(StockApiProxy.Reply reply) {
+        String contentType = reply.getContentType() != null ? reply.getContentType() : "application/octet-stream";
+        Response response = newBufferedResponse(HttpStatus.of(reply.getStatus()), contentType, reply.getBody());
+        if (reply.getLocation() != null) {
+            response.addHeader("Location", reply.getLocation());
+        }
+        if (reply.getSetCookie() != null) {
+            response.addHeader("Set-Cookie", reply.getSetCookie());
+        }
+        return response;
+    }
+
+    private Response createStockErrorResponse(IOException e) {
+        if (e instanceof StockApiProxy.Busy) {
+            Response busy = createErrorResponse(e.getMessage(), Response.Status.SERVICE_UNAVAILABLE);
+            busy.addHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+            return busy;
+        }
+        LOG.log(Level.WARNING, "Stock API call failed", e);
+        return createErrorResponse("Stock API unavailable: " + e.getMessage(),
+            e instanceof SocketTimeoutException ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.BAD_GATEWAY);
+    }
+
+    /** The raw query string without this route's own parameters, encoding untouched. */
+    private static String stockQuery(IHTTPSession session) {
+        String query = session.getQueryParameterString();
+        if (query == null) {
+            return null;
+        }
+        StringBuilder forwarded = new StringBuilder(query.length());
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals >= 0 ? pair.substring(0, equals) : pair;
+            if (pair.isEmpty() || "path".equals(name) || "fresh".equals(name)) {
+                continue;
+            }
+            if (forwarded.length() > 0) {
+                forwarded.append('&');
+            }
+            forwarded.append(pair);
+        }
+        return forwarded.toString();
+    }
+
+    /** The request body as sent; the route's size limit has already been checked. */
+    private static byte[] readBody(IHTTPSession session) throws IOException {
+        String contentLength = session.getHeaders().get("content-length");
+        int length = contentLength != null ? (int) Long.parseLong(contentLength) : 0;
+        byte[] body = new byte[length];
+        InputStream in = session.getInputStream();
+        int read = 0;
+        while (read < length) {
+            int n = in.read(body, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Request body shorter than Content-Length");
+            }
+            read += n;
+        }
+        return body;
+    }
+
+    private Response handleShellCommand(IHTTPSession session) {
+        try {
+            Map<String, String> files = new HashMap<>();
+            session.parseBody(files);
+            String postData = files.get("postData");
+            ShellCommandRequest request = json.fromJson(postData, ShellCommandRequest.class);
+            if (request == null || request.getCommand() == null || request.getCommand().isEmpty()) {
+                return createErrorResponse("command is required", Response.Status.BAD_REQUEST);
+            }
+            long timeoutMs = request.getTimeoutMs() != null ? request.getTimeoutMs() : SHELL_DEFAULT_TIMEOUT_MS;
+            long maxBytes = request.getMaxBytes() != null ? request.getMaxBytes() : SHELL_DEFAULT_MAX_BYTES;
+            if (timeoutMs < 1 || timeoutMs > SHELL_MAX_TIMEOUT_MS) {
+                return createErrorResponse("timeoutMs must be between 1 and " + SHELL_MAX_TIMEOUT_MS, Response.Status.BAD_REQUEST);
+            }
+            // Streamed output is never held in memory, so it may be far larger than a buffered result
+            long maxAllowed = request.isStream() ? SHELL_MAX_STREAMED_BYTES : SHELL_MAX_BUFFERED_BYTES;
+            if (maxBytes < 1 || maxBytes > maxAllowed) {
+                return createErrorResponse("maxBytes must be between 1 and " + maxAllowed, Response.Status.BAD_REQUEST);
+            }
+
+            if (request.isStream()) {
+                // Frames go out as the process produces them; the exit code arrives as the last line
+                return newChunkedResponse(Response.Status.OK, MIME_TYPE_NDJSON,
+                    new ShellStream(request.getCommand(), timeoutMs, maxBytes));
+            }
+
+            // Buffered commands reuse a pooled shell instead of forking one per request
+            ShellProcess.Capture capture = new ShellProcess.Capture();
+            shellPool.exec(request.getCommand(), timeoutMs, maxBytes, capture);
+            ShellProcess.Result result = capture.await(0);
+
+            String stderr = capture.getStderr();
+            ShellCommandResponse shellResponse = new ShellCommandResponse(
+                capture.getStdout(),
+                stderr.isEmpty() ? null : stderr,
+                result.getExitCode(),
+                result.isTimedOut() ? Boolean.TRUE : null,
+                result.isTruncated() ? Boolean.TRUE : null
+            );
+
+            return createSuccessResponse("Command executed successfully", shellResponse);
+        } catch (ShellSessionPool.Busy e) {
+            Response busy = createErrorResponse(e.getMessage(), Response.Status.SERVICE_UNAVAILABLE);
+            busy.addHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+            return busy;
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error message", e);
+            return createErrorResponse("Error executing command: " + e.getMessage(), Response.Status.INTERNAL_ERROR);
+        }
+    }
+
+    private Response handleSimInfo(IHTTPSession session) {
+        if (getParam(session, "fields") != null) {
+            return handleProjected(session, providers.getDevice().getSimFields());
+        }
+        return handleCached(session, 1005, SIM_INFO_MAX_AGE_MS, CACHE_REVALIDATE, providers.getDevice()::getSimInfo);
+    }
+
+    private Response handleCached(IHTTPSession session, int funcNo, long maxAgeMs, String cacheControl,
+                                  Callable<?> source) {
+        ResponseCache.Entry entry = responseCache.get(funcNo, maxAgeMs);
+        if (entry == null) {
+            try {
+                long version = responseCache.version(funcNo);
+                entry = responseCache.put(funcNo, version, json.encodeEnvelope(true, "Success", source.call()));
+            } catch (Exception e) {
+                LOG.log(Level.SEVERE, "Error message", e);
+                return createErrorResponse("Error collecting data: " + e.getMessage(),
+                    Response.Status.INTERNAL_ERROR);
+            }
+        }
+        byte[] body = entry.getBody();
+        boolean gzipped = acceptsGzip(session, body.length);
+        String etag = entry.getEtag();
+        if (ResponseCache.matches(session.getHeaders().get("if-none-match"), etag)) {
+            return createNotModifiedResponse(gzipped ? ResponseCache.gzipVariant(etag) : etag, cacheControl);
+        }
+        Response response = newBufferedResponse(Response.Status.OK, MIME_TYPE_JSON, body);
+        addValidators(response, etag, cacheControl);
+        if (gzipped) {
+            setGzipBody(response, entry.getGzipBody(gzip));
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+        return response;
+    }
+
+    private Response handleNetworkStats(IHTTPSession session) {
+        if (getParam(session, "fields") != null) {
+            return handleProjected(session, providers.getNetwork().getNetworkFields());
+        }
+        return handleSampled(1006, session);
+    }
+
+    /**
+     * Serves only the attributes named in ?fields=a,b, collected on this thread. Skips the
+     * cache and the sampler: what makes this cheap is not computing the rest.
+     */
+    private Response handleProjected(IHTTPSession session, LazyFields available) {
+        Set<String> names = new HashSet<>();
+        for (String name : getParam(session, "fields").split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (!available.getNames().contains(trimmed)) {
+                return createErrorResponse("Unknown field: " + trimmed + "; available: " + available.getNames(),
+                    Response.Status.BAD_REQUEST);
+            }
+            names.add(trimmed);
+        }
+        if (names.isEmpty()) {
+            return createErrorResponse("fields must name at least one attribute", Response.Status.BAD_REQUEST);
+        }
+        byte[] body;
+        try {
+            body = json.encodeEnvelope(true, "Success", available.select(names));
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error message", e);
+            return createErrorResponse("Error collecting data: " + e.getMessage(), Response.Status.INTERNAL_ERROR);
+        }
+        return createConditionalResponse(session, body, ResponseCache.etagOf(body), CACHE_REVALIDATE);
+    }
+
+    private Response handleSampled(int funcNo, IHTTPSession session) {
+        try {
+            // ?fresh=1 bypasses the background sampler and collects on this thread
+            String fresh = getParam(session, "fresh");
+            TelemetrySampler.Snapshot snapshot = "1".equals(fresh) || "true".equals(fresh)
+                ? telemetry.refresh(funcNo)
+                : telemetry.latest(funcNo);
+            // Decided on the payload alone so a 304 can name the encoding without building the body
+            boolean gzipped = acceptsGzip(session, snapshot.getData().length);
+            String etag = snapshot.getEtag();
+            if (ResponseCache.matches(session.getHeaders().get("if-none-match"), etag)) {
+                return createNotModifiedResponse(gzipped ? ResponseCache.gzipVariant(etag) : etag, CACHE_REVALIDATE);
+            }
+            long now = System.currentTimeMillis();
+            Response response = newBufferedResponse(Response.Status.OK, MIME_TYPE_JSON, snapshot.toResponseBytes(now));
+            addValidators(response, etag, CACHE_REVALIDATE);
+            if (gzipped) {
+                setGzipBody(response, snapshot.toGzipResponseBytes(now, gzip));
+                response.addHeader("Vary", "Accept-Encoding");
+            }
+            return response;
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error message", e);
+            return createErrorResponse("Error collecting telemetry: " + e.getMessage(),
+                Response.Status.INTERNAL_ERROR);
+        }
+    }
+
+    private Response handleReady(IHTTPSession session) {
+        if (startupTrace.has(StartupTrace.READY)) {
+            return createJsonResponse(Response.Status.OK, true, "Ready", startupTrace);
+        }
+        Response response = createJsonResponse(Response.Status.SERVICE_UNAVAILABLE, false, "Starting", startupTrace);
+        response.addHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+        return response;
+    }
+
+    private Response handleMetrics(IHTTPSession session) {
+        String text;
+        synchronized (metricsExporter) {
+            text = metricsExporter.begin()
+                .writeRoutes(routes.getRoutes())
+                .writeProcess(providers.getDevice().getGcCount())
+                .gauge("arf_event_subscribers", "Open event-stream subscriptions.", eventHub.getSubscriberCount())
+                .writeCompression(gzip)
+                .writeStockApi(stockApi)
+                .writeAdmission(admission)
+                .writeStartup(startupTrace)
+                .getText();
+        }
+        return newBufferedResponse(Response.Status.OK, MetricsExporter.CONTENT_TYPE,
+            text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Response handleServerStats(IHTTPSession session) {
+        ServerStats stats = new ServerStats(
+            asyncRunner.getWorkerCount(),
+            asyncRunner.getActiveCount(),
+            asyncRunner.getQueueDepth(),
+            asyncRunner.getQueueCapacity(),
+            asyncRunner.getOverflowPolicy().name(),
+            asyncRunner.getAcceptedCount(),
+            asyncRunner.getRejectedCount(),
+            asyncRunner.getDroppedCount()
+        );
+        byte[] body;
+        try {
+            body = json.encodeEnvelope(true, "Success", stats);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error message", e);
+            return createErrorResponse("Error encoding stats", Response.Status.INTERNAL_ERROR);
+        }
+        return createConditionalResponse(session, body, ResponseCache.etagOf(body), CACHE_REVALIDATE);
+    }
+
+
+    private static class BatchRequest {
+        private List<BatchRunner.Item> requests;
+
+        public List<BatchRunner.Item> getRequests() { return requests; }
+    }
+
+    private static class BulkSmsRequest {
+        private List<String> phoneNumbers;
+        private String message;
+        private List<SendSmsRequest> messages;
+
+        public List<String> getPhoneNumbers() { return phoneNumbers; }
+        public String getMessage() { return message; }
+        public List<SendSmsRequest> getMessages() { return messages; }
+    }
+
+    private static class SmsJobReference implements JsonCodec.Writable {
+        private final String jobId;
+        private final int queued;
+
+        public SmsJobReference(String jobId, int queued) {
+            this.jobId = jobId;
+            this.queued = queued;
+        }
+
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("jobId").value(jobId);
+            writer.name("queued").value(queued);
+            writer.endObject();
+        }
+    }
+
+    private static class SendSmsRequest {
+        private String phoneNumber;
+        private String message;
+
+        public String getPhoneNumber() { return phoneNumber; }
+        public String getMessage() { return message; }
+    }
+
+    private static class ShellCommandRequest {
+        private String command;
+        private boolean stream;
+        private Long timeoutMs;
+        private Long maxBytes;
+
+        public String getCommand() { return command; }
+        public boolean isStream() { return stream; }
+        public Long getTimeoutMs() { return timeoutMs; }
+        public Long getMaxBytes() { return maxBytes; }
+    }
+
+    private static class ShellCommandResponse implements JsonCodec.Writable {
+        private final String output;
+        private final String error;
+        private final int exitCode;
+        private final Boolean timedOut;
+        private final Boolean truncated;
+
+        public ShellCommandResponse(String output, String error, int exitCode, Boolean timedOut, Boolean truncated) {
+            this.output = output;
+            this.error = error;
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.truncated = truncated;
+        }
+
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("output").value(output);
+            writer.name("error").value(error);
+            writer.name("exitCode").value(exitCode);
+            writer.name("timedOut").value(timedOut);
+            writer.name("truncated").value(truncated);
+            writer.endObject();
+        }
+    }
+
+    private static class ServerStats implements JsonCodec.Writable {
+        private final int workers;
+        private final int activeConnections;
+        private final int queueDepth;
+        private final int queueCapacity;
+        private final String overflowPolicy;
+        private final long accepted;
+        private final long rejected;
+        private final long dropped;
+
+        public ServerStats(int workers, int activeConnections, int queueDepth, int queueCapacity,
+                           String overflowPolicy, long accepted, long rejected, long dropped) {
+            this.workers = workers;
+            this.activeConnections = activeConnections;
+            this.queueDepth = queueDepth;
+            this.queueCapacity = queueCapacity;
+            this.overflowPolicy = overflowPolicy;
+            this.accepted = accepted;
+            this.rejected = rejected;
+            this.dropped = dropped;
+        }
+
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("workers").value(workers);
+            writer.name("activeConnections").value(activeConnections);
+            writer.name("queueDepth").value(queueDepth);
+            writer.name("queueCapacity").value(queueCapacity);
+            writer.name("overflowPolicy").value(overflowPolicy);
+            writer.name("accepted").value(accepted);
+            writer.name("rejected").value(rejected);
+            writer.name("dropped").value(dropped);
+            writer.endObject();
+        }
+    }
+
+    private static String getParam(IHTTPSession session, String name) {
+        List<String> values = session.getParameters().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private Response createErrorResponse(String message, Response.IStatus status) {
+        return createJsonResponse(status, false, message, null);
+    }
+
+    /** Serves the envelope from this thread's buffer without copying it. */
+    private Response createJsonResponse(Response.IStatus status, boolean success, String message, Object data) {
+        JsonBuffer body;
+        try {
+            body = json.envelope(success, message, data);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error message", e);
+            return newFixedLengthResponse(Response.Status.INTERNAL_ERROR, MIME_TYPE_JSON, ENCODING_ERROR);
+        }
+        return new BufferedResponse(status, MIME_TYPE_JSON, body.newInputStream(), body.size());
+    }
+
+    private Response createConditionalResponse(IHTTPSession session, byte[] body, String etag,
+                                               String cacheControl) {
+        if (ResponseCache.matches(session.getHeaders().get("if-none-match"), etag)) {
+            return createNotModifiedResponse(acceptsGzip(session, body.length) ? ResponseCache.gzipVariant(etag) : etag,
+                cacheControl);
+        }
+        Response response = newBufferedResponse(Response.Status.OK, MIME_TYPE_JSON, body);
+        addValidators(response, etag, cacheControl);
+        return response;
+    }
+
+    private Response createNotModifiedResponse(String etag, String cacheControl) {
+        Response response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, MIME_TYPE_JSON, "");
+        addValidators(response, etag, cacheControl);
+        return response;
+    }
+
+    private static Response newBufferedResponse(Response.IStatus status, String mimeType, byte[] body) {
+        return new BufferedResponse(status, mimeType, new ByteArrayInputStream(body), body.length);
+    }
+
+    private static void addValidators(Response response, String etag, String cacheControl) {
+        response.addHeader("ETag", etag);
+        response.addHeader("Cache-Control", cacheControl);
+    }
+
+    private Response createSuccessResponse(String message, Object data) {
+        return createJsonResponse(Response.Status.OK, true, message, data);
+    }
+}
@@ -0,0 +1,10 @@
+package com.alienwolfx.arf;
+
+import java.io.IOException;
+
+/** Read-only files the WebUI is served from. */
+public interface AssetSource {
+
+    /** The asset at a normalized relative path such as "js/app.js", or null if there is none. */
+    StaticAsset open(String path) throws IOException;
+}
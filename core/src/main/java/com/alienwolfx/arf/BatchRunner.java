@@ -0,0 +1,190 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Runs the items of a batch request on a small bounded executor and assembles their
+ * responses into one document. Each item body is embedded verbatim, so handlers are
+ * serialized once and never re-parsed. Bodies are buffered, though, including those of
+ * routes that otherwise stream, so all items of a batch share one byte budget.
+ */
+public class BatchRunner {
+
+    /** Dispatches one item; the same entry point the router uses for standalone requests. */
+    public interface Dispatcher {
+        NanoHTTPD.Response dispatch(int funcNo, NanoHTTPD.IHTTPSession session);
+    }
+
+    public static class Item {
+        private int funcNo;
+        private Map<String, String> params;
+
+        public Item() {
+        }
+
+        public Item(int funcNo, Map<String, String> params) {
+            this.funcNo = funcNo;
+            this.params = params;
+        }
+
+        public int getFuncNo() { return funcNo; }
+        public Map<String, String> getParams() { return params; }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final int maxItemBytes;
+    private final int maxTotalBytes;
+
+    /** @param maxTotalBytes item bytes a whole batch may buffer; items past it fail with 413 */
+    public BatchRunner(int threads, int queueCapacity, long timeoutMs, int maxItemBytes, int maxTotalBytes) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, "arf-batch-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        // Idle batch threads should not linger on a device that mostly serves single requests
+        executor.allowCoreThreadTimeOut(true);
+        this.timeoutMs = timeoutMs;
+        this.maxItemBytes = maxItemBytes;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    /** Runs every item and returns the complete response body. */
+    public byte[] run(NanoHTTPD server, NanoHTTPD.IHTTPSession parent, List<Item> items, Dispatcher dispatcher)
+            throws IOException {
+        List<Future<ItemResult>> futures = new ArrayList<>(items.size());
+        AtomicLong budget = new AtomicLong(maxTotalBytes);
+        for (Item item : items) {
+            BatchSession session = new BatchSession(server, parent, "/api/v1/" + item.getFuncNo(), item.getParams());
+            try {
+                futures.add(executor.submit(() -> execute(item.getFuncNo(), session, dispatcher, budget)));
+            } catch (RejectedExecutionException e) {
+                futures.add(null);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.beginObject();
+        writer.name("success").value(true);
+        writer.name("message").value("Success");
+        writer.name("data").beginArray();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (int i = 0; i < items.size(); i++) {
+            ItemResult result = await(futures.get(i), deadline);
+            writer.beginObject();
+            writer.name("funcNo").value(items.get(i).getFuncNo());
+            writer.name("status").value(result.status);
+            writer.name("durationMs").value(result.durationMs);
+            if (result.body != null && result.json) {
+                writer.name("body").jsonValue(result.body);
+            } else if (result.body != null) {
+                // Proxied items may answer with anything; only JSON can be embedded as-is
+                writer.name("body").value(result.body);
+            } else if (result.error != null) {
+                writer.name("error").value(result.error);
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private ItemResult await(Future<ItemResult> future, long deadline) {
+        if (future == null) {
+            return ItemResult.failed(NanoHTTPD.Response.Status.SERVICE_UNAVAILABLE, "Batch executor is saturated", 0);
+        }
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return ItemResult.failed(NanoHTTPD.Response.Status.REQUEST_TIMEOUT, "Timed out", timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return ItemResult.failed(NanoHTTPD.Response.Status.INTERNAL_ERROR, "Interrupted", 0);
+        } catch (ExecutionException e) {
+            return ItemResult.failed(NanoHTTPD.Response.Status.INTERNAL_ERROR, String.valueOf(e.getCause()), 0);
+        }
+    }
+
+    private ItemResult execute(int funcNo, BatchSession session, Dispatcher dispatcher, AtomicLong budget)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        NanoHTTPD.Response response = dispatcher.dispatch(funcNo, session);
+        try (InputStream data = response.getData()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if (data != null) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = data.read(buffer)) != -1) {
+                    if (body.size() + n > maxItemBytes) {
+                        budget.addAndGet(body.size());
+                        return ItemResult.failed(NanoHTTPD.Response.Status.PAYLOAD_TOO_LARGE,
+                            "Response exceeds " + maxItemBytes + " bytes", System.currentTimeMillis() - start);
+                    }
+                    if (budget.addAndGet(-n) < 0) {
+                        // Hand back what this item took, so smaller items can still fit
+                        budget.addAndGet(body.size() + n);
+                        return ItemResult.failed(NanoHTTPD.Response.Status.PAYLOAD_TOO_LARGE,
+                            "Batch responses exceed " + maxTotalBytes + " bytes", System.currentTimeMillis() - start);
+                    }
+                    body.write(buffer, 0, n);
+                }
+            }
+            String text = body.size() > 0 ? body.toString(StandardCharsets.UTF_8.name()) : null;
+            String mimeType = response.getMimeType();
+            return new ItemResult(response.getStatus().getRequestStatus(), text,
+                mimeType == null || mimeType.contains("json"), null, System.currentTimeMillis() - start);
+        }
+    }
+
+    private static final class ItemResult {
+        final int status;
+        final String body;
+        final boolean json;
+        final String error;
+        final long durationMs;
+
+        ItemResult(int status, String body, boolean json, String error, long durationMs) {
+            this.status = status;
+            this.body = body;
+            this.json = json;
+            this.error = error;
+            this.durationMs = durationMs;
+        }
+
+        static ItemResult failed(NanoHTTPD.Response.Status status, String error, long durationMs) {
+            return new ItemResult(status.getRequestStatus(), null, false, error, durationMs);
+        }
+    }
+}
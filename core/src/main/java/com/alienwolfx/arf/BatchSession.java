@@ -0,0 +1,129 @@
+package com.alienwolfx.arf;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Stand-in for an HTTP request when a batch item is dispatched to a regular handler. It
+ * carries the item's parameters and the batch request's remaining headers, and presents
+ * itself as a bodiless GET.
+ */
+public class BatchSession implements NanoHTTPD.IHTTPSession {
+
+    private final NanoHTTPD server;
+    private final NanoHTTPD.IHTTPSession parent;
+    private final String uri;
+    private final Map<String, String> headers;
+    private final Map<String, List<String>> parameters = new HashMap<>();
+    private final Map<String, String> firstValues = new HashMap<>();
+    private final String queryString;
+
+    public BatchSession(NanoHTTPD server, NanoHTTPD.IHTTPSession parent, String uri, Map<String, String> params) {
+        this.server = server;
+        this.parent = parent;
+        this.uri = uri;
+        this.headers = new HashMap<>(parent.getHeaders());
+        // Validators and body headers belong to the batch request, not to its items
+        headers.remove("if-none-match");
+        headers.remove("content-length");
+        headers.remove("content-type");
+        // The batch response is encoded as a whole; items must come back as plain JSON
+        headers.remove("accept-encoding");
+
+        StringBuilder query = new StringBuilder();
+        if (params != null) {
+            for (Map.Entry<String, String> entry : params.entrySet()) {
+                List<String> values = new ArrayList<>(1);
+                values.add(entry.getValue());
+                parameters.put(entry.getKey(), values);
+                firstValues.put(entry.getKey(), entry.getValue());
+                if (query.length() > 0) {
+                    query.append('&');
+                }
+                query.append(encode(entry.getKey())).append('=').append(encode(entry.getValue()));
+            }
+        }
+        this.queryString = query.length() > 0 ? query.toString() : null;
+    }
+
+    /**
+     * Never called: NanoHTTPD's request loop only runs sessions it read off a socket, and
+     * BatchRunner hands this one straight to the dispatcher.
+     */
+    @Override
+    public void execute() {
+        throw new UnsupportedOperationException("Batch items are dispatched directly");
+    }
+
+    @Override
+    public NanoHTTPD.CookieHandler getCookies() {
+        return server.new CookieHandler(headers);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public NanoHTTPD.Method getMethod() {
+        return NanoHTTPD.Method.GET;
+    }
+
+    @Override
+    @Deprecated
+    public Map<String, String> getParms() {
+        return firstValues;
+    }
+
+    @Override
+    public Map<String, List<String>> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public String getQueryParameterString() {
+        return queryString;
+    }
+
+    @Override
+    public String getUri() {
+        return uri;
+    }
+
+    @Override
+    public void parseBody(Map<String, String> files) {
+        // A GET has no body
+    }
+
+    @Override
+    public String getRemoteIpAddress() {
+        return parent.getRemoteIpAddress();
+    }
+
+    @Override
+    public String getRemoteHostName() {
+        return parent.getRemoteHostName();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
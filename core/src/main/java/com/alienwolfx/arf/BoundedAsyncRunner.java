@@ -0,0 +1,317 @@
+package com.alienwolfx.arf;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * AsyncRunner backed by a fixed set of worker threads and a bounded accept queue,
+ * replacing NanoHTTPD's default thread-per-connection runner. A connection holds its
+ * worker between keep-alive requests only while nobody else is waiting for one.
+ */
+public class BoundedAsyncRunner implements NanoHTTPD.AsyncRunner {
+
+    public enum OverflowPolicy {
+        // Block the accept thread until a queue slot frees up
+        QUEUE,
+        // Answer 503 with Retry-After and close the new connection
+        REJECT,
+        // Answer 503 to the longest-waiting connection and queue the new one
+        DROP_OLDEST
+    }
+
+    private static final long QUEUE_WAIT_MS = 250;
+
+    /** Makes NanoHTTPD's session for a connection, which only a NanoHTTPD subclass can construct. */
+    public interface SessionFactory {
+        NanoHTTPD.IHTTPSession create(InputStream inputStream, OutputStream outputStream, InetAddress address);
+    }
+
+    private final int workerCount;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final int retryAfterSeconds;
+    private final BlockingQueue<NanoHTTPD.ClientHandler> queue;
+    private final List<NanoHTTPD.ClientHandler> running = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger threadIds = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean open;
+
+    public BoundedAsyncRunner(int workerCount, int queueCapacity, OverflowPolicy overflowPolicy,
+                              int retryAfterSeconds) {
+        if (workerCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("workerCount and queueCapacity must be positive");
+        }
+        this.workerCount = workerCount;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler handler) {
+        startWorkers();
+        accepted.incrementAndGet();
+
+        switch (overflowPolicy) {
+            case QUEUE:
+                try {
+                    while (!queue.offer(handler, QUEUE_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                        if (!open) {
+                            reject(handler, rejected);
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    reject(handler, rejected);
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(handler)) {
+                    NanoHTTPD.ClientHandler oldest = queue.poll();
+                    if (oldest != null) {
+                        reject(oldest, dropped);
+                    }
+                }
+                break;
+            case REJECT:
+            default:
+                if (!queue.offer(handler)) {
+                    reject(handler, rejected);
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler handler) {
+        synchronized (running) {
+            running.remove(handler);
+        }
+    }
+
+    @Override
+    public void closeAll() {
+        List<NanoHTTPD.ClientHandler> toClose = new ArrayList<>();
+        synchronized (workers) {
+            open = false;
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            workers.clear();
+        }
+        queue.drainTo(toClose);
+        synchronized (running) {
+            toClose.addAll(running);
+            running.clear();
+        }
+        for (NanoHTTPD.ClientHandler handler : toClose) {
+            handler.close();
+        }
+    }
+
+    public int getWorkerCount() { return workerCount; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public int getQueueDepth() { return queue.size(); }
+    public long getAcceptedCount() { return accepted.get(); }
+    public long getRejectedCount() { return rejected.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+
+    public int getActiveCount() {
+        synchronized (running) {
+            return running.size();
+        }
+    }
+
+    private void startWorkers() {
+        if (open) {
+            return;
+        }
+        synchronized (workers) {
+            if (open) {
+                return;
+            }
+            for (int i = 0; i < workerCount; i++) {
+                Thread worker = new Thread(this::work, "arf-http-" + threadIds.incrementAndGet());
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+            open = true;
+        }
+    }
+
+    private void work() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                NanoHTTPD.ClientHandler handler = queue.take();
+                synchronized (running) {
+                    running.add(handler);
+                }
+                try {
+                    // ClientHandler.run() reports back through closed() when the connection ends
+                    handler.run();
+                } catch (RuntimeException e) {
+                    closed(handler);
+                    handler.close();
+                }
+            }
+        } catch (InterruptedException ignored) {
+            // closeAll() stops the pool
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Nothing left to do with it
+        }
+    }
+
+    private void reject(NanoHTTPD.ClientHandler handler, AtomicLong counter) {
+        counter.incrementAndGet();
+        if (handler instanceof RejectableClientHandler) {
+            ((RejectableClientHandler) handler).reject(retryAfterSeconds);
+        } else {
+            handler.close();
+        }
+    }
+
+    /**
+     * ClientHandler that keeps hold of its socket so an overflowing connection can be
+     * answered with a 503 before any request bytes have been read. It also replaces
+     * NanoHTTPD's request loop, which would block its worker in a read for the whole socket
+     * timeout whenever a browser keeps an idle connection open.
+     */
+    public static class RejectableClientHandler extends NanoHTTPD.ClientHandler {
+
+        /** Longest a connection may sit idle between requests when nobody is waiting. */
+        static final long KEEP_ALIVE_IDLE_MS = 2000;
+        /** Idle time after which a connection gives its worker to a queued one. */
+        static final long MIN_IDLE_MS = 100;
+        private static final int POLL_MS = 50;
+        private static final Logger LOG = Logger.getLogger(BoundedAsyncRunner.class.getName());
+        private static final byte[] BUSY_BODY =
+            "{\"success\":false,\"message\":\"Server busy\"}".getBytes(StandardCharsets.UTF_8);
+
+        private final InputStream inputStream;
+        private final Socket socket;
+        private final BoundedAsyncRunner runner;
+        private final SessionFactory sessions;
+
+        public RejectableClientHandler(NanoHTTPD server, InputStream inputStream, Socket socket,
+                                       BoundedAsyncRunner runner, SessionFactory sessions) {
+            server.super(inputStream, socket);
+            this.inputStream = inputStream;
+            this.socket = socket;
+            this.runner = runner;
+            this.sessions = sessions;
+        }
+
+        @Override
+        public void run() {
+            OutputStream outputStream = null;
+            try {
+                outputStream = socket.getOutputStream();
+                NanoHTTPD.IHTTPSession session = sessions.create(inputStream, outputStream, socket.getInetAddress());
+                // HTTPSession reads through its own buffer, which may already hold the next request
+                while (!socket.isClosed() && awaitRequest((BufferedInputStream) session.getInputStream())) {
+                    session.execute();
+                }
+            } catch (SocketException | SocketTimeoutException e) {
+                // The client or the idle limit ended the connection
+            } catch (Exception e) {
+                LOG.log(Level.SEVERE, "Error message", e);
+            } finally {
+                closeQuietly(outputStream);
+                closeQuietly(inputStream);
+                closeQuietly(socket);
+                runner.closed(this);
+            }
+        }
+
+        /**
+         * Waits for the first byte of the next request. Gives up, closing the connection,
+         * once it has been idle for {@link #KEEP_ALIVE_IDLE_MS}, or for {@link #MIN_IDLE_MS}
+         * while other connections are queued for a worker. The short grace keeps a client
+         * that is just about to send from losing its connection.
+         */
+        private boolean awaitRequest(BufferedInputStream in) throws IOException {
+            if (in.available() > 0) {
+                return true;
+            }
+            int readTimeout = socket.getSoTimeout();
+            long start = System.nanoTime();
+            try {
+                while (true) {
+                    long idleMs = (System.nanoTime() - start) / 1000000L;
+                    if (idleMs >= KEEP_ALIVE_IDLE_MS || (idleMs >= MIN_IDLE_MS && runner.getQueueDepth() > 0)) {
+                        return false;
+                    }
+                    socket.setSoTimeout(POLL_MS);
+                    in.mark(1);
+                    try {
+                        if (in.read() == -1) {
+                            return false;
+                        }
+                        in.reset();
+                        return true;
+                    } catch (SocketTimeoutException e) {
+                        // Nothing yet; check the queue again
+                    }
+                }
+            } finally {
+                if (!socket.isClosed()) {
+                    socket.setSoTimeout(readTimeout);
+                }
+            }
+        }
+
+        void reject(int retryAfterSeconds) {
+            try {
+                String head = "HTTP/1.1 503 Service Unavailable\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + "Content-Length: " + BUSY_BODY.length + "\r\n"
+                    + "Retry-After: " + retryAfterSeconds + "\r\n"
+                    + "Connection: close\r\n\r\n";
+                OutputStream out = socket.getOutputStream();
+                out.write(head.getBytes(StandardCharsets.US_ASCII));
+                out.write(BUSY_BODY);
+                out.flush();
+                socket.shutdownOutput();
+            } catch (IOException ignored) {
+                // Client already went away
+            } finally {
+                close();
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.alienwolfx.arf;
+
+import java.io.InputStream;
+import java.io.PrintWriter;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * A fixed-length response that carries its length as a header, which is how the server
+ * tells bodies it has in hand from streams. NanoHTTPD frames the body by that header and
+ * skips its own gzip, but writes Content-Length itself, so the copy here is not printed.
+ */
+final class BufferedResponse extends NanoHTTPD.Response {
+
+    BufferedResponse(IStatus status, String mimeType, InputStream data, long length) {
+        super(status, mimeType, data, length);
+        addHeader("Content-Length", Long.toString(length));
+    }
+
+    @Override
+    protected void printHeader(PrintWriter pw, String key, String value) {
+        if (!"Content-Length".equalsIgnoreCase(key)) {
+            super.printHeader(pw, key, value);
+        }
+    }
+}
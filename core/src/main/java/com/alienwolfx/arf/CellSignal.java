@@ -0,0 +1,39 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/** One registered cell's measurements; fields the radio does not report are null. */
+public class CellSignal implements JsonCodec.Writable {
+    private final String type;
+    private final int level;
+    private final Integer dbm;
+    private final Integer rsrp;
+    private final Integer rsrq;
+    private final Integer sinr;
+
+    public CellSignal(String type, int level, Integer dbm, Integer rsrp, Integer rsrq, Integer sinr) {
+        this.type = type;
+        this.level = level;
+        this.dbm = dbm;
+        this.rsrp = rsrp;
+        this.rsrq = rsrq;
+        this.sinr = sinr;
+    }
+
+    public String getType() { return type; }
+    public Integer getDbm() { return dbm; }
+
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("type").value(type);
+        writer.name("level").value(level);
+        writer.name("dbm").value(dbm);
+        writer.name("rsrp").value(rsrp);
+        writer.name("rsrq").value(rsrq);
+        writer.name("sinr").value(sinr);
+        writer.endObject();
+    }
+}
@@ -0,0 +1,68 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+public class DeviceInfo implements JsonCodec.Writable {
+    private String model;
+    private String manufacturer;
+    private String version;
+    private String serial;
+    private String imei;
+    private String esn;
+
+    public DeviceInfo(String model, String manufacturer, String version,
+                     String serial, String imei, String esn) {
+        this.model = model;
+        this.manufacturer = manufacturer;
+        this.version = version;
+        this.serial = serial;
+        this.imei = imei;
+        this.esn = esn;
+    }
+
+    public String getImei() {
+        return imei;
+    }
+
+    public void setImei(String imei) {
+        this.imei = imei;
+    }
+
+    public String getEsn() {
+        return esn;
+    }
+
+    public void setEsn(String esn) {
+        this.esn = esn;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public String getSerial() {
+        return serial;
+    }
+
+    public void setSerial(String serial) {
+        this.serial = serial;
+    }
+
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("model").value(model);
+        writer.name("manufacturer").value(manufacturer);
+        writer.name("version").value(version);
+        writer.name("serial").value(serial);
+        writer.name("imei").value(imei);
+        writer.name("esn").value(esn);
+        writer.endObject();
+    }
+}
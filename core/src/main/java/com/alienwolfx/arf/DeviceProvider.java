@@ -0,0 +1,32 @@
+package com.alienwolfx.arf;
+
+/** Device identity, SIM and resource readings. */
+public interface DeviceProvider {
+
+    interface Listener {
+        /** The SIM was inserted, removed or changed state. */
+        void onSimChanged();
+    }
+
+    DeviceInfo getDeviceInfo() throws Exception;
+
+    SimInfo getSimInfo() throws Exception;
+
+    SystemResources getSystemResources() throws Exception;
+
+    /** The {@link DeviceInfo} attributes, each computed only if written. */
+    LazyFields getDeviceFields();
+
+    /** The {@link SimInfo} attributes, each computed only if written. */
+    LazyFields getSimFields();
+
+    /** The {@link SystemResources} attributes, each computed only if written. */
+    LazyFields getResourceFields();
+
+    /** Garbage collections since the process started, or -1 if the runtime does not say. */
+    long getGcCount();
+
+    void start(Listener listener);
+
+    void stop();
+}
@@ -0,0 +1,43 @@
+package com.alienwolfx.arf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assets under a directory. Each file is mapped read-only on first use and remapped when
+ * its size or modification time changes; replace files by renaming rather than rewriting
+ * them in place, since a mapping of a truncated file faults on read.
+ */
+public class DirectoryAssetSource implements AssetSource {
+
+    private final File root;
+    private final Map<String, StaticAsset> mapped = new ConcurrentHashMap<>();
+
+    public DirectoryAssetSource(File root) {
+        this.root = root;
+    }
+
+    @Override
+    public StaticAsset open(String path) throws IOException {
+        File file = new File(root, path);
+        if (!file.isFile()) {
+            mapped.remove(path);
+            return null;
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        StaticAsset asset = mapped.get(path);
+        if (asset != null && asset.getLastModified() == lastModified && asset.getLength() == length) {
+            return asset;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            asset = new StaticAsset(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length), lastModified);
+        }
+        mapped.put(path, asset);
+        return asset;
+    }
+}
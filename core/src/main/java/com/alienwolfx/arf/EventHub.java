@@ -0,0 +1,140 @@
+package com.alienwolfx.arf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans server-sent events out to subscribers. Each event is encoded once and the same
+ * frame is queued for every subscriber of its topic; slow subscribers lose their oldest
+ * frames rather than holding up the producer.
+ */
+public class EventHub {
+
+    private static final int SUBSCRIBER_QUEUE_CAPACITY = 32;
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RETRY = "retry: 5000\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final int maxSubscribers;
+    private final long heartbeatMs;
+    private final CopyOnWriteArrayList<Subscription> subscribers = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, byte[]> lastFrames = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public EventHub(int maxSubscribers, long heartbeatMs) {
+        this.maxSubscribers = maxSubscribers;
+        this.heartbeatMs = heartbeatMs;
+    }
+
+    public void publish(String topic, byte[] json) {
+        byte[] frame = frame(sequence.incrementAndGet(), topic, json);
+        lastFrames.put(topic, frame);
+        for (Subscription subscription : subscribers) {
+            if (subscription.topics.contains(topic)) {
+                subscription.offer(frame);
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Opens a stream replaying the latest event of each topic, then following new ones.
+     * Returns null when the subscriber limit has been reached.
+     */
+    public synchronized Subscription subscribe(Set<String> topics) {
+        if (subscribers.size() >= maxSubscribers) {
+            return null;
+        }
+        Subscription subscription = new Subscription(topics);
+        subscription.offer(RETRY);
+        for (String topic : topics) {
+            byte[] last = lastFrames.get(topic);
+            if (last != null) {
+                subscription.offer(last);
+            }
+        }
+        subscribers.add(subscription);
+        return subscription;
+    }
+
+    public void closeAll() {
+        for (Subscription subscription : subscribers) {
+            subscription.close();
+        }
+    }
+
+    private static byte[] frame(long id, String topic, byte[] json) {
+        byte[] head = ("id: " + id + "\nevent: " + topic + "\ndata: ").getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[head.length + json.length + 2];
+        System.arraycopy(head, 0, frame, 0, head.length);
+        System.arraycopy(json, 0, frame, head.length, json.length);
+        frame[frame.length - 2] = '\n';
+        frame[frame.length - 1] = '\n';
+        return frame;
+    }
+
+    /** Response body for one event-stream client; closing it unsubscribes. */
+    public class Subscription extends InputStream {
+        private final Set<String> topics;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(SUBSCRIBER_QUEUE_CAPACITY);
+        private byte[] current;
+        private int position;
+        private volatile boolean closed;
+
+        Subscription(Set<String> topics) {
+            this.topics = topics;
+        }
+
+        void offer(byte[] frame) {
+            while (!queue.offer(frame)) {
+                queue.poll();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (current == null || position >= current.length) {
+                if (closed) {
+                    return -1;
+                }
+                try {
+                    current = queue.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+                // The heartbeat doubles as disconnect detection: writing it fails once the client is gone
+                if (current == null) {
+                    current = HEARTBEAT;
+                }
+                position = 0;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            subscribers.remove(this);
+        }
+    }
+}
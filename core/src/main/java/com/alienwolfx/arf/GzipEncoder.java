@@ -0,0 +1,235 @@
+package com.alienwolfx.arf;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip for in-memory response bodies, with a small pool of raw Deflaters so a request
+ * does not pay for zlib setup. Besides whole bodies it can {@link #splice} a segment that
+ * was deflated once between per-request literal bytes: a sampled payload is compressed
+ * when first asked for and then wrapped in a fresh envelope on every request without
+ * touching the compressor again.
+ */
+public class GzipEncoder {
+
+    /** Smaller bodies fit in a packet or two already; gzip would only add latency. */
+    public static final int MIN_SIZE = 1024;
+    /** Per-request bodies favour speed; cached ones are compressed once, so take the ratio. */
+    public static final int DYNAMIC_LEVEL = Deflater.BEST_SPEED;
+    public static final int CACHED_LEVEL = Deflater.BEST_COMPRESSION;
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int TRAILER_SIZE = 8;
+    private static final int MAX_STORED_BLOCK = 65535;
+
+    private final ArrayBlockingQueue<Deflater> idle;
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    public GzipEncoder(int poolSize) {
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /** True if the Accept-Encoding value lists gzip (or *) without q=0. */
+    public static boolean accepts(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase();
+            if (!"gzip".equals(coding) && !"x-gzip".equals(coding) && !"*".equals(coding)) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            return !refused;
+        }
+        return false;
+    }
+
+    /** Compresses {@code data[off, off+len)} into one complete gzip member. */
+    public byte[] gzip(byte[] data, int off, int len, int level) {
+        long start = System.nanoTime();
+        Output out = new Output(HEADER.length + len / 4 + 64);
+        out.write(HEADER, 0, HEADER.length);
+        Deflater deflater = acquire(level);
+        try {
+            deflater.setInput(data, off, len);
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.ensure(4096);
+                out.size += deflater.deflate(out.bytes, out.size, out.bytes.length - out.size);
+            }
+        } finally {
+            release(deflater);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+        writeTrailer(out, crc.getValue(), len);
+        byte[] result = out.toByteArray();
+        record(len, result.length, start);
+        return result;
+    }
+
+    /**
+     * Deflates {@code data} into a segment for {@link #splice}: no final block, and it ends
+     * on a byte boundary, so it can sit between other blocks of a stream. Its back-references
+     * stay inside the segment, so whatever precedes it does not matter.
+     */
+    public byte[] deflateSegment(byte[] data, int level) {
+        Output out = new Output(data.length / 4 + 64);
+        Deflater deflater = acquire(level);
+        try {
+            deflater.setInput(data, 0, data.length);
+            int written;
+            do {
+                out.ensure(4096);
+                int space = out.bytes.length - out.size;
+                written = deflater.deflate(out.bytes, out.size, space, Deflater.SYNC_FLUSH);
+                out.size += written;
+                // A full output buffer may mean the flush is not complete yet
+                if (written < space) {
+                    break;
+                }
+            } while (true);
+        } finally {
+            release(deflater);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * One gzip member for {@code head + segmentData + tail}, with {@code segment} being
+     * {@link #deflateSegment} of {@code segmentData}. Head and tail go out as stored blocks,
+     * so the only per-request work is a CRC over the uncompressed bytes.
+     */
+    public byte[] splice(byte[] head, byte[] segment, byte[] segmentData, byte[] tail) {
+        long start = System.nanoTime();
+        Output out = new Output(HEADER.length + head.length + segment.length + tail.length + 32);
+        out.write(HEADER, 0, HEADER.length);
+        writeStored(out, head, false);
+        out.write(segment, 0, segment.length);
+        writeStored(out, tail, true);
+        CRC32 crc = new CRC32();
+        crc.update(head, 0, head.length);
+        crc.update(segmentData, 0, segmentData.length);
+        crc.update(tail, 0, tail.length);
+        writeTrailer(out, crc.getValue(), head.length + segmentData.length + tail.length);
+        byte[] result = out.toByteArray();
+        record(head.length + segmentData.length + tail.length, result.length, start);
+        return result;
+    }
+
+    /** Counts a compressed response served from a cached body, which cost no CPU here. */
+    public void recordCached(int uncompressed, int compressed) {
+        responses.incrementAndGet();
+        bytesIn.addAndGet(uncompressed);
+        bytesOut.addAndGet(compressed);
+    }
+
+    public long getResponses() {
+        return responses.get();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /** Time spent compressing on request threads, in nanoseconds. */
+    public long getNanos() {
+        return nanos.get();
+    }
+
+    private void record(long in, long out, long start) {
+        nanos.addAndGet(System.nanoTime() - start);
+        responses.incrementAndGet();
+        bytesIn.addAndGet(in);
+        bytesOut.addAndGet(out);
+    }
+
+    private Deflater acquire(int level) {
+        Deflater deflater = idle.poll();
+        if (deflater == null) {
+            return new Deflater(level, true);
+        }
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        if (!idle.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private static void writeStored(Output out, byte[] data, boolean last) {
+        int pos = 0;
+        do {
+            int len = Math.min(MAX_STORED_BLOCK, data.length - pos);
+            boolean finalBlock = last && pos + len == data.length;
+            out.ensure(5 + len);
+            out.bytes[out.size++] = (byte) (finalBlock ? 1 : 0);
+            out.bytes[out.size++] = (byte) len;
+            out.bytes[out.size++] = (byte) (len >>> 8);
+            out.bytes[out.size++] = (byte) ~len;
+            out.bytes[out.size++] = (byte) (~len >>> 8);
+            out.write(data, pos, len);
+            pos += len;
+        } while (pos < data.length);
+    }
+
+    private static void writeTrailer(Output out, long crc, long length) {
+        out.ensure(TRAILER_SIZE);
+        for (int i = 0; i < 4; i++) {
+            out.bytes[out.size++] = (byte) (crc >>> (8 * i));
+        }
+        for (int i = 0; i < 4; i++) {
+            out.bytes[out.size++] = (byte) (length >>> (8 * i));
+        }
+    }
+
+    private static final class Output {
+        byte[] bytes;
+        int size;
+
+        Output(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void write(byte[] data, int off, int len) {
+            ensure(len);
+            System.arraycopy(data, off, bytes, size, len);
+            size += len;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.alienwolfx.arf;
+
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/** Status codes NanoHTTPD 2.3.1 has no constant for, such as those relayed from upstream. */
+final class HttpStatus implements Response.IStatus {
+
+    static final Response.IStatus BAD_GATEWAY = new HttpStatus(502, "Bad Gateway");
+    static final Response.IStatus GATEWAY_TIMEOUT = new HttpStatus(504, "Gateway Timeout");
+
+    private final int code;
+    private final String reason;
+
+    private HttpStatus(int code, String reason) {
+        this.code = code;
+        this.reason = reason;
+    }
+
+    /** NanoHTTPD's constant for {@code code} when it has one. */
+    static Response.IStatus of(int code) {
+        Response.Status status = Response.Status.lookup(code);
+        return status != null ? status : new HttpStatus(code, "Status " + code);
+    }
+
+    @Override
+    public String getDescription() {
+        return code + " " + reason;
+    }
+
+    @Override
+    public int getRequestStatus() {
+        return code;
+    }
+}
@@ -0,0 +1,157 @@
+package com.alienwolfx.arf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writer that encodes straight into a growable UTF-8 byte array, so a serialized body
+ * never exists as a String. {@link JsonCodec} keeps one per thread and hands the array
+ * to the response without copying; {@link #reset()} invalidates streams opened before it.
+ */
+public class JsonBuffer extends Writer {
+
+    private static final int INITIAL_CAPACITY = 4096;
+    // Larger arrays are dropped on reset so one big response does not pin memory per thread
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int size;
+    private int generation;
+    private char pendingHigh;
+
+    public void reset() {
+        if (bytes.length > MAX_RETAINED_CAPACITY) {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+        size = 0;
+        pendingHigh = 0;
+        generation++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /** Reads the current contents in place; fails if the buffer is reset before it is drained. */
+    public InputStream newInputStream() {
+        return new Contents();
+    }
+
+    @Override
+    public void write(int c) {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int off, int len) {
+        ensure(len * 3);
+        for (int i = off; i < off + len; i++) {
+            writeChar(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String s, int off, int len) {
+        ensure(len * 3);
+        for (int i = off; i < off + len; i++) {
+            writeChar(s.charAt(i));
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void writeChar(char c) {
+        if (c < 0x80 && pendingHigh == 0) {
+            ensure(1);
+            bytes[size++] = (byte) c;
+            return;
+        }
+        ensure(4);
+        if (pendingHigh != 0) {
+            char high = pendingHigh;
+            pendingHigh = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                bytes[size++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[size++] = (byte) (0x80 | (codePoint & 0x3f));
+                return;
+            }
+            // Unpaired surrogate: substitute as the platform encoder would
+            bytes[size++] = '?';
+            writeChar(c);
+            return;
+        }
+        if (c < 0x80) {
+            bytes[size++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[size++] = (byte) (0xc0 | (c >> 6));
+            bytes[size++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHigh = c;
+        } else if (Character.isLowSurrogate(c)) {
+            bytes[size++] = '?';
+        } else {
+            bytes[size++] = (byte) (0xe0 | (c >> 12));
+            bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            bytes[size++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+
+    private class Contents extends InputStream {
+        private final int expectedGeneration = generation;
+        private final int end = size;
+        private int position;
+
+        @Override
+        public int read() throws IOException {
+            check();
+            return position < end ? bytes[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            check();
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int n = Math.min(len, end - position);
+            System.arraycopy(bytes, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return end - position;
+        }
+
+        private void check() throws IOException {
+            if (generation != expectedGeneration) {
+                throw new IOException("Response buffer was reused before it was sent");
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * The server's single Gson plus the envelope writer. Response types implement
+ * {@link Writable} and serialize themselves field by field, so encoding needs no
+ * reflection; output goes into a per-thread {@link JsonBuffer} that the response reads
+ * in place. Request bodies are still parsed reflectively.
+ */
+public class JsonCodec {
+
+    /** A type that writes its own JSON; null fields are dropped by the writer, as Gson does. */
+    public interface Writable {
+        void writeJson(JsonWriter writer) throws IOException;
+    }
+
+    private final Gson gson = new GsonBuilder()
+        .registerTypeAdapterFactory(new WritableAdapterFactory())
+        .create();
+
+    private final ThreadLocal<JsonBuffer> buffers = new ThreadLocal<JsonBuffer>() {
+        @Override
+        protected JsonBuffer initialValue() {
+            return new JsonBuffer();
+        }
+    };
+
+    public Gson getGson() {
+        return gson;
+    }
+
+    /** Builds the reflective adapters for these request types ahead of their first use. */
+    public void prepare(Class<?>... types) {
+        for (Class<?> type : types) {
+            gson.getAdapter(type);
+        }
+    }
+
+    public <T> T fromJson(String json, Class<T> type) {
+        return gson.fromJson(json, type);
+    }
+
+    /**
+     * Writes {"success","message","data"} into this thread's buffer and returns it. The
+     * contents stay valid until the thread encodes again, which for a NanoHTTPD worker
+     * is after the response has been sent.
+     */
+    public JsonBuffer envelope(boolean success, String message, Object data) throws IOException {
+        JsonBuffer buffer = buffers.get();
+        buffer.reset();
+        JsonWriter writer = newWriter(buffer);
+        writer.beginObject();
+        writer.name("success").value(success);
+        writer.name("message").value(message);
+        if (data != null) {
+            writer.name("data");
+            writeValue(writer, data);
+        }
+        writer.endObject();
+        writer.flush();
+        return buffer;
+    }
+
+    /** Encodes a value into a new array, for payloads that are kept after the request. */
+    public byte[] encode(Object value) throws IOException {
+        JsonBuffer buffer = buffers.get();
+        buffer.reset();
+        JsonWriter writer = newWriter(buffer);
+        writeValue(writer, value);
+        writer.flush();
+        return buffer.toByteArray();
+    }
+
+    /** Like {@link #envelope} but copied out, for bodies that are cached. */
+    public byte[] encodeEnvelope(boolean success, String message, Object data) throws IOException {
+        return envelope(success, message, data).toByteArray();
+    }
+
+    private JsonWriter newWriter(JsonBuffer buffer) throws IOException {
+        JsonWriter writer = gson.newJsonWriter(buffer);
+        // Gson 2.8 leaves this off for its own writers but escapes <, >, &, = and ' in toJson
+        writer.setHtmlSafe(gson.htmlSafe());
+        return writer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(JsonWriter writer, Object value) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+        } else if (value instanceof Writable) {
+            ((Writable) value).writeJson(writer);
+        } else {
+            ((TypeAdapter<Object>) gson.getAdapter(value.getClass())).write(writer, value);
+        }
+    }
+
+    private static final class WritableAdapterFactory implements TypeAdapterFactory {
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (!Writable.class.isAssignableFrom(type.getRawType())) {
+                return null;
+            }
+            TypeAdapter<T> reflective = gson.getDelegateAdapter(this, type);
+            return new TypeAdapter<T>() {
+                @Override
+                public void write(JsonWriter out, T value) throws IOException {
+                    if (value == null) {
+                        out.nullValue();
+                    } else {
+                        ((Writable) value).writeJson(out);
+                    }
+                }
+
+                @Override
+                public T read(JsonReader in) throws IOException {
+                    return reflective.read(in);
+                }
+            };
+        }
+    }
+}
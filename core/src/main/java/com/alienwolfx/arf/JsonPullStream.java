@@ -0,0 +1,82 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * InputStream that produces a JSON document on demand. NanoHTTPD pulls from it while
+ * sending a chunked response, and each pull asks the subclass for the next piece, so
+ * only one piece is ever held in memory regardless of the document size.
+ */
+public abstract class JsonPullStream extends InputStream {
+
+    private final PieceBuffer buffer = new PieceBuffer();
+    private final JsonWriter writer;
+    private int readPos;
+    private boolean finished;
+
+    protected JsonPullStream() {
+        writer = new JsonWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        // Same escaping as the Gson-encoded routes, so a streamed page matches a buffered one
+        writer.setHtmlSafe(true);
+    }
+
+    /** Writes the next piece of the document; returns false once the document is complete. */
+    protected abstract boolean writeNext(JsonWriter writer) throws IOException;
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer.bytes()[readPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.size() - readPos);
+        System.arraycopy(buffer.bytes(), readPos, b, off, n);
+        readPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return buffer.size() - readPos;
+    }
+
+    private boolean fill() throws IOException {
+        while (readPos >= buffer.size()) {
+            if (finished) {
+                return false;
+            }
+            // reset() keeps the backing array, so memory stays at the largest piece written
+            buffer.reset();
+            readPos = 0;
+            finished = !writeNext(writer);
+            writer.flush();
+        }
+        return true;
+    }
+
+    private static class PieceBuffer extends ByteArrayOutputStream {
+        PieceBuffer() {
+            super(8192);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
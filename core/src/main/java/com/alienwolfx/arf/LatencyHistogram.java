@@ -0,0 +1,85 @@
+package com.alienwolfx.arf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket latency histogram updated without locks. Recording is a bucket scan and
+ * three atomic adds; quantiles are estimated at read time by interpolating inside the
+ * bucket that holds them, so they are only as precise as the bucket bounds.
+ */
+public class LatencyHistogram {
+
+    /** Upper bounds in microseconds; a final overflow bucket catches everything slower. */
+    static final long[] BOUNDS_MICROS = {
+        1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+        1000000, 2500000, 5000000, 10000000, 30000000
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MICROS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long micros) {
+        int bucket = 0;
+        while (bucket < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSumMicros() {
+        return sumMicros.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /** Per-bucket counts, not cumulative; the last entry is the overflow bucket. */
+    public long[] snapshot() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /** Estimated q-quantile in microseconds from a {@link #snapshot()}; 0 when empty. */
+    public long quantile(long[] counts, double q) {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double rank = q * total;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 && seen + counts[i] >= rank) {
+                long max = maxMicros.get();
+                if (i == BOUNDS_MICROS.length) {
+                    return max;
+                }
+                long lower = i == 0 ? 0 : BOUNDS_MICROS[i - 1];
+                long upper = BOUNDS_MICROS[i];
+                long estimate = lower + (long) ((upper - lower) * ((rank - seen) / counts[i]));
+                return Math.min(estimate, max);
+            }
+            seen += counts[i];
+        }
+        return maxMicros.get();
+    }
+}
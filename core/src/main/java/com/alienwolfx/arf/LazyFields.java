@@ -0,0 +1,105 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * A JSON object whose attributes are only computed when written. Providers describe every
+ * attribute they can produce; {@link #select} keeps the requested ones, so a client asking
+ * for one field pays for one field. Instances are built per request and are not thread-safe.
+ */
+public class LazyFields implements JsonCodec.Writable {
+
+    private final Map<String, Callable<?>> values = new LinkedHashMap<>();
+
+    public LazyFields add(String name, Callable<?> value) {
+        values.put(name, value);
+        return this;
+    }
+
+    public Set<String> getNames() {
+        return values.keySet();
+    }
+
+    /** Keeps the named attributes in declaration order; unknown names are ignored. */
+    public LazyFields select(Collection<String> names) {
+        LazyFields selected = new LazyFields();
+        for (Map.Entry<String, Callable<?>> entry : values.entrySet()) {
+            if (names.contains(entry.getKey())) {
+                selected.values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return selected;
+    }
+
+    /** Wraps a source shared by several attributes so it runs at most once per instance. */
+    public static <T> Callable<T> once(final Callable<T> source) {
+        return new Callable<T>() {
+            private boolean done;
+            private T value;
+
+            @Override
+            public T call() throws Exception {
+                if (!done) {
+                    value = source.call();
+                    done = true;
+                }
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        for (Map.Entry<String, Callable<?>> entry : values.entrySet()) {
+            Object value;
+            try {
+                value = entry.getValue().call();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Error collecting " + entry.getKey(), e);
+            }
+            writer.name(entry.getKey());
+            writeValue(writer, value);
+        }
+        writer.endObject();
+    }
+
+    private static void writeValue(JsonWriter writer, Object value) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+        } else if (value instanceof JsonCodec.Writable) {
+            ((JsonCodec.Writable) value).writeJson(writer);
+        } else if (value instanceof String) {
+            writer.value((String) value);
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof List) {
+            writer.beginArray();
+            for (Object item : (List<?>) value) {
+                writeValue(writer, item);
+            }
+            writer.endArray();
+        } else if (value instanceof Map) {
+            writer.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writer.name(String.valueOf(entry.getKey()));
+                writeValue(writer, entry.getValue());
+            }
+            writer.endObject();
+        } else {
+            throw new IOException("Cannot write " + value.getClass().getName());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** Immutable snapshot of the default network: transport, addresses per interface and DNS. */
+public class LinkState implements JsonCodec.Writable {
+
+    public static final LinkState DISCONNECTED = new LinkState("unknown", false, false, false,
+        Collections.<String, List<String>>emptyMap(), Collections.<String>emptyList(), 0);
+
+    private final String transport;
+    private final boolean connected;
+    private final boolean metered;
+    private final boolean validated;
+    private final Map<String, List<String>> interfaces;
+    private final List<String> dnsServers;
+    private final long updated;
+
+    public LinkState(String transport, boolean connected, boolean metered, boolean validated,
+                     Map<String, List<String>> interfaces, List<String> dnsServers, long updated) {
+        this.transport = transport;
+        this.connected = connected;
+        this.metered = metered;
+        this.validated = validated;
+        this.interfaces = interfaces;
+        this.dnsServers = dnsServers;
+        this.updated = updated;
+    }
+
+    public String getTransport() { return transport; }
+    public boolean isConnected() { return connected; }
+    public boolean isMetered() { return metered; }
+    public boolean isValidated() { return validated; }
+    public Map<String, List<String>> getInterfaces() { return interfaces; }
+    public List<String> getDnsServers() { return dnsServers; }
+    public long getUpdated() { return updated; }
+
+    /** Every address across all interfaces, in interface order. */
+    public List<String> getIpAddresses() {
+        List<String> addresses = new ArrayList<>();
+        for (List<String> values : interfaces.values()) {
+            addresses.addAll(values);
+        }
+        return addresses;
+    }
+
+    public boolean sameLink(LinkState other) {
+        return transport.equals(other.transport) && connected == other.connected
+            && metered == other.metered && validated == other.validated
+            && interfaces.equals(other.interfaces) && dnsServers.equals(other.dnsServers);
+    }
+
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("networkType").value(transport);
+        writer.name("connected").value(connected);
+        writer.name("metered").value(metered);
+        writer.name("validated").value(validated);
+        writeInterfaces(writer);
+        writeStrings(writer, "dnsServers", dnsServers);
+        writer.name("updated").value(updated);
+        writer.endObject();
+    }
+
+    void writeInterfaces(JsonWriter writer) throws IOException {
+        writer.name("interfaces").beginObject();
+        for (Map.Entry<String, List<String>> entry : interfaces.entrySet()) {
+            writeStrings(writer, entry.getKey(), entry.getValue());
+        }
+        writer.endObject();
+    }
+
+    static void writeStrings(JsonWriter writer, String name, List<String> values) throws IOException {
+        writer.name(name).beginArray();
+        for (String value : values) {
+            writer.value(value);
+        }
+        writer.endArray();
+    }
+}
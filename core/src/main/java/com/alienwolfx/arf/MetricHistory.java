@@ -0,0 +1,341 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed-width metric history kept in memory-mapped ring files, one per resolution, so it
+ * survives restarts. Every sample lands in the raw tier; the rollup tier receives one
+ * averaged record per rollup interval. New records are staged in memory and copied into
+ * the maps in batches, so flash sees one write per tier per flush rather than one per
+ * sample.
+ */
+public class MetricHistory {
+
+    public static final String RESOLUTION_RAW = "raw";
+    public static final String RESOLUTION_ROLLUP = "1m";
+
+    private static final long ROLLUP_INTERVAL_MS = 60 * 1000;
+
+    private final String[] fields;
+    private final Tier raw;
+    private final Tier rollup;
+    private final long flushIntervalMs;
+    private final double[] rollupSums;
+    private final int[] rollupCounts;
+    private long rollupBucket = -1;
+    private long lastFlush;
+
+    /**
+     * @param fields names of the float values in each record, in record order
+     */
+    public MetricHistory(File dir, String[] fields, int rawCapacity, int rollupCapacity, long flushIntervalMs) {
+        this.fields = fields;
+        this.raw = new Tier(new File(dir, "history-raw.bin"), fields.length, rawCapacity);
+        this.rollup = new Tier(new File(dir, "history-1m.bin"), fields.length, rollupCapacity);
+        this.flushIntervalMs = flushIntervalMs;
+        this.rollupSums = new double[fields.length];
+        this.rollupCounts = new int[fields.length];
+    }
+
+    public synchronized void open() throws IOException {
+        raw.open();
+        rollup.open();
+    }
+
+    /** Appends a sample; NaN marks a value that could not be read. */
+    public synchronized void record(long timeMs, float[] values) {
+        long bucket = timeMs / ROLLUP_INTERVAL_MS;
+        if (rollupBucket >= 0 && bucket != rollupBucket) {
+            closeRollup();
+        }
+        rollupBucket = bucket;
+        for (int i = 0; i < fields.length; i++) {
+            if (!Float.isNaN(values[i])) {
+                rollupSums[i] += values[i];
+                rollupCounts[i]++;
+            }
+        }
+
+        raw.append(timeMs, values);
+        if (lastFlush == 0) {
+            lastFlush = timeMs;
+        } else if (timeMs - lastFlush >= flushIntervalMs || raw.isStagingFull() || rollup.isStagingFull()) {
+            flush();
+            lastFlush = timeMs;
+        }
+    }
+
+    public synchronized void flush() {
+        raw.flush();
+        rollup.flush();
+    }
+
+    /** Writes out the partly filled rollup minute too, so a restart does not lose it. */
+    public synchronized void close() {
+        if (rollupBucket >= 0) {
+            closeRollup();
+            rollupBucket = -1;
+        }
+        flush();
+        raw.close();
+        rollup.close();
+    }
+
+    public String[] getFields() {
+        return fields;
+    }
+
+    /** The raw tier if it still reaches back to fromMs, otherwise the rollup tier. */
+    public String resolutionFor(long fromMs) {
+        long oldest = raw.oldestTime();
+        return oldest != Long.MIN_VALUE && oldest <= fromMs ? RESOLUTION_RAW : RESOLUTION_ROLLUP;
+    }
+
+    /** Streams the points of one tier with timestamps in [fromMs, toMs]. */
+    public JsonPullStream query(String resolution, long fromMs, long toMs) {
+        Tier tier = RESOLUTION_RAW.equals(resolution) ? raw : rollup;
+        return new QueryStream(tier, resolution, fromMs, toMs);
+    }
+
+    private void closeRollup() {
+        float[] averages = new float[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            averages[i] = rollupCounts[i] > 0 ? (float) (rollupSums[i] / rollupCounts[i]) : Float.NaN;
+            rollupSums[i] = 0;
+            rollupCounts[i] = 0;
+        }
+        rollup.append(rollupBucket * ROLLUP_INTERVAL_MS, averages);
+    }
+
+    private class QueryStream extends JsonPullStream {
+        private static final int POINTS_PER_PIECE = 256;
+
+        private final Tier tier;
+        private final String resolution;
+        private final long toMs;
+        private final float[] values = new float[fields.length];
+        private long next;
+        private boolean started;
+
+        QueryStream(Tier tier, String resolution, long fromMs, long toMs) {
+            this.tier = tier;
+            this.resolution = resolution;
+            this.toMs = toMs;
+            this.next = tier.firstAtOrAfter(fromMs);
+        }
+
+        @Override
+        protected boolean writeNext(JsonWriter writer) throws IOException {
+            if (!started) {
+                writer.beginObject();
+                writer.name("success").value(true);
+                writer.name("message").value("Success");
+                writer.name("data").beginObject();
+                writer.name("resolution").value(resolution);
+                writer.name("fields").beginArray();
+                writer.value("time");
+                for (String field : fields) {
+                    writer.value(field);
+                }
+                writer.endArray();
+                writer.name("points").beginArray();
+                started = true;
+            }
+            for (int i = 0; i < POINTS_PER_PIECE; i++) {
+                long time = tier.read(next, values);
+                // Past the end, past the range, or overwritten since the query started
+                if (time == Long.MIN_VALUE || time > toMs) {
+                    writer.endArray();
+                    writer.endObject();
+                    writer.endObject();
+                    return false;
+                }
+                next++;
+                writer.beginArray();
+                writer.value(time);
+                for (float value : values) {
+                    if (Float.isNaN(value)) {
+                        writer.nullValue();
+                    } else {
+                        // Boxed so the writer prints the float's shortest form, not its double widening
+                        writer.value(Float.valueOf(value));
+                    }
+                }
+                writer.endArray();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * One ring file. Records are addressed by an ever-increasing sequence number; the
+     * record with sequence s lives in slot s % capacity until it is overwritten. Lookups
+     * rely on times never decreasing with the sequence, so a record older than the newest
+     * one (a boot without a real-time clock, or NTP stepping back) starts the tier over.
+     */
+    private static final class Tier {
+        // magic, layout (record size), capacity, then the sequence number of the next record
+        private static final int MAGIC = 0x41524648;
+        private static final int HEADER_SIZE = 32;
+        private static final int STAGING_RECORDS = 64;
+
+        private final File file;
+        private final int fieldCount;
+        private final int recordSize;
+        private final int capacity;
+        private final ByteBuffer staging;
+        private RandomAccessFile handle;
+        private MappedByteBuffer map;
+        // Sequence of the next record to be written into the map
+        private long flushed;
+        private int staged;
+
+        Tier(File file, int fieldCount, int capacity) {
+            this.file = file;
+            this.fieldCount = fieldCount;
+            this.recordSize = 8 + 4 * fieldCount;
+            this.capacity = capacity;
+            this.staging = ByteBuffer.allocate(STAGING_RECORDS * recordSize);
+        }
+
+        synchronized void open() throws IOException {
+            handle = new RandomAccessFile(file, "rw");
+            long size = HEADER_SIZE + (long) capacity * recordSize;
+            boolean fresh = handle.length() != size;
+            if (fresh) {
+                handle.setLength(0);
+                handle.setLength(size);
+            }
+            map = handle.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (fresh || map.getInt(0) != MAGIC || map.getInt(4) != recordSize || map.getInt(8) != capacity) {
+                // Missing, or written with a different layout: start over
+                map.putInt(0, MAGIC);
+                map.putInt(4, recordSize);
+                map.putInt(8, capacity);
+                map.putLong(16, 0);
+                map.force();
+            }
+            flushed = map.getLong(16);
+        }
+
+        synchronized void append(long timeMs, float[] values) {
+            if (map == null) {
+                return;
+            }
+            if (end() > 0 && timeMs < timeAt(end() - 1)) {
+                restart();
+            }
+            if (isStagingFull()) {
+                flush();
+            }
+            staging.putLong(timeMs);
+            for (int i = 0; i < fieldCount; i++) {
+                staging.putFloat(values[i]);
+            }
+            staged++;
+        }
+
+        synchronized boolean isStagingFull() {
+            return staged == STAGING_RECORDS;
+        }
+
+        synchronized void flush() {
+            if (map == null || staged == 0) {
+                return;
+            }
+            for (int i = 0; i < staged; i++) {
+                int slot = (int) ((flushed + i) % capacity);
+                map.position(HEADER_SIZE + slot * recordSize);
+                map.put(staging.array(), i * recordSize, recordSize);
+            }
+            flushed += staged;
+            map.putLong(16, flushed);
+            staging.clear();
+            staged = 0;
+            // One synchronous write-back per batch instead of leaving page writeback to chance
+            map.force();
+        }
+
+        private void restart() {
+            staging.clear();
+            staged = 0;
+            flushed = 0;
+            map.putLong(16, 0);
+            map.force();
+        }
+
+        synchronized void close() {
+            map = null;
+            if (handle != null) {
+                try {
+                    handle.close();
+                } catch (IOException ignored) {
+                }
+                handle = null;
+            }
+        }
+
+        synchronized long oldestTime() {
+            long first = firstSequence();
+            return first < end() ? timeAt(first) : Long.MIN_VALUE;
+        }
+
+        /** Binary search over the timestamps, which only ever increase with the sequence. */
+        synchronized long firstAtOrAfter(long timeMs) {
+            long low = firstSequence();
+            long high = end();
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                if (timeAt(mid) < timeMs) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** Copies one record's values and returns its time, or Long.MIN_VALUE if it is not available. */
+        synchronized long read(long sequence, float[] values) {
+            if (sequence < firstSequence() || sequence >= end()) {
+                return Long.MIN_VALUE;
+            }
+            ByteBuffer source;
+            int offset;
+            if (sequence >= flushed) {
+                source = staging;
+                offset = (int) (sequence - flushed) * recordSize;
+            } else {
+                source = map;
+                offset = HEADER_SIZE + (int) (sequence % capacity) * recordSize;
+            }
+            for (int i = 0; i < fieldCount; i++) {
+                values[i] = source.getFloat(offset + 8 + 4 * i);
+            }
+            return source.getLong(offset);
+        }
+
+        private long timeAt(long sequence) {
+            if (sequence >= flushed) {
+                return staging.getLong((int) (sequence - flushed) * recordSize);
+            }
+            return map.getLong(HEADER_SIZE + (int) (sequence % capacity) * recordSize);
+        }
+
+        private long end() {
+            return map == null ? 0 : flushed + staged;
+        }
+
+        private long firstSequence() {
+            // Staged records will overwrite the oldest slots on the next flush
+            return Math.max(0, end() - capacity);
+        }
+    }
+}
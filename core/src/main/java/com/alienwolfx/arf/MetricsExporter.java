@@ -0,0 +1,240 @@
+package com.alienwolfx.arf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Renders route and process metrics in the Prometheus text exposition format (0.0.4).
+ * Everything is read from counters that are already maintained, so a scrape costs one
+ * pass over the routes and two small reads under /proc/self.
+ */
+public class MetricsExporter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.9", "0.99"};
+
+    private final File procSelf;
+    private final StringBuilder out = new StringBuilder(8192);
+
+    public MetricsExporter() {
+        this(new File("/proc/self"));
+    }
+
+    MetricsExporter(File procSelf) {
+        this.procSelf = procSelf;
+    }
+
+    /** Starts a new scrape; the previous text is discarded. */
+    public MetricsExporter begin() {
+        out.setLength(0);
+        return this;
+    }
+
+    public String getText() {
+        return out.toString();
+    }
+
+    public MetricsExporter writeRoutes(Map<String, ApiRoute> routes) {
+        header("arf_http_requests_total", "counter", "Requests dispatched to the route.");
+        for (Map.Entry<String, ApiRoute> entry : routes.entrySet()) {
+            sample("arf_http_requests_total", entry.getKey(), null, null, entry.getValue().getMetrics().getRequests());
+        }
+
+        header("arf_http_requests_in_flight", "gauge", "Requests whose response has not finished sending.");
+        for (Map.Entry<String, ApiRoute> entry : routes.entrySet()) {
+            sample("arf_http_requests_in_flight", entry.getKey(), null, null, entry.getValue().getMetrics().getInFlight());
+        }
+
+        header("arf_http_response_bytes_total", "counter",
+            "Response body bytes sent; buffered bodies count after gzip, streams before.");
+        for (Map.Entry<String, ApiRoute> entry : routes.entrySet()) {
+            sample("arf_http_response_bytes_total", entry.getKey(), null, null,
+                entry.getValue().getMetrics().getResponseBytes());
+        }
+
+        header("arf_http_errors_total", "counter", "Responses with a 4xx or 5xx status.");
+        for (Map.Entry<String, ApiRoute> entry : routes.entrySet()) {
+            RouteMetrics metrics = entry.getValue().getMetrics();
+            for (int status = 400; status < 600; status++) {
+                long count = metrics.getStatusCount(status);
+                if (count > 0) {
+                    sample("arf_http_errors_total", entry.getKey(), "status", Integer.toString(status), count);
+                }
+            }
+        }
+
+        header("arf_http_request_duration_seconds", "histogram", "Time from dispatch until the response body was closed.");
+        for (Map.Entry<String, ApiRoute> entry : routes.entrySet()) {
+            LatencyHistogram latency = entry.getValue().getMetrics().getLatency();
+            long[] counts = latency.snapshot();
+            long cumulative = 0;
+            for (int i = 0; i < LatencyHistogram.BOUNDS_MICROS.length; i++) {
+                cumulative += counts[i];
+                sample("arf_http_request_duration_seconds_bucket", entry.getKey(), "le",
+                    seconds(LatencyHistogram.BOUNDS_MICROS[i]), cumulative);
+            }
+            cumulative += counts[counts.length - 1];
+            sample("arf_http_request_duration_seconds_bucket", entry.getKey(), "le", "+Inf", cumulative);
+            sample("arf_http_request_duration_seconds_sum", entry.getKey(), null, null,
+                seconds(latency.getSumMicros()));
+            sample("arf_http_request_duration_seconds_count", entry.getKey(), null, null, cumulative);
+        }
+
+        header("arf_http_request_duration_estimate_seconds", "gauge", "Quantiles interpolated from the histogram buckets.");
+        for (Map.Entry<String, ApiRoute> entry : routes.entrySet()) {
+            LatencyHistogram latency = entry.getValue().getMetrics().getLatency();
+            long[] counts = latency.snapshot();
+            for (int i = 0; i < QUANTILES.length; i++) {
+                sample("arf_http_request_duration_estimate_seconds", entry.getKey(), "quantile", QUANTILE_LABELS[i],
+                    seconds(latency.quantile(counts, QUANTILES[i])));
+            }
+        }
+
+        header("arf_http_request_duration_max_seconds", "gauge", "Slowest request since start.");
+        for (Map.Entry<String, ApiRoute> entry : routes.entrySet()) {
+            sample("arf_http_request_duration_max_seconds", entry.getKey(), null, null,
+                seconds(entry.getValue().getMetrics().getLatency().getMaxMicros()));
+        }
+        return this;
+    }
+
+    /** Heap, thread and descriptor gauges; gcCount is skipped when negative. */
+    public MetricsExporter writeProcess(long gcCount) {
+        Runtime runtime = Runtime.getRuntime();
+        gauge("arf_process_heap_used_bytes", "Java heap in use.", runtime.totalMemory() - runtime.freeMemory());
+        gauge("arf_process_heap_max_bytes", "Java heap limit.", runtime.maxMemory());
+        if (gcCount >= 0) {
+            header("arf_process_gc_total", "counter", "Garbage collections since the process started.");
+            sample("arf_process_gc_total", null, null, null, gcCount);
+        }
+        long threads = readThreads();
+        gauge("arf_process_threads", "Threads in the process.", threads >= 0 ? threads : Thread.activeCount());
+        String[] fds = new File(procSelf, "fd").list();
+        if (fds != null) {
+            gauge("arf_process_open_fds", "Open file descriptors.", fds.length);
+        }
+        return this;
+    }
+
+    public MetricsExporter writeCompression(GzipEncoder gzip) {
+        header("arf_http_gzip_responses_total", "counter", "Buffered responses sent gzip-encoded.");
+        sample("arf_http_gzip_responses_total", null, null, null, gzip.getResponses());
+        header("arf_http_gzip_input_bytes_total", "counter", "Bytes of those responses before compression.");
+        sample("arf_http_gzip_input_bytes_total", null, null, null, gzip.getBytesIn());
+        header("arf_http_gzip_output_bytes_total", "counter", "Bytes of those responses after compression.");
+        sample("arf_http_gzip_output_bytes_total", null, null, null, gzip.getBytesOut());
+        header("arf_http_gzip_seconds_total", "counter", "Time spent compressing on request threads.");
+        sample("arf_http_gzip_seconds_total", null, null, null, seconds(gzip.getNanos() / 1000));
+        return this;
+    }
+
+    /** Seconds from the earliest recorded phase to each later one. */
+    public MetricsExporter writeStartup(StartupTrace trace) {
+        header("arf_startup_phase_seconds", "gauge", "When each startup phase happened, from the first one recorded.");
+        for (Map.Entry<String, Long> phase : trace.getPhaseMillis().entrySet()) {
+            sample("arf_startup_phase_seconds", null, "phase", phase.getKey(), seconds(phase.getValue() * 1000));
+        }
+        return this;
+    }
+
+    /** Skipped when admission control is off. */
+    public MetricsExporter writeAdmission(AdmissionControl admission) {
+        if (admission == null) {
+            return this;
+        }
+        header("arf_http_rejected_total", "counter", "Requests turned away before reaching their handler.");
+        sample("arf_http_rejected_total", null, "reason", "rate_limit", admission.getRateLimited());
+        sample("arf_http_rejected_total", null, "reason", "expensive_lane", admission.getLaneRejected());
+        gauge("arf_admission_buckets", "Per-client rate limit buckets currently tracked.",
+            admission.getTrackedBuckets());
+        return this;
+    }
+
+    /** Skipped when no stock API is configured. */
+    public MetricsExporter writeStockApi(StockApiProxy proxy) {
+        if (proxy == null) {
+            return this;
+        }
+        header("arf_stock_api_calls_total", "counter", "Requests sent to the stock API.");
+        sample("arf_stock_api_calls_total", null, null, null, proxy.getUpstreamCalls());
+        header("arf_stock_api_cache_hits_total", "counter", "Stock API GETs answered from the proxy cache.");
+        sample("arf_stock_api_cache_hits_total", null, null, null, proxy.getCacheHits());
+        header("arf_stock_api_coalesced_total", "counter", "Stock API GETs that shared an identical call in flight.");
+        sample("arf_stock_api_coalesced_total", null, null, null, proxy.getCoalesced());
+        header("arf_stock_api_failures_total", "counter", "Stock API calls that failed or found no free connection.");
+        sample("arf_stock_api_failures_total", null, null, null, proxy.getFailures());
+        return this;
+    }
+
+    public MetricsExporter gauge(String name, String help, long value) {
+        header(name, "gauge", help);
+        sample(name, null, null, null, value);
+        return this;
+    }
+
+    private long readThreads() {
+        byte[] buffer = new byte[2048];
+        int length;
+        try (RandomAccessFile file = new RandomAccessFile(new File(procSelf, "status"), "r")) {
+            length = file.read(buffer);
+        } catch (IOException e) {
+            return -1;
+        }
+        if (length <= 0) {
+            return -1;
+        }
+        String status = new String(buffer, 0, length, StandardCharsets.US_ASCII);
+        int start = status.indexOf("\nThreads:");
+        if (start < 0) {
+            return -1;
+        }
+        start += "\nThreads:".length();
+        int end = status.indexOf('\n', start);
+        try {
+            return Long.parseLong(status.substring(start, end < 0 ? status.length() : end).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void header(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void sample(String name, String route, String label, String labelValue, long value) {
+        labels(name, route, label, labelValue);
+        out.append(' ').append(value).append('\n');
+    }
+
+    private void sample(String name, String route, String label, String labelValue, String value) {
+        labels(name, route, label, labelValue);
+        out.append(' ').append(value).append('\n');
+    }
+
+    private void labels(String name, String route, String label, String labelValue) {
+        out.append(name);
+        if (route != null || label != null) {
+            out.append('{');
+            if (route != null) {
+                out.append("route=\"").append(route).append('"');
+            }
+            if (label != null) {
+                if (route != null) {
+                    out.append(',');
+                }
+                out.append(label).append("=\"").append(labelValue).append('"');
+            }
+            out.append('}');
+        }
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1e6);
+    }
+}
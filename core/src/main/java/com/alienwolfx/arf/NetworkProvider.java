@@ -0,0 +1,19 @@
+package com.alienwolfx.arf;
+
+/** Traffic counters, connectivity and cell state. */
+public interface NetworkProvider {
+
+    interface Listener {
+        /** The default network, its addresses or its DNS servers changed. */
+        void onLinkChanged(LinkState link);
+    }
+
+    NetworkStats getNetworkStats() throws Exception;
+
+    /** The {@link NetworkStats} attributes, each computed only if written. */
+    LazyFields getNetworkFields();
+
+    void start(Listener listener);
+
+    void stop();
+}
@@ -0,0 +1,69 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+public class NetworkStats implements JsonCodec.Writable {
+    private final long mobileRxBytes;
+    private final long mobileTxBytes;
+    private final long totalRxBytes;
+    private final long totalTxBytes;
+    private final LinkState link;
+    private final String operator;
+    private final String mcc;
+    private final String mnc;
+    private final int signalStrength;
+    private final List<CellSignal> cells;
+
+    public NetworkStats(long mobileRxBytes, long mobileTxBytes,
+                       long totalRxBytes, long totalTxBytes,
+                       LinkState link,
+                       String operator, String mcc, String mnc,
+                       int signalStrength,
+                       List<CellSignal> cells) {
+        this.mobileRxBytes = mobileRxBytes;
+        this.mobileTxBytes = mobileTxBytes;
+        this.totalRxBytes = totalRxBytes;
+        this.totalTxBytes = totalTxBytes;
+        this.link = link;
+        this.operator = operator;
+        this.mcc = mcc;
+        this.mnc = mnc;
+        this.signalStrength = signalStrength;
+        this.cells = cells;
+    }
+
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("mobileRxBytes").value(mobileRxBytes);
+        writer.name("mobileTxBytes").value(mobileTxBytes);
+        writer.name("totalRxBytes").value(totalRxBytes);
+        writer.name("totalTxBytes").value(totalTxBytes);
+        writer.name("networkType").value(link.getTransport());
+        writer.name("connected").value(link.isConnected());
+        writer.name("metered").value(link.isMetered());
+        writer.name("validated").value(link.isValidated());
+        writer.name("operator").value(operator);
+        writer.name("mcc").value(mcc);
+        writer.name("mnc").value(mnc);
+        writer.name("signalStrength").value(signalStrength);
+        if (cells != null) {
+            writer.name("cells").beginArray();
+            for (CellSignal cell : cells) {
+                cell.writeJson(writer);
+            }
+            writer.endArray();
+        }
+        LinkState.writeStrings(writer, "ipAddresses", link.getIpAddresses());
+        link.writeInterfaces(writer);
+        LinkState.writeStrings(writer, "dnsServers", link.getDnsServers());
+        writer.endObject();
+    }
+
+    public int getSignalStrength() {
+        return signalStrength;
+    }
+}
@@ -0,0 +1,439 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads interface, CPU and memory counters straight from /proc and turns successive
+ * readings into rates. Apps targeting API 29+ cannot read /proc/net, so interface
+ * counters fall back to /sys/class/net/<name>/statistics. Files stay open and are
+ * re-read from offset 0 into reused buffers, and fields are parsed from the bytes in
+ * place, so a steady-state reading allocates nothing; interface names are only
+ * materialized the first time an interface appears.
+ */
+public class ProcStatReader {
+
+    private static final int MAX_INTERFACES = 32;
+    private static final long SYSFS_RESCAN_MS = 30000;
+    private static final byte[] CPU_PREFIX = {'c', 'p', 'u', ' '};
+    private static final byte[] MEM_TOTAL = "MemTotal:".getBytes();
+    private static final byte[] MEM_AVAILABLE = "MemAvailable:".getBytes();
+    private static final byte[] MEM_FREE = "MemFree:".getBytes();
+    private static final byte[] BUFFERS = "Buffers:".getBytes();
+    private static final byte[] CACHED = "Cached:".getBytes();
+
+    private final ProcFile netDev;
+    private final ProcFile stat;
+    private final ProcFile meminfo;
+    private final File sysNetRoot;
+    private final ProcFile[] sysRx = new ProcFile[MAX_INTERFACES];
+    private final ProcFile[] sysTx = new ProcFile[MAX_INTERFACES];
+    private long sysScannedAt = -SYSFS_RESCAN_MS;
+
+    // Interface slots keep their index across readings so deltas line up
+    private final byte[][] ifNameBytes = new byte[MAX_INTERFACES][];
+    private final String[] ifNames = new String[MAX_INTERFACES];
+    private final long[] rxBytes = new long[MAX_INTERFACES];
+    private final long[] txBytes = new long[MAX_INTERFACES];
+    private final long[] prevRxBytes = new long[MAX_INTERFACES];
+    private final long[] prevTxBytes = new long[MAX_INTERFACES];
+    private final boolean[] present = new boolean[MAX_INTERFACES];
+    private final boolean[] prevPresent = new boolean[MAX_INTERFACES];
+    private int ifCount;
+
+    private long cpuTotal = -1;
+    private long cpuIdle;
+    private long prevCpuTotal = -1;
+    private long prevCpuIdle;
+
+    private long memTotalKb = -1;
+    private long memAvailableKb = -1;
+
+    private long sampledAt;
+    private long prevSampledAt;
+
+    // Cursor shared by the parsing helpers
+    private int pos;
+
+    public ProcStatReader() {
+        this(new File("/proc"), new File("/sys/class/net"));
+    }
+
+    /** @param procRoot directory laid out like /proc; tests point this at fixtures */
+    public ProcStatReader(File procRoot, File sysNetRoot) {
+        this.netDev = new ProcFile(new File(procRoot, "net/dev"), 4096);
+        this.stat = new ProcFile(new File(procRoot, "stat"), 4096);
+        this.meminfo = new ProcFile(new File(procRoot, "meminfo"), 4096);
+        this.sysNetRoot = sysNetRoot;
+    }
+
+    /** Takes a reading and returns rates against the previous one. */
+    public synchronized Rates sample(long nowMs) {
+        readCounters(nowMs);
+        return rates();
+    }
+
+    /**
+     * Takes a reading and returns rates against the previous {@link #sample}, which stays
+     * the baseline for the next one, so on-demand reads do not shorten the sampled interval.
+     */
+    public synchronized Rates peek(long nowMs) {
+        readCounters(nowMs);
+        Rates rates = rates();
+        sampledAt = prevSampledAt;
+        System.arraycopy(prevRxBytes, 0, rxBytes, 0, ifCount);
+        System.arraycopy(prevTxBytes, 0, txBytes, 0, ifCount);
+        System.arraycopy(prevPresent, 0, present, 0, ifCount);
+        cpuTotal = prevCpuTotal;
+        cpuIdle = prevCpuIdle;
+        return rates;
+    }
+
+    /** Refreshes every counter; sources that cannot be read (SELinux on newer devices) are skipped. */
+    synchronized void readCounters(long nowMs) {
+        prevSampledAt = sampledAt;
+        sampledAt = nowMs;
+        System.arraycopy(rxBytes, 0, prevRxBytes, 0, ifCount);
+        System.arraycopy(txBytes, 0, prevTxBytes, 0, ifCount);
+        System.arraycopy(present, 0, prevPresent, 0, ifCount);
+        Arrays.fill(present, 0, ifCount, false);
+        prevCpuTotal = cpuTotal;
+        prevCpuIdle = cpuIdle;
+
+        if (netDev.read()) {
+            parseNetDev(netDev.buffer, netDev.length);
+        } else {
+            readSysfs(nowMs);
+        }
+        if (stat.read()) {
+            parseStat(stat.buffer, stat.length);
+        } else {
+            cpuTotal = -1;
+        }
+        if (meminfo.read()) {
+            parseMeminfo(meminfo.buffer, meminfo.length);
+        }
+    }
+
+    private void parseNetDev(byte[] buf, int len) {
+        // Two header lines, then "  name: rx_bytes rx_packets ... (8 rx fields) tx_bytes ..."
+        pos = 0;
+        skipLine(buf, len);
+        skipLine(buf, len);
+        while (pos < len) {
+            skipSpaces(buf, len);
+            int nameStart = pos;
+            while (pos < len && buf[pos] != ':' && buf[pos] != '\n') {
+                pos++;
+            }
+            if (pos >= len || buf[pos] != ':') {
+                skipLine(buf, len);
+                continue;
+            }
+            int slot = slotFor(buf, nameStart, pos - nameStart);
+            pos++;
+            long rx = parseLong(buf, len);
+            for (int i = 0; i < 7; i++) {
+                parseLong(buf, len);
+            }
+            long tx = parseLong(buf, len);
+            if (slot >= 0) {
+                rxBytes[slot] = rx;
+                txBytes[slot] = tx;
+                present[slot] = true;
+            }
+            skipLine(buf, len);
+        }
+    }
+
+    private void readSysfs(long nowMs) {
+        // Listing the directory allocates, so only rescan for new interfaces occasionally
+        if (nowMs - sysScannedAt >= SYSFS_RESCAN_MS) {
+            sysScannedAt = nowMs;
+            String[] names = sysNetRoot.list();
+            if (names != null) {
+                for (String name : names) {
+                    byte[] bytes = name.getBytes();
+                    int slot = slotFor(bytes, 0, bytes.length);
+                    if (slot >= 0 && sysRx[slot] == null) {
+                        File statistics = new File(new File(sysNetRoot, name), "statistics");
+                        sysRx[slot] = new ProcFile(new File(statistics, "rx_bytes"), 32);
+                        sysTx[slot] = new ProcFile(new File(statistics, "tx_bytes"), 32);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < ifCount; i++) {
+            if (sysRx[i] != null && sysRx[i].read() && sysTx[i].read()) {
+                pos = 0;
+                rxBytes[i] = parseLong(sysRx[i].buffer, sysRx[i].length);
+                pos = 0;
+                txBytes[i] = parseLong(sysTx[i].buffer, sysTx[i].length);
+                present[i] = true;
+            }
+        }
+    }
+
+    private void parseStat(byte[] buf, int len) {
+        // "cpu  user nice system idle iowait irq softirq steal guest guest_nice"
+        if (!startsWith(buf, len, 0, CPU_PREFIX)) {
+            cpuTotal = -1;
+            return;
+        }
+        pos = CPU_PREFIX.length;
+        long total = 0;
+        long idle = 0;
+        for (int field = 0; field < 8; field++) {
+            long value = parseLong(buf, len);
+            total += value;
+            // idle and iowait
+            if (field == 3 || field == 4) {
+                idle += value;
+            }
+        }
+        cpuTotal = total;
+        cpuIdle = idle;
+    }
+
+    private void parseMeminfo(byte[] buf, int len) {
+        long total = -1;
+        long available = -1;
+        long free = 0;
+        long buffers = 0;
+        long cached = 0;
+        pos = 0;
+        while (pos < len) {
+            int lineStart = pos;
+            if (startsWith(buf, len, lineStart, MEM_TOTAL)) {
+                pos += MEM_TOTAL.length;
+                total = parseLong(buf, len);
+            } else if (startsWith(buf, len, lineStart, MEM_AVAILABLE)) {
+                pos += MEM_AVAILABLE.length;
+                available = parseLong(buf, len);
+            } else if (startsWith(buf, len, lineStart, MEM_FREE)) {
+                pos += MEM_FREE.length;
+                free = parseLong(buf, len);
+            } else if (startsWith(buf, len, lineStart, BUFFERS)) {
+                pos += BUFFERS.length;
+                buffers = parseLong(buf, len);
+            } else if (startsWith(buf, len, lineStart, CACHED)) {
+                pos += CACHED.length;
+                cached = parseLong(buf, len);
+            }
+            skipLine(buf, len);
+        }
+        memTotalKb = total;
+        // Kernels before 3.14 have no MemAvailable; approximate it the way older tools did
+        memAvailableKb = available >= 0 ? available : free + buffers + cached;
+    }
+
+    private Rates rates() {
+        long intervalMs = sampledAt - prevSampledAt;
+        boolean hasPrevious = prevSampledAt > 0 && intervalMs > 0;
+
+        List<InterfaceRate> interfaces = new ArrayList<>(ifCount);
+        for (int i = 0; i < ifCount; i++) {
+            if (!present[i]) {
+                continue;
+            }
+            Long rxPerSecond = null;
+            Long txPerSecond = null;
+            // A counter that went backwards means the interface was reset; skip one interval
+            if (hasPrevious && prevPresent[i] && rxBytes[i] >= prevRxBytes[i] && txBytes[i] >= prevTxBytes[i]) {
+                rxPerSecond = (rxBytes[i] - prevRxBytes[i]) * 1000 / intervalMs;
+                txPerSecond = (txBytes[i] - prevTxBytes[i]) * 1000 / intervalMs;
+            }
+            interfaces.add(new InterfaceRate(ifNames[i], rxBytes[i], txBytes[i], rxPerSecond, txPerSecond));
+        }
+
+        Double cpuUsage = null;
+        if (hasPrevious && cpuTotal >= 0 && prevCpuTotal >= 0 && cpuTotal > prevCpuTotal) {
+            double busy = (cpuTotal - prevCpuTotal) - (cpuIdle - prevCpuIdle);
+            cpuUsage = Math.round(busy * 1000.0 / (cpuTotal - prevCpuTotal)) / 10.0;
+        }
+
+        return new Rates(
+            hasPrevious ? intervalMs : null,
+            interfaces,
+            cpuUsage,
+            memTotalKb >= 0 ? memTotalKb : null,
+            memAvailableKb >= 0 ? memAvailableKb : null
+        );
+    }
+
+    private int slotFor(byte[] buf, int start, int length) {
+        for (int i = 0; i < ifCount; i++) {
+            byte[] name = ifNameBytes[i];
+            if (name.length == length && regionEquals(buf, start, name)) {
+                return i;
+            }
+        }
+        if (ifCount == MAX_INTERFACES) {
+            return -1;
+        }
+        ifNameBytes[ifCount] = Arrays.copyOfRange(buf, start, start + length);
+        ifNames[ifCount] = new String(ifNameBytes[ifCount]);
+        return ifCount++;
+    }
+
+    private static boolean regionEquals(byte[] buf, int start, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (buf[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] buf, int len, int start, byte[] prefix) {
+        return start + prefix.length <= len && regionEquals(buf, start, prefix);
+    }
+
+    private void skipSpaces(byte[] buf, int len) {
+        while (pos < len && buf[pos] == ' ') {
+            pos++;
+        }
+    }
+
+    private void skipLine(byte[] buf, int len) {
+        while (pos < len && buf[pos] != '\n') {
+            pos++;
+        }
+        pos++;
+    }
+
+    /** Parses the next unsigned decimal on the current line; 0 if there is none. */
+    private long parseLong(byte[] buf, int len) {
+        while (pos < len && (buf[pos] == ' ' || buf[pos] == '\t')) {
+            pos++;
+        }
+        long value = 0;
+        while (pos < len && buf[pos] >= '0' && buf[pos] <= '9') {
+            value = value * 10 + (buf[pos++] - '0');
+        }
+        return value;
+    }
+
+    /** A /proc file kept open and re-read from the start into a buffer that only ever grows. */
+    private static final class ProcFile {
+        private final File file;
+        private RandomAccessFile handle;
+        byte[] buffer;
+        int length;
+
+        ProcFile(File file, int initialSize) {
+            this.file = file;
+            this.buffer = new byte[initialSize];
+        }
+
+        boolean read() {
+            try {
+                if (handle == null) {
+                    handle = new RandomAccessFile(file, "r");
+                }
+                handle.seek(0);
+                length = 0;
+                int n;
+                while ((n = handle.read(buffer, length, buffer.length - length)) > 0) {
+                    length += n;
+                    if (length == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                }
+                return true;
+            } catch (IOException | SecurityException e) {
+                close();
+                return false;
+            }
+        }
+
+        void close() {
+            if (handle != null) {
+                try {
+                    handle.close();
+                } catch (IOException ignored) {
+                }
+                handle = null;
+            }
+        }
+    }
+
+    public static class Rates implements JsonCodec.Writable {
+        private final Long intervalMs;
+        private final List<InterfaceRate> interfaces;
+        private final Double cpuUsagePercent;
+        private final Long memTotalKb;
+        private final Long memAvailableKb;
+
+        Rates(Long intervalMs, List<InterfaceRate> interfaces, Double cpuUsagePercent,
+              Long memTotalKb, Long memAvailableKb) {
+            this.intervalMs = intervalMs;
+            this.interfaces = interfaces;
+            this.cpuUsagePercent = cpuUsagePercent;
+            this.memTotalKb = memTotalKb;
+            this.memAvailableKb = memAvailableKb;
+        }
+
+        public Long getIntervalMs() { return intervalMs; }
+        public List<InterfaceRate> getInterfaces() { return interfaces; }
+        public Double getCpuUsagePercent() { return cpuUsagePercent; }
+        public Long getMemTotalKb() { return memTotalKb; }
+        public Long getMemAvailableKb() { return memAvailableKb; }
+
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("intervalMs").value(intervalMs);
+            if (interfaces != null) {
+                writer.name("interfaces").beginArray();
+                for (InterfaceRate rate : interfaces) {
+                    rate.writeJson(writer);
+                }
+                writer.endArray();
+            }
+            writer.name("cpuUsagePercent").value(cpuUsagePercent);
+            writer.name("memTotalKb").value(memTotalKb);
+            writer.name("memAvailableKb").value(memAvailableKb);
+            writer.endObject();
+        }
+    }
+
+    public static class InterfaceRate implements JsonCodec.Writable {
+        private final String name;
+        private final long rxBytes;
+        private final long txBytes;
+        private final Long rxBytesPerSecond;
+        private final Long txBytesPerSecond;
+
+        InterfaceRate(String name, long rxBytes, long txBytes, Long rxBytesPerSecond, Long txBytesPerSecond) {
+            this.name = name;
+            this.rxBytes = rxBytes;
+            this.txBytes = txBytes;
+            this.rxBytesPerSecond = rxBytesPerSecond;
+            this.txBytesPerSecond = txBytesPerSecond;
+        }
+
+        public String getName() { return name; }
+        public long getRxBytes() { return rxBytes; }
+        public long getTxBytes() { return txBytes; }
+        public Long getRxBytesPerSecond() { return rxBytesPerSecond; }
+        public Long getTxBytesPerSecond() { return txBytesPerSecond; }
+
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("name").value(name);
+            writer.name("rxBytes").value(rxBytes);
+            writer.name("txBytes").value(txBytes);
+            writer.name("rxBytesPerSecond").value(rxBytesPerSecond);
+            writer.name("txBytesPerSecond").value(txBytesPerSecond);
+            writer.endObject();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.alienwolfx.arf;
+
+/** Everything {@link ArfServer} reads from or sends through the platform. */
+public class Providers {
+
+    private final DeviceProvider device;
+    private final NetworkProvider network;
+    private final SmsProvider sms;
+    private final SmsSender smsSender;
+    private final AssetSource assets;
+    private final StockApiProxy stockApi;
+
+    public Providers(DeviceProvider device, NetworkProvider network, SmsProvider sms, SmsSender smsSender) {
+        this(device, network, sms, smsSender, null, null);
+    }
+
+    /**
+     * {@code assets} and {@code stockApi} may be null, leaving out the WebUI and the stock
+     * API routes respectively.
+     */
+    public Providers(DeviceProvider device, NetworkProvider network, SmsProvider sms, SmsSender smsSender,
+                     AssetSource assets, StockApiProxy stockApi) {
+        this.device = device;
+        this.network = network;
+        this.sms = sms;
+        this.smsSender = smsSender;
+        this.assets = assets;
+        this.stockApi = stockApi;
+    }
+
+    public DeviceProvider getDevice() {
+        return device;
+    }
+
+    public NetworkProvider getNetwork() {
+        return network;
+    }
+
+    public SmsProvider getSms() {
+        return sms;
+    }
+
+    public SmsSender getSmsSender() {
+        return smsSender;
+    }
+
+    public AssetSource getAssets() {
+        return assets;
+    }
+
+    public StockApiProxy getStockApi() {
+        return stockApi;
+    }
+}
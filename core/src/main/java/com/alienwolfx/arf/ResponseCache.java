@@ -0,0 +1,143 @@
+package com.alienwolfx.arf;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned per-endpoint cache of serialized responses plus the ETag helpers used
+ * for If-None-Match handling. Bumping an endpoint's version invalidates its entry
+ * and any ETag derived from the version.
+ */
+public class ResponseCache {
+
+    private static final String GZIP_SUFFIX = "-gz\"";
+
+    private final ConcurrentHashMap<Integer, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+    // Versions start over with the process; without this a client's ETag from an earlier run could match
+    private final String epoch = Integer.toHexString(new Random().nextInt());
+
+    public long version(int key) {
+        return counter(key).get();
+    }
+
+    /** Tells this process's versions apart from a previous run's; random, since the clock may not be set. */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /** The current version qualified by the epoch, for ETags built from versions rather than bodies. */
+    public String versionTag(int key) {
+        return epoch + "." + version(key);
+    }
+
+    public void invalidate(int key) {
+        counter(key).incrementAndGet();
+        entries.remove(key);
+    }
+
+    /** Returns the cached entry if it was built for the current version and is younger than maxAgeMs. */
+    public Entry get(int key, long maxAgeMs) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version(key)
+                || System.currentTimeMillis() - entry.createdAt > maxAgeMs) {
+            return null;
+        }
+        return entry;
+    }
+
+    public Entry put(int key, long version, byte[] body) {
+        Entry entry = new Entry(body, etagOf(body), version, System.currentTimeMillis());
+        // A newer version may have been published while the body was being built
+        if (version == version(key)) {
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private AtomicLong counter(int key) {
+        AtomicLong counter = versions.get(key);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = versions.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /** Weak validator derived from the payload's CRC32 and length. */
+    public static String etagOf(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return "W/\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length) + "\"";
+    }
+
+    /** The ETag of the gzip-encoded form of a representation, so caches keep the two apart. */
+    public static String gzipVariant(String etag) {
+        if (etag.endsWith(GZIP_SUFFIX)) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + GZIP_SUFFIX;
+    }
+
+    /**
+     * Weak comparison of an If-None-Match header value against an ETag. Either encoding's
+     * tag matches: the content is the same, and the 304 carries the tag of the one selected.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String opaque = identityTag(opaqueTag(etag));
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || identityTag(opaqueTag(trimmed)).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static String identityTag(String etag) {
+        return etag.endsWith(GZIP_SUFFIX) ? etag.substring(0, etag.length() - GZIP_SUFFIX.length()) + "\"" : etag;
+    }
+
+    public static final class Entry {
+        private final byte[] body;
+        private final String etag;
+        private final long version;
+        private final long createdAt;
+        private volatile byte[] gzipBody;
+
+        Entry(byte[] body, String etag, long version, long createdAt) {
+            this.body = body;
+            this.etag = etag;
+            this.version = version;
+            this.createdAt = createdAt;
+        }
+
+        public byte[] getBody() { return body; }
+        public String getEtag() { return etag; }
+
+        /** The body gzipped on first use and kept for the life of the entry. */
+        public byte[] getGzipBody(GzipEncoder encoder) {
+            byte[] gzipped = gzipBody;
+            if (gzipped == null) {
+                // Racing threads may both compress; either result is correct
+                gzipped = encoder.gzip(body, 0, body.length, GzipEncoder.CACHED_LEVEL);
+                gzipBody = gzipped;
+            } else {
+                encoder.recordCached(body.length, gzipped.length);
+            }
+            return gzipped;
+        }
+    }
+}
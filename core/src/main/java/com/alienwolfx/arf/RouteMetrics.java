@@ -0,0 +1,128 @@
+package com.alienwolfx.arf;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Counters for one route. A request is timed from dispatch until its body has been
+ * written and closed, so streamed responses are measured by what the client waited for
+ * rather than by how quickly the handler returned.
+ */
+public class RouteMetrics {
+
+    private static final int MAX_STATUS = 600;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final AtomicLongArray statuses = new AtomicLongArray(MAX_STATUS);
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /** Call when dispatch starts; the returned time is handed back to {@link #track}. */
+    public long begin() {
+        requests.incrementAndGet();
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /** Arranges for the request to be recorded once the response body is closed. */
+    public NanoHTTPD.Response track(NanoHTTPD.Response response, long startNanos) {
+        int status = response.getStatus() != null ? response.getStatus().getRequestStatus() : 0;
+        InputStream data = response.getData();
+        if (data == null) {
+            end(status, 0, startNanos);
+        } else {
+            response.setData(new CountingStream(data, status, startNanos));
+        }
+        return response;
+    }
+
+    /** Records a request whose handler threw instead of returning a response. */
+    public void fail(int status, long startNanos) {
+        end(status, 0, startNanos);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /** Uncompressed body bytes handed to the connection. */
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    public long getStatusCount(int status) {
+        return status >= 0 && status < MAX_STATUS ? statuses.get(status) : 0;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    private void end(int status, long bytes, long startNanos) {
+        latency.record((System.nanoTime() - startNanos) / 1000);
+        responseBytes.addAndGet(bytes);
+        if (status >= 0 && status < MAX_STATUS) {
+            statuses.incrementAndGet(status);
+        }
+        inFlight.decrementAndGet();
+    }
+
+    private class CountingStream extends FilterInputStream {
+        private final int status;
+        private final long startNanos;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private long bytes;
+
+        CountingStream(InputStream in, int status, long startNanos) {
+            super(in);
+            this.status = status;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytes += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // NanoHTTPD and batch callers may both close the body
+            if (closed.compareAndSet(false, true)) {
+                end(status, bytes, startNanos);
+            }
+            super.close();
+        }
+    }
+}
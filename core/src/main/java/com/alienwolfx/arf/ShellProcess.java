@@ -0,0 +1,323 @@
+package com.alienwolfx.arf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs one shell command with stdout and stderr pumped concurrently into a {@link Sink},
+ * so neither pipe can fill up and stall the process. A deadline and a byte cap both end
+ * the run by killing the whole process tree, not just the shell.
+ */
+public class ShellProcess {
+
+    /** Receives output as it is produced; both methods are called from pump threads. */
+    public interface Sink {
+        /** May block to apply backpressure; throwing InterruptedException kills the process. */
+        void onOutput(boolean stderr, String text) throws InterruptedException;
+
+        /** Called exactly once, after both streams have been drained. */
+        void onExit(Result result);
+    }
+
+    private static final int PUMP_BUFFER_SIZE = 8192;
+
+    static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "arf-shell-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String command;
+    private final long timeoutMs;
+    private final long maxBytes;
+    private final Sink sink;
+    private final AtomicInteger openPumps = new AtomicInteger(2);
+    private final AtomicBoolean killed = new AtomicBoolean();
+    private Process process;
+    private ScheduledFuture<?> deadline;
+    private long startedAt;
+    private long bytes;
+    private volatile boolean timedOut;
+    private volatile boolean truncated;
+
+    /**
+     * @param maxBytes combined stdout and stderr bytes to deliver; 0 for no limit
+     */
+    public ShellProcess(String command, long timeoutMs, long maxBytes, Sink sink) {
+        this.command = command;
+        this.timeoutMs = timeoutMs;
+        this.maxBytes = maxBytes;
+        this.sink = sink;
+    }
+
+    public void start() throws IOException {
+        startedAt = System.currentTimeMillis();
+        process = new ProcessBuilder("sh", "-c", command).start();
+        process.getOutputStream().close();
+        deadline = WATCHDOG.schedule(() -> {
+            timedOut = true;
+            kill();
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        startPump(process.getInputStream(), false, "arf-shell-out");
+        startPump(process.getErrorStream(), true, "arf-shell-err");
+    }
+
+    /** Kills the process and everything it spawned; safe to call more than once. */
+    public void kill() {
+        if (process == null || !killed.compareAndSet(false, true)) {
+            return;
+        }
+        killTree(process);
+    }
+
+    /** SIGKILLs the process and its descendants, then closes its output pipes. */
+    static void killTree(Process process) {
+        int pid = pidOf(process);
+        if (pid > 0) {
+            // Collect descendants first: once the shell dies its children are reparented to init
+            List<Integer> tree = descendants(pid);
+            tree.add(pid);
+            StringBuilder kill = new StringBuilder("kill -9");
+            for (int member : tree) {
+                kill.append(' ').append(member);
+            }
+            try {
+                Runtime.getRuntime().exec(kill.toString()).waitFor();
+            } catch (IOException e) {
+                // Fall through to destroy(), which at least ends the shell
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        process.destroy();
+        // Unblock pumps still reading from pipes held open by escaped grandchildren
+        closeQuietly(process.getInputStream());
+        closeQuietly(process.getErrorStream());
+    }
+
+    private void startPump(InputStream stream, boolean stderr, String name) {
+        Thread thread = new Thread(() -> {
+            try {
+                pump(stream, stderr);
+            } catch (InterruptedException e) {
+                kill();
+            } catch (IOException e) {
+                // Closed by kill(); the exit result reports why
+            } finally {
+                closeQuietly(stream);
+                if (openPumps.decrementAndGet() == 0) {
+                    finish();
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void pump(InputStream stream, boolean stderr) throws IOException, InterruptedException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer in = ByteBuffer.allocate(PUMP_BUFFER_SIZE);
+        CharBuffer out = CharBuffer.allocate(PUMP_BUFFER_SIZE);
+        int n;
+        while ((n = stream.read(in.array(), in.position(), in.remaining())) != -1) {
+            int allowed = claim(n);
+            in.position(in.position() + allowed);
+            in.flip();
+            // Not end of input: a multi-byte sequence split across reads stays in the buffer
+            decoder.decode(in, out, false);
+            in.compact();
+            emit(out, stderr);
+            if (allowed < n) {
+                kill();
+                break;
+            }
+        }
+        in.flip();
+        decoder.decode(in, out, true);
+        decoder.flush(out);
+        emit(out, stderr);
+    }
+
+    private synchronized int claim(int n) {
+        if (maxBytes <= 0) {
+            bytes += n;
+            return n;
+        }
+        int allowed = (int) Math.min(n, maxBytes - bytes);
+        bytes += allowed;
+        if (allowed < n) {
+            truncated = true;
+        }
+        return allowed;
+    }
+
+    private void emit(CharBuffer out, boolean stderr) throws InterruptedException {
+        out.flip();
+        if (out.hasRemaining()) {
+            sink.onOutput(stderr, out.toString());
+        }
+        out.clear();
+    }
+
+    private void finish() {
+        int exitCode;
+        try {
+            // The deadline stays armed: a process can close its pipes and keep running
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = -1;
+        }
+        deadline.cancel(false);
+        // Its pid may be reused from here on, so later kill() calls must be no-ops
+        killed.set(true);
+        long total;
+        synchronized (this) {
+            total = bytes;
+        }
+        sink.onExit(new Result(exitCode, timedOut, truncated, total, System.currentTimeMillis() - startedAt));
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** Android's Process has no public pid accessor, so fall back to its private field. */
+    static int pidOf(Process process) {
+        try {
+            // Java 9+ on the host
+            return ((Number) Process.class.getMethod("pid").invoke(process)).intValue();
+        } catch (Exception ignored) {
+        }
+        try {
+            Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getInt(process);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /** All transitive children of pid, found by scanning the parent ids in /proc/[pid]/stat. */
+    static List<Integer> descendants(int pid) {
+        Map<Integer, List<Integer>> children = new HashMap<>();
+        File[] entries = new File("/proc").listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                String name = entry.getName();
+                if (name.isEmpty() || !Character.isDigit(name.charAt(0))) {
+                    continue;
+                }
+                int parent = parentOf(entry);
+                if (parent > 0) {
+                    List<Integer> siblings = children.get(parent);
+                    if (siblings == null) {
+                        siblings = new ArrayList<>();
+                        children.put(parent, siblings);
+                    }
+                    siblings.add(Integer.parseInt(name));
+                }
+            }
+        }
+        List<Integer> result = new ArrayList<>();
+        List<Integer> frontier = new ArrayList<>();
+        frontier.add(pid);
+        while (!frontier.isEmpty()) {
+            List<Integer> found = children.get(frontier.remove(frontier.size() - 1));
+            if (found != null) {
+                result.addAll(found);
+                frontier.addAll(found);
+            }
+        }
+        return result;
+    }
+
+    private static int parentOf(File procEntry) {
+        try (RandomAccessFile stat = new RandomAccessFile(new File(procEntry, "stat"), "r")) {
+            String line = stat.readLine();
+            // Format: pid (comm) state ppid ...; comm may itself contain spaces or parentheses
+            int end = line != null ? line.lastIndexOf(')') : -1;
+            if (end < 0) {
+                return -1;
+            }
+            String[] fields = line.substring(end + 2).split(" ", 3);
+            return Integer.parseInt(fields[1]);
+        } catch (Exception e) {
+            // The process exited while we were scanning
+            return -1;
+        }
+    }
+
+    /** Sink that buffers both streams for callers that answer with a single document. */
+    public static class Capture implements Sink {
+        private final StringBuilder stdout = new StringBuilder();
+        private final StringBuilder stderr = new StringBuilder();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Result result;
+
+        @Override
+        public synchronized void onOutput(boolean isStderr, String text) {
+            (isStderr ? stderr : stdout).append(text);
+        }
+
+        @Override
+        public void onExit(Result result) {
+            this.result = result;
+            done.countDown();
+        }
+
+        /** Returns null if the process has not exited within the wait. */
+        public Result await(long timeoutMs) throws InterruptedException {
+            return done.await(timeoutMs, TimeUnit.MILLISECONDS) ? result : null;
+        }
+
+        public synchronized String getStdout() { return stdout.toString(); }
+        public synchronized String getStderr() { return stderr.toString(); }
+    }
+
+    public static class Result {
+        private final int exitCode;
+        private final boolean timedOut;
+        private final boolean truncated;
+        private final long bytes;
+        private final long durationMs;
+
+        Result(int exitCode, boolean timedOut, boolean truncated, long bytes, long durationMs) {
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.truncated = truncated;
+            this.bytes = bytes;
+            this.durationMs = durationMs;
+        }
+
+        public int getExitCode() { return exitCode; }
+        public boolean isTimedOut() { return timedOut; }
+        public boolean isTruncated() { return truncated; }
+        public long getBytes() { return bytes; }
+        public long getDurationMs() { return durationMs; }
+    }
+}
@@ -0,0 +1,331 @@
+package com.alienwolfx.arf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a few long-lived shells and runs commands by writing them to a shell's stdin,
+ * which avoids a fork and exec per command. Each command runs in a subshell and is
+ * followed by a random sentinel on both streams that marks the end of its output and
+ * carries its exit status. A session that times out, overflows or dies is killed and
+ * replaced on the next borrow.
+ */
+public class ShellSessionPool {
+
+    private static final long HEALTH_CHECK_IDLE_MS = 60000;
+    private static final long HEALTH_CHECK_TIMEOUT_MS = 2000;
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final String[] shell;
+    private final long acquireTimeoutMs;
+    private final Semaphore permits;
+    private final BlockingQueue<Session> idle;
+    private final SecureRandom random = new SecureRandom();
+    private volatile boolean closed;
+
+    /**
+     * @param acquireTimeoutMs how long a command waits for a free session before {@link Busy}
+     * @param shell command line that starts an interactive-free shell, e.g. {"sh"} or {"su"}
+     */
+    public ShellSessionPool(int size, long acquireTimeoutMs, String... shell) {
+        this.shell = shell;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.permits = new Semaphore(size, true);
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * Runs a command on a pooled session and reports its output to the sink before
+     * returning. Waits up to the acquire timeout while every session is busy.
+     *
+     * @param maxBytes combined stdout and stderr bytes to keep; 0 for no limit
+     * @throws Busy if no session came free in time
+     */
+    public void exec(String command, long timeoutMs, long maxBytes, ShellProcess.Sink sink)
+            throws IOException, InterruptedException {
+        if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new Busy();
+        }
+        try {
+            Session session = borrow();
+            boolean healthy = false;
+            try {
+                Run run = session.run(command, timeoutMs, maxBytes);
+                healthy = run.clean();
+                sink.onOutput(false, run.stdout);
+                sink.onOutput(true, run.stderr);
+                sink.onExit(run.result);
+            } finally {
+                if (healthy && !closed) {
+                    idle.offer(session);
+                } else {
+                    session.destroy();
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        Session session;
+        while ((session = idle.poll()) != null) {
+            session.destroy();
+        }
+    }
+
+    private Session borrow() throws IOException {
+        Session session;
+        while ((session = idle.poll()) != null) {
+            if (session.isHealthy()) {
+                return session;
+            }
+            session.destroy();
+        }
+        return new Session(shell, "__arf_" + Long.toHexString(random.nextLong()) + "__");
+    }
+
+    /** Quotes a command so the shell parses it only inside eval; syntax errors then fail the command, not the session. */
+    static String quote(String command) {
+        return "'" + command.replace("'", "'\\''") + "'";
+    }
+
+    /** Every session stayed busy for the whole acquire timeout. */
+    public static class Busy extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        Busy() {
+            super("All shell sessions are busy");
+        }
+    }
+
+    private static final class Session {
+        private final Process process;
+        private final OutputStream stdin;
+        private final InputStream stdout;
+        private final InputStream stderr;
+        private final byte[] marker;
+        private final String markerText;
+        private final Thread stderrPump;
+        // Command whose stderr the pump is currently collecting
+        private volatile Run current;
+        private long lastUsed;
+
+        Session(String[] shell, String markerText) throws IOException {
+            this.process = new ProcessBuilder(shell).start();
+            this.stdin = process.getOutputStream();
+            this.stdout = process.getInputStream();
+            this.stderr = process.getErrorStream();
+            this.markerText = markerText;
+            this.marker = ("\n" + markerText).getBytes(StandardCharsets.US_ASCII);
+            this.lastUsed = System.currentTimeMillis();
+            this.stderrPump = new Thread(this::pumpStderr, "arf-shell-session");
+            this.stderrPump.setDaemon(true);
+            this.stderrPump.start();
+        }
+
+        boolean isHealthy() {
+            try {
+                process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException running) {
+                // Still alive
+            }
+            if (System.currentTimeMillis() - lastUsed < HEALTH_CHECK_IDLE_MS) {
+                return true;
+            }
+            try {
+                Run ping = run(":", HEALTH_CHECK_TIMEOUT_MS, 0);
+                return ping.clean() && ping.result.getExitCode() == 0;
+            } catch (IOException | InterruptedException e) {
+                return false;
+            }
+        }
+
+        Run run(String command, long timeoutMs, long maxBytes) throws IOException, InterruptedException {
+            long startedAt = System.currentTimeMillis();
+            Run run = new Run(maxBytes);
+            current = run;
+            ScheduledFuture<?> deadline = ShellProcess.WATCHDOG.schedule(() -> {
+                run.timedOut = true;
+                destroy();
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                // The leading newline in each sentinel separates it from output that lacks a trailing one
+                String script = "( eval " + quote(command) + " ) </dev/null\n"
+                    + "printf '\\n%s %d\\n' " + markerText + " $?\n"
+                    + "printf '\\n%s\\n' " + markerText + " >&2\n";
+                stdin.write(script.getBytes(StandardCharsets.UTF_8));
+                stdin.flush();
+
+                int exitCode = readStdout(run);
+                long remaining = timeoutMs - (System.currentTimeMillis() - startedAt);
+                if (exitCode != Integer.MIN_VALUE && !run.stderrDone.await(Math.max(remaining, 0), TimeUnit.MILLISECONDS)) {
+                    run.timedOut = true;
+                }
+                run.finish(exitCode, System.currentTimeMillis() - startedAt);
+                return run;
+            } catch (IOException e) {
+                // Killed by the deadline or an overflow; report that rather than the broken pipe
+                if (!run.timedOut && !run.overflowed) {
+                    throw e;
+                }
+                run.finish(Integer.MIN_VALUE, System.currentTimeMillis() - startedAt);
+                return run;
+            } finally {
+                deadline.cancel(false);
+                current = null;
+                lastUsed = System.currentTimeMillis();
+            }
+        }
+
+        /** Returns the exit status from the sentinel, or Integer.MIN_VALUE if the output ended without one. */
+        private int readStdout(Run run) throws IOException {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int n;
+            while ((n = stdout.read(buffer)) != -1) {
+                if (!run.append(run.out, buffer, n)) {
+                    destroy();
+                    return Integer.MIN_VALUE;
+                }
+                int end = sentinelEnd(run.out);
+                if (end >= 0) {
+                    String tail = new String(run.out.bytes(), end, run.out.size() - end, StandardCharsets.US_ASCII).trim();
+                    run.out.truncate(end - marker.length);
+                    return Integer.parseInt(tail);
+                }
+            }
+            return Integer.MIN_VALUE;
+        }
+
+        /** Offset just past the sentinel if the buffer ends with a complete sentinel line, else -1. */
+        private int sentinelEnd(Buffer buffer) {
+            int size = buffer.size();
+            byte[] bytes = buffer.bytes();
+            if (size == 0 || bytes[size - 1] != '\n') {
+                return -1;
+            }
+            // The sentinel line is short, so only the tail needs scanning
+            int from = Math.max(0, size - marker.length - 16);
+            for (int i = size - marker.length; i >= from; i--) {
+                if (regionMatches(bytes, i)) {
+                    return i + marker.length;
+                }
+            }
+            return -1;
+        }
+
+        private boolean regionMatches(byte[] bytes, int offset) {
+            if (offset < 0) {
+                return false;
+            }
+            for (int i = 0; i < marker.length; i++) {
+                if (bytes[offset + i] != marker[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void pumpStderr() {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int n;
+            try {
+                while ((n = stderr.read(buffer)) != -1) {
+                    Run run = current;
+                    if (run == null) {
+                        // Stray output from a background job between commands
+                        continue;
+                    }
+                    if (!run.append(run.err, buffer, n)) {
+                        destroy();
+                        return;
+                    }
+                    int end = sentinelEnd(run.err);
+                    if (end >= 0) {
+                        run.err.truncate(end - marker.length);
+                        run.stderrDone.countDown();
+                    }
+                }
+            } catch (IOException e) {
+                // Session destroyed
+            }
+        }
+
+        void destroy() {
+            ShellProcess.killTree(process);
+            try {
+                stdin.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class Run {
+        final Buffer out = new Buffer();
+        final Buffer err = new Buffer();
+        final CountDownLatch stderrDone = new CountDownLatch(1);
+        private final long maxBytes;
+        private long bytes;
+        volatile boolean timedOut;
+        volatile boolean overflowed;
+        private boolean completed;
+        String stdout;
+        String stderr;
+        ShellProcess.Result result;
+
+        Run(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        /** Returns false once the byte cap is exceeded; the session must then be discarded. */
+        synchronized boolean append(Buffer target, byte[] data, int n) {
+            bytes += n;
+            target.write(data, 0, n);
+            if (maxBytes > 0 && bytes > maxBytes + READ_BUFFER_SIZE) {
+                // Allow a buffer of slack so a sentinel straddling the cap is still recognized
+                overflowed = true;
+                return false;
+            }
+            return true;
+        }
+
+        synchronized void finish(int exitCode, long durationMs) {
+            completed = exitCode != Integer.MIN_VALUE;
+            long total = (long) out.size() + err.size();
+            boolean truncated = overflowed || (maxBytes > 0 && total > maxBytes);
+            long kept = truncated ? Math.min(total, maxBytes) : total;
+            int outKept = (int) Math.min(out.size(), kept);
+            int errKept = (int) Math.min(err.size(), kept - outKept);
+            stdout = new String(out.bytes(), 0, outKept, StandardCharsets.UTF_8);
+            stderr = new String(err.bytes(), 0, errKept, StandardCharsets.UTF_8);
+            result = new ShellProcess.Result(completed ? exitCode : -1, timedOut, truncated, outKept + errKept, durationMs);
+        }
+
+        /** True when the session ended the command normally and can run another. */
+        synchronized boolean clean() {
+            return completed && !timedOut && !overflowed;
+        }
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        byte[] bytes() {
+            return buf;
+        }
+
+        void truncate(int size) {
+            count = Math.max(0, size);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Newline-delimited JSON body for a streamed shell command: one
+ * {"type":"stdout"|"stderr","data":...} frame per chunk of output, followed by a
+ * {"type":"exit",...} trailer. The frame queue is bounded, so a slow client stalls
+ * the process through its pipes instead of growing memory.
+ */
+public class ShellStream extends InputStream implements ShellProcess.Sink {
+
+    private static final int QUEUE_CAPACITY = 16;
+    private static final long OFFER_WAIT_MS = 250;
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> frames = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ShellProcess process;
+    private byte[] current;
+    private int position;
+    private volatile boolean closed;
+
+    public ShellStream(String command, long timeoutMs, long maxBytes) throws IOException {
+        process = new ShellProcess(command, timeoutMs, maxBytes, this);
+        process.start();
+    }
+
+    @Override
+    public void onOutput(boolean stderr, String text) throws InterruptedException {
+        enqueue(frame(stderr ? "stderr" : "stdout", text, null));
+    }
+
+    @Override
+    public void onExit(ShellProcess.Result result) {
+        try {
+            enqueue(frame("exit", null, result));
+            enqueue(END);
+        } catch (InterruptedException e) {
+            // The client is gone; nobody is left to read the trailer
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        while (current == null || position >= current.length) {
+            if (closed || current == END) {
+                return -1;
+            }
+            try {
+                current = frames.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for command output", e);
+            }
+            position = 0;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /** Called by NanoHTTPD when the response ends, including when the client disconnects. */
+    @Override
+    public void close() {
+        closed = true;
+        process.kill();
+        frames.clear();
+    }
+
+    private void enqueue(byte[] frame) throws InterruptedException {
+        while (!frames.offer(frame, OFFER_WAIT_MS, TimeUnit.MILLISECONDS)) {
+            if (closed) {
+                throw new InterruptedException("Stream closed");
+            }
+        }
+    }
+
+    private static byte[] frame(String type, String data, ShellProcess.Result result) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("type").value(type);
+            if (data != null) {
+                writer.name("data").value(data);
+            }
+            if (result != null) {
+                writer.name("exitCode").value(result.getExitCode());
+                writer.name("timedOut").value(result.isTimedOut());
+                writer.name("truncated").value(result.isTruncated());
+                writer.name("bytes").value(result.getBytes());
+                writer.name("durationMs").value(result.getDurationMs());
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        out.write('\n');
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,40 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+public class SimInfo implements JsonCodec.Writable {
+    private final String carrierName;
+    private final String countryIso;
+    private final String simOperator;
+    private final int simState;
+    private final String simSerialNumber;
+
+    public SimInfo(String carrierName, String countryIso, String simOperator,
+                  int simState, String simSerialNumber) {
+        this.carrierName = carrierName;
+        this.countryIso = countryIso;
+        this.simOperator = simOperator;
+        this.simState = simState;
+        this.simSerialNumber = simSerialNumber;
+    }
+
+    // Getters
+    public String getCarrierName() { return carrierName; }
+    public String getCountryIso() { return countryIso; }
+    public String getSimOperator() { return simOperator; }
+    public int getSimState() { return simState; }
+    public String getSimSerialNumber() { return simSerialNumber; }
+
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("carrierName").value(carrierName);
+        writer.name("countryIso").value(countryIso);
+        writer.name("simOperator").value(simOperator);
+        writer.name("simState").value(simState);
+        writer.name("simSerialNumber").value(simSerialNumber);
+        writer.endObject();
+    }
+}
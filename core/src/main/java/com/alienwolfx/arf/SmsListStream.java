@@ -0,0 +1,89 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Streams SMS rows into the /api/v1/1002 response envelope without materializing
+ * the result set.
+ */
+public class SmsListStream extends JsonPullStream {
+
+    /** Forward-only row source; implementations resolve their column lookups once. */
+    public interface Rows {
+        boolean next();
+        long id();
+        String address();
+        String body();
+        long timestamp();
+        int type();
+        boolean read();
+        void close();
+    }
+
+    private static final int ROWS_PER_PIECE = 64;
+
+    private final Rows rows;
+    private final int limit;
+    private final boolean ascending;
+    private boolean started;
+    private int count;
+    private long lastTimestamp;
+    private long lastId;
+
+    public SmsListStream(Rows rows, int limit, boolean ascending) {
+        this.rows = rows;
+        this.limit = limit;
+        this.ascending = ascending;
+    }
+
+    @Override
+    protected boolean writeNext(JsonWriter writer) throws IOException {
+        if (!started) {
+            writer.beginObject();
+            writer.name("success").value(true);
+            writer.name("message").value("Success");
+            writer.name("data").beginArray();
+            started = true;
+        }
+
+        for (int i = 0; i < ROWS_PER_PIECE; i++) {
+            if (!rows.next()) {
+                finish(writer);
+                return false;
+            }
+            lastTimestamp = rows.timestamp();
+            lastId = rows.id();
+            writer.beginObject();
+            writer.name("id").value(lastId);
+            writer.name("address").value(rows.address());
+            writer.name("body").value(rows.body());
+            writer.name("timestamp").value(lastTimestamp);
+            writer.name("type").value(rows.type());
+            writer.name("read").value(rows.read());
+            writer.endObject();
+            count++;
+        }
+        return true;
+    }
+
+    private void finish(JsonWriter writer) throws IOException {
+        writer.endArray();
+        writer.name("count").value(count);
+        // A full page means there may be more rows past the last (timestamp, id)
+        if (count == limit) {
+            writer.name("next").beginObject();
+            writer.name(ascending ? "after" : "before").value(lastTimestamp);
+            writer.name(ascending ? "afterId" : "beforeId").value(lastId);
+            writer.endObject();
+        }
+        writer.endObject();
+        rows.close();
+    }
+
+    @Override
+    public void close() {
+        rows.close();
+    }
+}
@@ -0,0 +1,55 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+public class SmsMessage implements JsonCodec.Writable {
+    private final long id;
+    private final String address;
+    private final String body;
+    private final long timestamp;
+    private final int type;
+    private final boolean read;
+
+    public SmsMessage(long id, String address, String body, long timestamp, int type, boolean read) {
+        this.id = id;
+        this.address = address;
+        this.body = body;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.read = read;
+    }
+
+    public long getId() { return id; }
+    public String getAddress() { return address; }
+    public String getBody() { return body; }
+    public long getTimestamp() { return timestamp; }
+    public int getType() { return type; }
+    public boolean isRead() { return read; }
+
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(id);
+        writer.name("address").value(address);
+        writer.name("body").value(body);
+        writer.name("timestamp").value(timestamp);
+        writer.name("type").value(type);
+        writer.name("read").value(read);
+        writer.endObject();
+    }
+
+    boolean sameContent(SmsMessage other) {
+        return id == other.id
+            && timestamp == other.timestamp
+            && type == other.type
+            && read == other.read
+            && equal(address, other.address)
+            && equal(body, other.body);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
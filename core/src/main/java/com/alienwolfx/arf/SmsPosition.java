@@ -0,0 +1,36 @@
+package com.alienwolfx.arf;
+
+/**
+ * A point in (timestamp, id) order, the keyset /api/v1/1002 pages on. Parts of a multipart
+ * or bulk delivery share a millisecond, so the timestamp alone would skip messages at a
+ * page edge. Without an id only the timestamp counts, as it did before ids were sent.
+ */
+public final class SmsPosition {
+
+    private final long timestamp;
+    private final Long id;
+
+    public SmsPosition(long timestamp, Long id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /** Null when only the timestamp is known. */
+    public Long getId() {
+        return id;
+    }
+
+    /** True if the message is strictly older than this position. */
+    public boolean isOlder(long messageTimestamp, long messageId) {
+        return messageTimestamp < timestamp || (id != null && messageTimestamp == timestamp && messageId < id);
+    }
+
+    /** True if the message is strictly newer than this position. */
+    public boolean isNewer(long messageTimestamp, long messageId) {
+        return messageTimestamp > timestamp || (id != null && messageTimestamp == timestamp && messageId > id);
+    }
+}
@@ -0,0 +1,34 @@
+package com.alienwolfx.arf;
+
+/**
+ * The SMS store: an observed window of recent messages in an {@link SmsRing}, plus
+ * queries that reach past it.
+ */
+public interface SmsProvider {
+
+    int TYPE_INBOX = 1;
+    int TYPE_SENT = 2;
+
+    interface Listener {
+        /** Called as soon as the store reports a change, before the window is refreshed. */
+        void onProviderChanged();
+
+        /** Called after a refresh changed the window; previousVersion is the version before it. */
+        void onWindowChanged(long previousVersion);
+    }
+
+    SmsRing getRing();
+
+    /**
+     * Up to limit rows of the given type ({@link SmsRing#TYPE_ANY} for all) strictly between
+     * after and before in (timestamp, id) order, newest first unless ascending. Returns null
+     * if the store is unavailable.
+     *
+     * @throws SecurityException if SMS access has not been granted
+     */
+    SmsListStream.Rows query(int type, SmsPosition before, SmsPosition after, int limit, boolean ascending);
+
+    void start(Listener listener);
+
+    void stop();
+}
@@ -0,0 +1,279 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded window of the most recent SMS messages. Every update that adds, changes or
+ * deletes a message bumps a monotonic version, and each message remembers the version
+ * it last changed in, so clients can ask for just the changes since a version.
+ */
+public class SmsRing {
+
+    public static final int TYPE_ANY = 0;
+
+    private final int capacity;
+    private final ArrayDeque<Tombstone> tombstones = new ArrayDeque<>();
+    private volatile State state;
+    // Deltas older than this can no longer be reconstructed
+    private long horizon;
+
+    /**
+     * @param baseVersion starting version; seeding it from the wall clock keeps versions
+     *                    increasing across process restarts
+     */
+    public SmsRing(int capacity, long baseVersion) {
+        this.capacity = capacity;
+        this.horizon = baseVersion;
+        this.state = new State(new SmsMessage[0], new long[0], baseVersion, false, false);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getVersion() {
+        return state.version;
+    }
+
+    public boolean isPrimed() {
+        return state.primed;
+    }
+
+    /**
+     * Replaces the window with the latest messages, newest first.
+     *
+     * @param complete true when the provider holds no messages beyond this list
+     * @return true if anything changed
+     */
+    public synchronized boolean update(List<SmsMessage> latest, boolean complete) {
+        State previous = state;
+        long nextVersion = previous.version + 1;
+        boolean changed = false;
+
+        Map<Long, Integer> previousIndex = new HashMap<>();
+        for (int i = 0; i < previous.messages.length; i++) {
+            previousIndex.put(previous.messages[i].getId(), i);
+        }
+
+        int size = Math.min(latest.size(), capacity);
+        SmsMessage[] messages = new SmsMessage[size];
+        long[] stamps = new long[size];
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            SmsMessage message = latest.get(i);
+            messages[i] = message;
+            ids.add(message.getId());
+            Integer index = previousIndex.get(message.getId());
+            if (index != null && previous.messages[index].sameContent(message)) {
+                stamps[i] = previous.stamps[index];
+            } else {
+                stamps[i] = nextVersion;
+                changed = true;
+            }
+        }
+
+        // A message missing from the new window was deleted unless it merely aged out of it
+        SmsPosition oldest = size > 0 ? position(messages[size - 1]) : null;
+        for (SmsMessage message : previous.messages) {
+            if (!ids.contains(message.getId())
+                    && (complete || oldest == null || oldest.isNewer(message.getTimestamp(), message.getId()))) {
+                addTombstone(message.getId(), nextVersion);
+                changed = true;
+            }
+        }
+
+        if (!changed && previous.primed && previous.complete == complete) {
+            return false;
+        }
+        state = new State(messages, stamps, changed ? nextVersion : previous.version, complete, true);
+        return changed;
+    }
+
+    /** Messages added or changed after the given version, plus ids deleted since then. */
+    public synchronized Delta since(long sinceVersion) {
+        State current = state;
+        boolean resync = !current.primed || sinceVersion < horizon || sinceVersion > current.version;
+
+        List<SmsMessage> changed = new ArrayList<>();
+        for (int i = 0; i < current.messages.length; i++) {
+            if (resync || current.stamps[i] > sinceVersion) {
+                changed.add(current.messages[i]);
+            }
+        }
+        List<Long> deleted = new ArrayList<>();
+        if (!resync) {
+            for (Tombstone tombstone : tombstones) {
+                if (tombstone.version > sinceVersion) {
+                    deleted.add(tombstone.id);
+                }
+            }
+        }
+        return new Delta(current.version, resync, changed, deleted);
+    }
+
+    /**
+     * Answers a listing from the window, or returns null when the window cannot
+     * guarantee the same result as a provider query.
+     */
+    public SmsListStream.Rows select(int type, SmsPosition before, SmsPosition after, int limit) {
+        State current = state;
+        if (!current.primed) {
+            return null;
+        }
+        SmsMessage[] messages = current.messages;
+        int[] picked = new int[Math.min(limit, messages.length)];
+        int count = 0;
+
+        if (after != null && before == null) {
+            // Ascending from "after" needs every newer message to be inside the window
+            SmsMessage oldest = messages.length > 0 ? messages[messages.length - 1] : null;
+            boolean covered = current.complete
+                || (oldest != null && !after.isNewer(oldest.getTimestamp(), oldest.getId()));
+            if (!covered) {
+                return null;
+            }
+            for (int i = messages.length - 1; i >= 0 && count < picked.length; i--) {
+                SmsMessage message = messages[i];
+                if (after.isNewer(message.getTimestamp(), message.getId()) && matchesType(message, type)) {
+                    picked[count++] = i;
+                }
+            }
+        } else {
+            for (int i = 0; i < messages.length && count < picked.length; i++) {
+                SmsMessage message = messages[i];
+                if ((before == null || before.isOlder(message.getTimestamp(), message.getId()))
+                        && (after == null || after.isNewer(message.getTimestamp(), message.getId()))
+                        && matchesType(message, type)) {
+                    picked[count++] = i;
+                }
+            }
+            // Short pages are only authoritative if nothing older exists outside the window
+            if (count < limit && !current.complete) {
+                return null;
+            }
+        }
+        return new WindowRows(messages, picked, count);
+    }
+
+    private static SmsPosition position(SmsMessage message) {
+        return new SmsPosition(message.getTimestamp(), message.getId());
+    }
+
+    private static boolean matchesType(SmsMessage message, int type) {
+        return type == TYPE_ANY || message.getType() == type;
+    }
+
+    private void addTombstone(long id, long version) {
+        tombstones.addLast(new Tombstone(id, version));
+        while (tombstones.size() > capacity) {
+            horizon = Math.max(horizon, tombstones.removeFirst().version);
+        }
+    }
+
+    private static final class State {
+        final SmsMessage[] messages;
+        final long[] stamps;
+        final long version;
+        final boolean complete;
+        final boolean primed;
+
+        State(SmsMessage[] messages, long[] stamps, long version, boolean complete, boolean primed) {
+            this.messages = messages;
+            this.stamps = stamps;
+            this.version = version;
+            this.complete = complete;
+            this.primed = primed;
+        }
+    }
+
+    private static final class Tombstone {
+        final long id;
+        final long version;
+
+        Tombstone(long id, long version) {
+            this.id = id;
+            this.version = version;
+        }
+    }
+
+    private static final class WindowRows implements SmsListStream.Rows {
+        private final SmsMessage[] messages;
+        private final int[] picked;
+        private final int count;
+        private int position = -1;
+        private SmsMessage current;
+
+        WindowRows(SmsMessage[] messages, int[] picked, int count) {
+            this.messages = messages;
+            this.picked = picked;
+            this.count = count;
+        }
+
+        @Override
+        public boolean next() {
+            if (++position >= count) {
+                return false;
+            }
+            current = messages[picked[position]];
+            return true;
+        }
+
+        @Override public long id() { return current.getId(); }
+        @Override public String address() { return current.getAddress(); }
+        @Override public String body() { return current.getBody(); }
+        @Override public long timestamp() { return current.getTimestamp(); }
+        @Override public int type() { return current.getType(); }
+        @Override public boolean read() { return current.isRead(); }
+        @Override public void close() { }
+    }
+
+    public static class Delta implements JsonCodec.Writable {
+        private final long version;
+        private final boolean resync;
+        private final List<SmsMessage> messages;
+        private final List<Long> deleted;
+
+        Delta(long version, boolean resync, List<SmsMessage> messages, List<Long> deleted) {
+            this.version = version;
+            this.resync = resync;
+            this.messages = messages;
+            this.deleted = deleted;
+        }
+
+        public long getVersion() { return version; }
+        public boolean isResync() { return resync; }
+        public List<SmsMessage> getMessages() { return messages; }
+        public List<Long> getDeleted() { return deleted; }
+
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("version").value(version);
+            writer.name("resync").value(resync);
+            if (messages != null) {
+                writer.name("messages").beginArray();
+                for (SmsMessage message : messages) {
+                    message.writeJson(writer);
+                }
+                writer.endArray();
+            }
+            if (deleted != null) {
+                writer.name("deleted").beginArray();
+                for (Long id : deleted) {
+                    writer.value(id);
+                }
+                writer.endArray();
+            }
+            writer.endObject();
+        }
+    }
+}
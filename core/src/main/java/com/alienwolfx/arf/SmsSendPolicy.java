@@ -0,0 +1,105 @@
+package com.alienwolfx.arf;
+
+/**
+ * The outgoing SMS queue's decisions, apart from where it keeps its messages: when the next
+ * bulk message may go, how sent and delivery reports move a message between statuses, and
+ * what a restart does to messages left mid-send. Not thread-safe; the queue applies it on
+ * its single send thread.
+ */
+public final class SmsSendPolicy {
+
+    /** What one status report says about one part. */
+    public enum Report { DELIVERED, PENDING, FAILED }
+
+    // GSM TP-Status (3GPP TS 23.040 9.2.3.15): below 0x20 done, 0x20-0x3F the SC is still trying
+    private static final int TP_STATUS_TEMPORARY = 0x20;
+    private static final int TP_STATUS_PERMANENT = 0x40;
+    // CDMA error class, as Android reports it in the top byte of getStatus()
+    private static final int CDMA_ERROR_TEMPORARY = 2;
+
+    private final long intervalMs;
+    private final long retentionMs;
+    private long nextSendAt;
+
+    /** @param retentionMs finished messages older than this are dropped at restart */
+    public SmsSendPolicy(int messagesPerMinute, long retentionMs) {
+        this.intervalMs = 60000L / messagesPerMinute;
+        this.retentionMs = retentionMs;
+    }
+
+    /**
+     * Returns 0 and takes the send slot if the message may go now, otherwise the milliseconds
+     * to wait before trying again. Urgent messages never wait and leave the slot alone.
+     */
+    public long reserve(boolean urgent, long now) {
+        if (urgent) {
+            return 0;
+        }
+        if (now < nextSendAt) {
+            return nextSendAt - now;
+        }
+        nextSendAt = now + intervalMs;
+        return 0;
+    }
+
+    /**
+     * Status of a message found after a restart. One that was handed to the radio may have
+     * gone out, so it becomes unconfirmed rather than queued again.
+     */
+    public static String afterRestart(String status) {
+        return SmsSender.STATUS_SENDING.equals(status) ? SmsSender.STATUS_UNCONFIRMED : status;
+    }
+
+    /** True if a message last updated at {@code updated} is finished and past retention. */
+    public boolean isExpired(String status, long updated, long now) {
+        return !SmsSender.STATUS_QUEUED.equals(status) && updated < now - retentionMs;
+    }
+
+    /**
+     * Status after one part's sent report.
+     *
+     * @param partsSent parts reported sent, including this one if it succeeded
+     */
+    public static String afterSent(String status, boolean ok, int partsSent, int parts) {
+        if (!ok) {
+            return SmsSender.STATUS_FAILED;
+        }
+        return SmsSender.STATUS_SENDING.equals(status) && partsSent >= parts ? SmsSender.STATUS_SENT : status;
+    }
+
+    /**
+     * Classifies a status report PDU's status. A temporary error is not final: the service
+     * centre keeps trying and sends another report, so the part stays open.
+     *
+     * @param cdma true for a 3GPP2 report, false for GSM/UMTS
+     */
+    public static Report classify(int reportStatus, boolean cdma) {
+        if (cdma) {
+            if (reportStatus == 0) {
+                return Report.DELIVERED;
+            }
+            return (reportStatus >> 24 & 0x03) == CDMA_ERROR_TEMPORARY ? Report.PENDING : Report.FAILED;
+        }
+        if (reportStatus < TP_STATUS_TEMPORARY) {
+            return Report.DELIVERED;
+        }
+        return reportStatus < TP_STATUS_PERMANENT ? Report.PENDING : Report.FAILED;
+    }
+
+    /**
+     * Status after one part's delivery report. A pending report changes nothing; a late
+     * report for a message already failed or unconfirmed leaves it as it is unless the report
+     * itself is a failure.
+     *
+     * @param partsDelivered parts reported delivered, including this one if it was delivered
+     */
+    public static String afterDelivery(String status, Report report, int partsDelivered, int parts) {
+        if (report == Report.FAILED) {
+            return SmsSender.STATUS_FAILED;
+        }
+        if (report == Report.PENDING) {
+            return status;
+        }
+        return SmsSender.STATUS_SENT.equals(status) && partsDelivered >= parts ? SmsSender.STATUS_DELIVERED : status;
+    }
+}
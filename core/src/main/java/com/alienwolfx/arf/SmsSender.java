@@ -0,0 +1,117 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+/** Outgoing SMS, queued as jobs whose per-message progress can be polled. */
+public interface SmsSender {
+
+    String STATUS_QUEUED = "queued";
+    String STATUS_SENDING = "sending";
+    String STATUS_SENT = "sent";
+    String STATUS_DELIVERED = "delivered";
+    String STATUS_FAILED = "failed";
+    // Handed to the radio before a restart, outcome unknown; never resent to avoid duplicates
+    String STATUS_UNCONFIRMED = "unconfirmed";
+
+    /**
+     * Queues one message per entry and returns the job id.
+     *
+     * @param urgent skip ahead of queued bulk traffic and ignore the rate limit
+     */
+    String submit(List<String> addresses, List<String> bodies, boolean urgent) throws Exception;
+
+    /** Returns null for an unknown job; details adds one entry per message. */
+    JobStatus getJob(String jobId, boolean details);
+
+    void start();
+
+    void stop();
+
+    class JobStatus implements JsonCodec.Writable {
+        private final String jobId;
+        private final long created;
+        private int total;
+        private int queued;
+        private int sending;
+        private int sent;
+        private int delivered;
+        private int failed;
+        private int unconfirmed;
+        private final List<MessageStatus> messages;
+
+        JobStatus(String jobId, long created, List<MessageStatus> messages) {
+            this.jobId = jobId;
+            this.created = created;
+            this.messages = messages;
+        }
+
+        void add(MessageStatus message) {
+            messages.add(message);
+        }
+
+        void count(String status) {
+            total++;
+            switch (status) {
+                case STATUS_QUEUED: queued++; break;
+                case STATUS_SENDING: sending++; break;
+                case STATUS_SENT: sent++; break;
+                case STATUS_DELIVERED: delivered++; break;
+                case STATUS_FAILED: failed++; break;
+                default: unconfirmed++; break;
+            }
+        }
+
+        public String getJobId() { return jobId; }
+        public int getTotal() { return total; }
+        public int getQueued() { return queued; }
+
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("jobId").value(jobId);
+            writer.name("created").value(created);
+            writer.name("total").value(total);
+            writer.name("queued").value(queued);
+            writer.name("sending").value(sending);
+            writer.name("sent").value(sent);
+            writer.name("delivered").value(delivered);
+            writer.name("failed").value(failed);
+            writer.name("unconfirmed").value(unconfirmed);
+            if (messages != null) {
+                writer.name("messages").beginArray();
+                for (MessageStatus message : messages) {
+                    message.writeJson(writer);
+                }
+                writer.endArray();
+            }
+            writer.endObject();
+        }
+    }
+
+    class MessageStatus implements JsonCodec.Writable {
+        private final long id;
+        private final String address;
+        private final String status;
+        private final Integer errorCode;
+
+        MessageStatus(long id, String address, String status, Integer errorCode) {
+            this.id = id;
+            this.address = address;
+            this.status = status;
+            this.errorCode = errorCode;
+        }
+
+        @Override
+        public void writeJson(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("id").value(id);
+            writer.name("address").value(address);
+            writer.name("status").value(status);
+            writer.name("errorCode").value(errorCode);
+            writer.endObject();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * When each step of bringing the server up happened, on the {@link System#nanoTime} clock.
+ * Phases before the server existed, such as the boot broadcast, are recorded by whoever saw
+ * them with {@link #markAt}. Each phase keeps its first time; later marks are ignored, so
+ * the per-request {@link #FIRST_RESPONSE} mark costs one map lookup.
+ */
+public class StartupTrace implements JsonCodec.Writable {
+
+    public static final String BOUND = "bound";
+    public static final String READY = "ready";
+    public static final String FIRST_RESPONSE = "first_response";
+
+    private final Map<String, Long> phases = new ConcurrentHashMap<>();
+
+    public void mark(String phase) {
+        if (!phases.containsKey(phase)) {
+            markAt(phase, System.nanoTime());
+        }
+    }
+
+    public void markAt(String phase, long nanoTime) {
+        if (!phases.containsKey(phase)) {
+            phases.putIfAbsent(phase, nanoTime);
+        }
+    }
+
+    public boolean has(String phase) {
+        return phases.containsKey(phase);
+    }
+
+    /** Milliseconds from the earliest phase to each one, in the order they happened. */
+    public Map<String, Long> getPhaseMillis() {
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(phases.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                return Long.compare(a.getValue(), b.getValue());
+            }
+        });
+        Map<String, Long> millis = new LinkedHashMap<>();
+        if (sorted.isEmpty()) {
+            return millis;
+        }
+        long origin = sorted.get(0).getValue();
+        for (Map.Entry<String, Long> phase : sorted) {
+            millis.put(phase.getKey(), (phase.getValue() - origin) / 1000000L);
+        }
+        return millis;
+    }
+
+    /** Milliseconds between two phases, or -1 if either has not happened. */
+    public long getMillisBetween(String from, String to) {
+        Long start = phases.get(from);
+        Long end = phases.get(to);
+        return start == null || end == null ? -1 : (end - start) / 1000000L;
+    }
+
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("ready").value(has(READY));
+        writer.name("phases").beginObject();
+        for (Map.Entry<String, Long> phase : getPhaseMillis().entrySet()) {
+            writer.name(phase.getKey()).value(phase.getValue());
+        }
+        writer.endObject();
+        writer.name("bindToFirstResponseMs").value(getMillisBetween(BOUND, FIRST_RESPONSE));
+        writer.endObject();
+    }
+}
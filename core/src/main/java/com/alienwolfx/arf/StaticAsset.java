@@ -0,0 +1,81 @@
+package com.alienwolfx.arf;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An asset body shared by every request for it, normally a read-only mapping of the file.
+ * Requests read through their own view of the buffer, so the bytes go from the page cache
+ * to the socket without a copy on the Java heap.
+ */
+public class StaticAsset {
+
+    private final ByteBuffer content;
+    private final long lastModified;
+    private final String etag;
+
+    public StaticAsset(ByteBuffer content, long lastModified) {
+        this.content = content.asReadOnlyBuffer().slice();
+        this.lastModified = lastModified;
+        // Strong: byte ranges are only valid against the exact same bytes
+        this.etag = "\"" + Long.toHexString(this.content.remaining()) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    public long getLength() {
+        return content.remaining();
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /** Streams {@code length} bytes starting at {@code offset}. */
+    public InputStream newInputStream(long offset, long length) {
+        ByteBuffer view = content.duplicate();
+        view.position((int) offset);
+        view.limit((int) (offset + length));
+        return new BufferInputStream(view);
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.alienwolfx.arf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+
+/**
+ * Serves the WebUI from an {@link AssetSource}. A gzip sibling built alongside a text asset
+ * (app.js.gz) is sent instead when the client accepts it, and a single byte range is
+ * honoured. Fingerprinted names (app.3f2a9c1e.js) never change content, so they are cached
+ * for a year; everything else revalidates against the ETag.
+ */
+public class StaticAssets {
+
+    static final String INDEX = "index.html";
+    static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+    static final String CACHE_REVALIDATE = "no-cache";
+
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    private static final Pattern FINGERPRINT = Pattern.compile(".*[.-][0-9a-f]{8,}\\.[A-Za-z0-9]+$");
+    private static final long[] UNSATISFIABLE = {};
+    private static final Map<String, String> MIME_TYPES = new HashMap<>();
+    // Types worth looking for a .gz sibling of; images and fonts are compressed already
+    private static final Set<String> COMPRESSIBLE = new HashSet<>();
+
+    static {
+        text("html", "text/html; charset=utf-8");
+        text("htm", "text/html; charset=utf-8");
+        text("js", "text/javascript; charset=utf-8");
+        text("mjs", "text/javascript; charset=utf-8");
+        text("css", "text/css; charset=utf-8");
+        text("json", "application/json");
+        text("map", "application/json");
+        text("webmanifest", "application/manifest+json");
+        text("svg", "image/svg+xml");
+        text("txt", "text/plain; charset=utf-8");
+        text("wasm", "application/wasm");
+        MIME_TYPES.put("png", "image/png");
+        MIME_TYPES.put("jpg", "image/jpeg");
+        MIME_TYPES.put("jpeg", "image/jpeg");
+        MIME_TYPES.put("gif", "image/gif");
+        MIME_TYPES.put("webp", "image/webp");
+        MIME_TYPES.put("ico", "image/x-icon");
+        MIME_TYPES.put("woff", "font/woff");
+        MIME_TYPES.put("woff2", "font/woff2");
+        MIME_TYPES.put("ttf", "font/ttf");
+    }
+
+    private final AssetSource source;
+
+    public StaticAssets(AssetSource source) {
+        this.source = source;
+    }
+
+    /** Serves a GET or HEAD for {@code session}'s uri, or returns null if there is no such asset. */
+    public Response serve(IHTTPSession session) throws IOException {
+        String path = normalize(session.getUri());
+        if (path == null) {
+            return null;
+        }
+        String extension = extension(path);
+        boolean compressible = COMPRESSIBLE.contains(extension);
+        Map<String, String> headers = session.getHeaders();
+        StaticAsset asset = null;
+        boolean gzipped = false;
+        if (compressible && GzipEncoder.accepts(headers.get("accept-encoding"))) {
+            asset = source.open(path + ".gz");
+            gzipped = asset != null;
+        }
+        if (asset == null) {
+            asset = source.open(path);
+        }
+        if (asset == null) {
+            return null;
+        }
+        String mimeType = MIME_TYPES.get(extension);
+        if (mimeType == null) {
+            mimeType = DEFAULT_MIME_TYPE;
+        }
+
+        Response response;
+        // The .gz sibling is a different representation and needs its own validator
+        String etag = gzipped ? ResponseCache.gzipVariant(asset.getEtag()) : asset.getEtag();
+        long length = asset.getLength();
+        if (ResponseCache.matches(headers.get("if-none-match"), etag)) {
+            response = empty(Response.Status.NOT_MODIFIED, mimeType);
+        } else {
+            long[] range = null;
+            String ifRange = headers.get("if-range");
+            // A stale If-Range (including a date, which this server never hands out) means the whole asset
+            if (ifRange == null || ifRange.equals(etag)) {
+                range = parseRange(headers.get("range"), length);
+            }
+            if (range == UNSATISFIABLE) {
+                response = empty(Response.Status.RANGE_NOT_SATISFIABLE, mimeType);
+                response.addHeader("Content-Range", "bytes */" + length);
+            } else if (range != null) {
+                long count = range[1] - range[0] + 1;
+                response = new BufferedResponse(Response.Status.PARTIAL_CONTENT, mimeType,
+                    asset.newInputStream(range[0], count), count);
+                response.addHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+            } else {
+                response = new BufferedResponse(Response.Status.OK, mimeType, asset.newInputStream(0, length), length);
+            }
+            if (gzipped) {
+                response.addHeader("Content-Encoding", "gzip");
+            }
+        }
+        response.addHeader("ETag", etag);
+        response.addHeader("Cache-Control", FINGERPRINT.matcher(path).matches() ? CACHE_IMMUTABLE : CACHE_REVALIDATE);
+        response.addHeader("Accept-Ranges", "bytes");
+        if (compressible) {
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+        return response;
+    }
+
+    /** The relative asset path for a uri, or null if it tries to leave the root. */
+    static String normalize(String uri) {
+        if (uri == null || !uri.startsWith("/")) {
+            return null;
+        }
+        String path = uri.substring(1);
+        if (path.isEmpty() || path.endsWith("/")) {
+            path += INDEX;
+        }
+        for (String segment : path.split("/", -1)) {
+            if (segment.isEmpty() || ".".equals(segment) || "..".equals(segment) || segment.indexOf('\\') >= 0) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * The inclusive {start, end} of a single "bytes=" range, {@link #UNSATISFIABLE}, or null
+     * to send the whole asset: no header, a malformed one, or several ranges.
+     */
+    static long[] parseRange(String header, long length) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // Suffix: the final N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new long[] {Math.max(0, length - suffix), length - 1};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                return null;
+            }
+            if (start >= length) {
+                return UNSATISFIABLE;
+            }
+            return new long[] {start, Math.min(end, length - 1)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Response empty(Response.Status status, String mimeType) {
+        return new BufferedResponse(status, mimeType, new ByteArrayInputStream(new byte[0]), 0);
+    }
+
+    private static String extension(String path) {
+        int dot = path.lastIndexOf('.');
+        return dot < path.lastIndexOf('/') + 1 ? "" : path.substring(dot + 1).toLowerCase();
+    }
+
+    private static void text(String extension, String mimeType) {
+        MIME_TYPES.put(extension, mimeType);
+        COMPRESSIBLE.add(extension);
+    }
+}
@@ -0,0 +1,338 @@
+package com.alienwolfx.arf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards requests to the stock MifiService API. The vendor daemon copes badly with many
+ * clients, so GETs are coalesced: identical requests in flight share one upstream call,
+ * and 200 responses that upstream does not mark private are kept for a short TTL. At most
+ * {@code maxConnections} calls are open at once; HttpURLConnection keeps them alive between
+ * calls as long as every body is read to the end, which this class always does.
+ */
+public class StockApiProxy {
+
+    /** Request headers passed upstream; the values also key the cache. */
+    private static final String[] FORWARDED_HEADERS = {"cookie", "authorization", "accept"};
+
+    private final String baseUrl;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final long cacheTtlMs;
+    private final int maxCacheEntries;
+    private final int maxBodyBytes;
+    private final Semaphore connections;
+    private final Map<String, FutureTask<Reply>> inFlight = new ConcurrentHashMap<>();
+    // Access-ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, Reply> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong upstreamCalls = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    // Bumped by every POST; a GET that started before one must not cache what it read
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    public StockApiProxy(String baseUrl, int maxConnections, int connectTimeoutMs, int readTimeoutMs,
+                         long cacheTtlMs, int maxCacheEntries, int maxBodyBytes) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.connections = new Semaphore(maxConnections, true);
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.cacheTtlMs = cacheTtlMs;
+        this.maxCacheEntries = maxCacheEntries;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * GETs {@code path} (with {@code query}, already encoded, or null). With {@code fresh}
+     * the cache is skipped, though the call is still shared with one already in flight.
+     */
+    public Reply get(String path, String query, Map<String, String> headers, boolean fresh) throws IOException {
+        final String url = url(path, query);
+        final Map<String, String> forwarded = forwardedHeaders(headers);
+        final String key = cacheKey(url, forwarded);
+        long now = System.currentTimeMillis();
+        if (!fresh) {
+            Reply cached = cached(key, now);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        FutureTask<Reply> task = new FutureTask<>(new Callable<Reply>() {
+            @Override
+            public Reply call() throws IOException {
+                long generation = writeGeneration.get();
+                Reply reply = send("GET", url, forwarded, null, null);
+                if (reply.isCacheable()) {
+                    store(key, reply, generation);
+                }
+                return reply;
+            }
+        });
+        FutureTask<Reply> running = inFlight.putIfAbsent(key, task);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return await(running);
+        }
+        try {
+            task.run();
+            return await(task);
+        } finally {
+            inFlight.remove(key, task);
+        }
+    }
+
+    /** Forwards a POST as-is. Writes may change what GETs return, so the cache is dropped. */
+    public Reply post(String path, String query, Map<String, String> headers, String contentType, byte[] body)
+            throws IOException {
+        try {
+            return send("POST", url(path, query), forwardedHeaders(headers), contentType, body);
+        } finally {
+            synchronized (cache) {
+                writeGeneration.incrementAndGet();
+                cache.clear();
+            }
+        }
+    }
+
+    public long getUpstreamCalls() {
+        return upstreamCalls.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /** Requests that waited on an identical call instead of making their own. */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    private Reply send(String method, String url, Map<String, String> headers, String contentType, byte[] body)
+            throws IOException {
+        try {
+            if (!connections.tryAcquire(connectTimeoutMs, TimeUnit.MILLISECONDS)) {
+                failures.incrementAndGet();
+                throw new Busy();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a stock API connection");
+        }
+        upstreamCalls.incrementAndGet();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setUseCaches(false);
+            connection.setInstanceFollowRedirects(false);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            if (body != null) {
+                connection.setDoOutput(true);
+                if (contentType != null) {
+                    connection.setRequestProperty("Content-Type", contentType);
+                }
+                connection.setFixedLengthStreamingMode(body.length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            byte[] data = in != null ? readFully(in) : new byte[0];
+            return new Reply(status, connection.getContentType(), data, connection.getHeaderField("Location"),
+                connection.getHeaderField("Set-Cookie"), connection.getHeaderField("Cache-Control"),
+                System.currentTimeMillis() + cacheTtlMs);
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            connections.release();
+        }
+    }
+
+    /** Reads to the end, which is what hands the connection back to the keep-alive pool. */
+    private byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream body = in) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = body.read(buffer)) != -1) {
+                if (out.size() + n > maxBodyBytes) {
+                    throw new IOException("Stock API response exceeds " + maxBodyBytes + " bytes");
+                }
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private Reply cached(String key, long now) {
+        synchronized (cache) {
+            Reply reply = cache.get(key);
+            if (reply == null) {
+                return null;
+            }
+            if (reply.expiresAt <= now) {
+                cache.remove(key);
+                return null;
+            }
+            return reply;
+        }
+    }
+
+    /** Caches the reply unless a POST has gone through since the GET began. */
+    private void store(String key, Reply reply, long generation) {
+        if (cacheTtlMs <= 0) {
+            return;
+        }
+        synchronized (cache) {
+            if (writeGeneration.get() != generation) {
+                return;
+            }
+            cache.put(key, reply);
+            Iterator<String> eldest = cache.keySet().iterator();
+            while (cache.size() > maxCacheEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    private static Reply await(FutureTask<Reply> task) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    // The call belongs to whoever started it; keep waiting for the shared result
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private String url(String path, String query) {
+        return baseUrl + path + (query != null && !query.isEmpty() ? "?" + query : "");
+    }
+
+    private static Map<String, String> forwardedHeaders(Map<String, String> headers) {
+        Map<String, String> forwarded = new LinkedHashMap<>();
+        for (String name : FORWARDED_HEADERS) {
+            String value = headers.get(name);
+            if (value != null) {
+                forwarded.put(name, value);
+            }
+        }
+        return forwarded;
+    }
+
+    private static String cacheKey(String url, Map<String, String> headers) {
+        StringBuilder key = new StringBuilder(url);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            key.append('\n').append(header.getKey()).append(':').append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    /** No connection slot freed up in time; the daemon is already as busy as we let it get. */
+    public static class Busy extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        Busy() {
+            super("Stock API connections are all in use");
+        }
+    }
+
+    /** A complete upstream response. Shared between callers, so treat it as read-only. */
+    public static class Reply {
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+        private final String location;
+        private final String setCookie;
+        private final String cacheControl;
+        private final long expiresAt;
+
+        Reply(int status, String contentType, byte[] body, String location, String setCookie, String cacheControl,
+              long expiresAt) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+            this.location = location;
+            this.setCookie = setCookie;
+            this.cacheControl = cacheControl;
+            this.expiresAt = expiresAt;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public String getSetCookie() {
+            return setCookie;
+        }
+
+        boolean isCacheable() {
+            if (status != 200 || setCookie != null) {
+                return false;
+            }
+            if (cacheControl == null) {
+                return true;
+            }
+            String directives = cacheControl.toLowerCase(Locale.US);
+            return !directives.contains("no-store") && !directives.contains("no-cache")
+                && !directives.contains("private");
+        }
+    }
+}
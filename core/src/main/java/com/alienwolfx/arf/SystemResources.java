@@ -0,0 +1,29 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+public class SystemResources implements JsonCodec.Writable {
+    private final long totalMemory;
+    private final long availableMemory;
+    private final long totalStorage;
+    private final long availableStorage;
+
+    public SystemResources(long totalMemoryMB, long availableMemoryMB, long totalStorageMB, long availableStorageMB) {
+        this.totalMemory = totalMemoryMB;
+        this.availableMemory = availableMemoryMB;
+        this.totalStorage = totalStorageMB;
+        this.availableStorage = availableStorageMB;
+    }
+
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("totalMemory").value(totalMemory);
+        writer.name("availableMemory").value(availableMemory);
+        writer.name("totalStorage").value(totalStorage);
+        writer.name("availableStorage").value(availableStorage);
+        writer.endObject();
+    }
+}
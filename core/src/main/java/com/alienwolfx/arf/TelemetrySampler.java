@@ -0,0 +1,202 @@
+package com.alienwolfx.arf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects telemetry off the request path on a fixed interval and keeps the latest
+ * serialized payload per function number, so handlers only copy bytes out.
+ */
+public class TelemetrySampler {
+
+    public interface Listener {
+        /** Called on the sampling thread when a source's payload differs from its previous sample. */
+        void onSampleChanged(int funcNo, Snapshot snapshot);
+    }
+
+    private static final Logger LOG = Logger.getLogger(TelemetrySampler.class.getName());
+    private static final byte[] ENVELOPE_HEAD =
+        "{\"success\":true,\"message\":\"Success\",\"sampledAt\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SAMPLE_AGE = ",\"sampleAgeMs\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATA = ",\"data\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TAIL = {'}'};
+
+    private final JsonCodec json;
+    private final long intervalMs;
+    private final Map<Integer, Channel> channels = new HashMap<>();
+    private volatile Listener listener;
+    private ScheduledExecutorService executor;
+
+    public TelemetrySampler(JsonCodec json, long intervalMs) {
+        this.json = json;
+        this.intervalMs = intervalMs;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Registers a source; must be called before {@link #start()}. */
+    public void register(int funcNo, Callable<?> source) {
+        register(funcNo, source, source);
+    }
+
+    /**
+     * Registers a source whose scheduled samples have side effects, such as recording
+     * history; {@link #refresh} collects through onDemand instead.
+     */
+    public void register(int funcNo, Callable<?> source, Callable<?> onDemand) {
+        channels.put(funcNo, new Channel(funcNo, source, onDemand));
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "arf-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sampleAll, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /** Returns the latest snapshot, collecting synchronously if nothing has been sampled yet. */
+    public Snapshot latest(int funcNo) throws Exception {
+        Channel channel = channel(funcNo);
+        Snapshot snapshot = channel.snapshot.get();
+        return snapshot != null ? snapshot : channel.refresh();
+    }
+
+    /** Collects on the calling thread and publishes the result. */
+    public Snapshot refresh(int funcNo) throws Exception {
+        Channel channel = channel(funcNo);
+        return channel.publish(channel.onDemand.call());
+    }
+
+    private Channel channel(int funcNo) {
+        Channel channel = channels.get(funcNo);
+        if (channel == null) {
+            throw new IllegalArgumentException("No telemetry source for " + funcNo);
+        }
+        return channel;
+    }
+
+    private void sampleAll() {
+        for (Channel channel : channels.values()) {
+            try {
+                channel.refresh();
+            } catch (Exception e) {
+                // Keep serving the previous snapshot
+                LOG.log(Level.SEVERE, "Error message", e);
+            }
+        }
+    }
+
+    private class Channel {
+        private final int funcNo;
+        private final Callable<?> source;
+        private final Callable<?> onDemand;
+        private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+        Channel(int funcNo, Callable<?> source, Callable<?> onDemand) {
+            this.funcNo = funcNo;
+            this.source = source;
+            this.onDemand = onDemand;
+        }
+
+        Snapshot refresh() throws Exception {
+            return publish(source.call());
+        }
+
+        Snapshot publish(Object value) throws Exception {
+            byte[] data = json.encode(value);
+            Snapshot next = new Snapshot(data, System.currentTimeMillis());
+            Snapshot previous = snapshot.getAndSet(next);
+            Listener current = listener;
+            if (current != null && (previous == null || !previous.etag.equals(next.etag))) {
+                current.onSampleChanged(funcNo, next);
+            }
+            return next;
+        }
+    }
+
+    public static final class Snapshot {
+        private final byte[] data;
+        private final long sampledAt;
+        private final String etag;
+        private volatile byte[] deflatedData;
+
+        Snapshot(byte[] data, long sampledAt) {
+            this.data = data;
+            this.sampledAt = sampledAt;
+            this.etag = ResponseCache.etagOf(data);
+        }
+
+        public long getSampledAt() { return sampledAt; }
+
+        /** Derived from the payload only, so an unchanged sample keeps its validator. */
+        public String getEtag() { return etag; }
+
+        /** The serialized payload without the response envelope; callers must not modify it. */
+        public byte[] getData() { return data; }
+
+        /** Wraps the cached payload in the standard ApiResponse envelope plus sample timing. */
+        public byte[] toResponseBytes(long now) {
+            byte[] head = head(now);
+            byte[] out = new byte[head.length + data.length + 1];
+            int pos = 0;
+            pos = append(out, pos, head);
+            pos = append(out, pos, data);
+            out[pos] = '}';
+            return out;
+        }
+
+        /**
+         * Same bytes as {@link #toResponseBytes} in gzip form. The payload is deflated once
+         * per sample; each request only adds the envelope around it.
+         */
+        public byte[] toGzipResponseBytes(long now, GzipEncoder encoder) {
+            byte[] segment = deflatedData;
+            if (segment == null) {
+                segment = encoder.deflateSegment(data, GzipEncoder.CACHED_LEVEL);
+                deflatedData = segment;
+            }
+            return encoder.splice(head(now), segment, data, TAIL);
+        }
+
+        private byte[] head(long now) {
+            byte[] sampledAtBytes = Long.toString(sampledAt).getBytes(StandardCharsets.US_ASCII);
+            byte[] ageBytes = Long.toString(Math.max(0, now - sampledAt)).getBytes(StandardCharsets.US_ASCII);
+            byte[] out = new byte[ENVELOPE_HEAD.length + sampledAtBytes.length + SAMPLE_AGE.length
+                + ageBytes.length + DATA.length];
+            int pos = 0;
+            pos = append(out, pos, ENVELOPE_HEAD);
+            pos = append(out, pos, sampledAtBytes);
+            pos = append(out, pos, SAMPLE_AGE);
+            pos = append(out, pos, ageBytes);
+            append(out, pos, DATA);
+            return out;
+        }
+
+        private static int append(byte[] out, int pos, byte[] bytes) {
+            System.arraycopy(bytes, 0, out, pos, bytes.length);
+            return pos + bytes.length;
+        }
+    }
+}
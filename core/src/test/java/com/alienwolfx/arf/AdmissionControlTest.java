@@ -0,0 +1,53 @@
+package com.alienwolfx.arf;
+
+import org.junit.Test;
+
+import fi.iki.elonen.NanoHTTPD.Response;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControlTest {
+
+    private final AdmissionControl admission = new AdmissionControl(
+        new AdmissionControl.Limit(3, 1), new AdmissionControl.Limit(5, 0.5), new AdmissionControl.Limit(1, 0.1),
+        2, 60000);
+
+    @Test
+    public void emptyBucketAsksTheClientToComeBackLater() {
+        for (int i = 0; i < 3; i++) {
+            assertNull(admission.admit("10.0.0.1", "/api/v1/1000", ApiRoute.Lane.CHEAP));
+        }
+        AdmissionControl.Rejection rejection = admission.admit("10.0.0.1", "/api/v1/1000", ApiRoute.Lane.CHEAP);
+        assertNotNull(rejection);
+        assertEquals(Response.Status.TOO_MANY_REQUESTS, rejection.getStatus());
+        assertEquals(1, rejection.getRetryAfterSeconds());
+
+        assertNull(admission.admit("10.0.0.1", "/api/v1/1007", ApiRoute.Lane.CHEAP));
+        assertNull(admission.admit("10.0.0.2", "/api/v1/1000", ApiRoute.Lane.CHEAP));
+        assertEquals(1, admission.getRateLimited());
+        assertEquals(3, admission.getTrackedBuckets());
+    }
+
+    @Test
+    public void slowLanesWaitLongerForTheirNextToken() {
+        assertNull(admission.admit("10.0.0.1", "/api/v1/1009", ApiRoute.Lane.STREAM));
+        AdmissionControl.Rejection rejection = admission.admit("10.0.0.1", "/api/v1/1009", ApiRoute.Lane.STREAM);
+        assertNotNull(rejection);
+        assertTrue(String.valueOf(rejection.getRetryAfterSeconds()), rejection.getRetryAfterSeconds() >= 9);
+    }
+
+    @Test
+    public void expensiveLaneKeepsWorkersFree() {
+        assertNull(admission.admit("10.0.0.1", "/api/v1/1011", ApiRoute.Lane.EXPENSIVE));
+        assertNull(admission.admit("10.0.0.2", "/api/v1/1011", ApiRoute.Lane.EXPENSIVE));
+        AdmissionControl.Rejection rejection = admission.admit("10.0.0.3", "/api/v1/1002", ApiRoute.Lane.EXPENSIVE);
+        assertNotNull(rejection);
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE, rejection.getStatus());
+        assertEquals(1, admission.getLaneRejected());
+        // Cheap reads are untouched by the expensive ones
+        assertNull(admission.admit("10.0.0.3", "/api/v1/1000", ApiRoute.Lane.CHEAP));
+
+        admission.release(ApiRoute.Lane.EXPENSIVE);
+        assertNull(admission.admit("10.0.0.3", "/api/v1/1002", ApiRoute.Lane.EXPENSIVE));
+    }
+}
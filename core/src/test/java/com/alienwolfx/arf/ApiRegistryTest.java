@@ -0,0 +1,63 @@
+package com.alienwolfx.arf;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumSet;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.*;
+
+public class ApiRegistryTest {
+
+    @Test
+    public void resolvesFunctionAndNamedRoutes() {
+        ApiRegistry registry = new ApiRegistry();
+        ApiRoute device = route();
+        ApiRoute batch = route();
+        registry.register(1000, device);
+        registry.register("/api/v1/batch", batch);
+
+        assertSame(device, registry.lookup("/api/v1/1000"));
+        assertSame(device, registry.function(1000));
+        assertSame(batch, registry.lookup("/api/v1/batch"));
+        assertNull(registry.lookup("/api/v1/1001"));
+        assertNull(registry.lookup("/api/v1/100"));
+        assertNull(registry.lookup("/api/v1/10000"));
+        assertNull(registry.lookup("/other"));
+        assertNull(registry.function(999));
+        assertNull(registry.function(5000));
+    }
+
+    @Test
+    public void functionNumberRequiresFourDigits() {
+        assertEquals(1013, ApiRegistry.functionNumber("/api/v1/1013"));
+        assertEquals(-1, ApiRegistry.functionNumber("/api/v1/10a3"));
+        assertEquals(-1, ApiRegistry.functionNumber("/api/v2/1013"));
+        assertEquals(-1, ApiRegistry.functionNumber("/api/v1/1013/"));
+    }
+
+    @Test
+    public void duplicateRegistrationFails() {
+        ApiRegistry registry = new ApiRegistry();
+        registry.register(1000, route());
+        try {
+            registry.register(1000, route());
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void allowHeaderListsDeclaredMethods() {
+        ApiRoute route = new ApiRoute(EnumSet.of(NanoHTTPD.Method.GET, NanoHTTPD.Method.POST), false, 0, null);
+        assertEquals("GET, POST", route.getAllowHeader());
+        assertTrue(route.allows(NanoHTTPD.Method.POST));
+        assertFalse(route.allows(NanoHTTPD.Method.DELETE));
+    }
+
+    private static ApiRoute route() {
+        return new ApiRoute(Collections.singleton(NanoHTTPD.Method.GET), true, 0, session -> null);
+    }
+}
@@ -0,0 +1,129 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.*;
+
+public class BatchRunnerTest {
+
+    private final NanoHTTPD server = new NanoHTTPD(0) {
+    };
+    private final BatchRunner runner = new BatchRunner(4, 16, 1000, 1024, 2048);
+
+    @After
+    public void tearDown() {
+        runner.shutdown();
+    }
+
+    @Test
+    public void runsItemsInParallelAndEmbedsBodies() throws Exception {
+        long start = System.currentTimeMillis();
+        JsonArray data = run(Arrays.asList(item(1, null), item(2, Collections.singletonMap("limit", "5 & more"))),
+            (funcNo, session) -> {
+                sleep(300);
+                String body = "{\"func\":" + funcNo + ",\"limit\":\"" + session.getParameters().get("limit") + "\"}";
+                return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK, "application/json", body);
+            });
+        assertTrue(System.currentTimeMillis() - start < 550);
+
+        JsonObject second = data.get(1).getAsJsonObject();
+        assertEquals(2, second.get("funcNo").getAsInt());
+        assertEquals(200, second.get("status").getAsInt());
+        assertEquals("[5 & more]", second.getAsJsonObject("body").get("limit").getAsString());
+        assertTrue(second.has("durationMs"));
+    }
+
+    @Test
+    public void reportsPerItemFailures() throws Exception {
+        JsonArray data = run(Arrays.asList(item(1, null), item(2, null), item(3, null)), (funcNo, session) -> {
+            if (funcNo == 1) {
+                sleep(3000);
+            } else if (funcNo == 2) {
+                throw new IllegalStateException("boom");
+            }
+            return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.NOT_FOUND, "application/json", "{}");
+        });
+        assertEquals(408, data.get(0).getAsJsonObject().get("status").getAsInt());
+        assertEquals(500, data.get(1).getAsJsonObject().get("status").getAsInt());
+        assertTrue(data.get(1).getAsJsonObject().get("error").getAsString().contains("boom"));
+        assertEquals(404, data.get(2).getAsJsonObject().get("status").getAsInt());
+    }
+
+    @Test
+    public void oversizedItemIsRejected() throws Exception {
+        JsonArray data = run(Collections.singletonList(item(1, null)), (funcNo, session) ->
+            NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK, "application/json",
+                "\"" + new String(new char[5000]).replace('\0', 'x') + "\""));
+        assertEquals(413, data.get(0).getAsJsonObject().get("status").getAsInt());
+    }
+
+    @Test
+    public void itemsShareOneByteBudget() throws Exception {
+        JsonArray data = run(Arrays.asList(item(1, null), item(2, null), item(3, null)), (funcNo, session) ->
+            NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK, "application/json",
+                "\"" + new String(new char[900]).replace('\0', 'x') + "\""));
+        int ok = 0;
+        int tooLarge = 0;
+        for (int i = 0; i < data.size(); i++) {
+            int status = data.get(i).getAsJsonObject().get("status").getAsInt();
+            ok += status == 200 ? 1 : 0;
+            tooLarge += status == 413 ? 1 : 0;
+        }
+        assertEquals(2, ok);
+        assertEquals(1, tooLarge);
+    }
+
+    private JsonArray run(List<BatchRunner.Item> items, BatchRunner.Dispatcher dispatcher) throws Exception {
+        byte[] body = runner.run(server, new Parent(), items, dispatcher);
+        return JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject().getAsJsonArray("data");
+    }
+
+    private static BatchRunner.Item item(int funcNo, Map<String, String> params) {
+        return new BatchRunner.Item(funcNo, params);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Parent implements NanoHTTPD.IHTTPSession {
+        private final Map<String, String> headers = new HashMap<>();
+
+        Parent() {
+            headers.put("if-none-match", "W/\"x\"");
+        }
+
+        @Override public void execute() { }
+        @Override public NanoHTTPD.CookieHandler getCookies() { return null; }
+        @Override public Map<String, String> getHeaders() { return headers; }
+        @Override public InputStream getInputStream() { return null; }
+        @Override public NanoHTTPD.Method getMethod() { return NanoHTTPD.Method.POST; }
+        @SuppressWarnings("deprecation")
+        @Override public Map<String, String> getParms() { return null; }
+        @Override public Map<String, List<String>> getParameters() { return null; }
+        @Override public String getQueryParameterString() { return null; }
+        @Override public String getUri() { return "/api/v1/batch"; }
+        @Override public void parseBody(Map<String, String> files) { }
+        @Override public String getRemoteIpAddress() { return "127.0.0.1"; }
+        @Override public String getRemoteHostName() { return "localhost"; }
+    }
+}
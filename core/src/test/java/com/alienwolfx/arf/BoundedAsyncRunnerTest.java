@@ -0,0 +1,273 @@
+package com.alienwolfx.arf;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the worker pool against a plain NanoHTTPD server on the host JVM.
+ */
+public class BoundedAsyncRunnerTest {
+
+    private TestServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void threadCountStaysFlatUnderConcurrentClients() throws Exception {
+        int workers = 4;
+        BoundedAsyncRunner runner = new BoundedAsyncRunner(workers, 16,
+            BoundedAsyncRunner.OverflowPolicy.QUEUE, 1);
+        server = new TestServer(runner, 5);
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+
+        AtomicBoolean sampling = new AtomicBoolean(true);
+        AtomicInteger peakWorkers = new AtomicInteger();
+        AtomicInteger peakDefaultThreads = new AtomicInteger();
+        Thread sampler = new Thread(() -> {
+            while (sampling.get()) {
+                int pool = 0;
+                int spawned = 0;
+                for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                    if (thread.getName().startsWith("arf-http-")) {
+                        pool++;
+                    } else if (thread.getName().startsWith("NanoHttpd Request Processor")) {
+                        spawned++;
+                    }
+                }
+                peakWorkers.set(Math.max(peakWorkers.get(), pool));
+                peakDefaultThreads.set(Math.max(peakDefaultThreads.get(), spawned));
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+
+        int[] statuses = runClients(200);
+        sampling.set(false);
+        sampler.join();
+
+        for (int status : statuses) {
+            assertEquals(200, status);
+        }
+        assertEquals(workers, peakWorkers.get());
+        assertEquals(0, peakDefaultThreads.get());
+        assertEquals(200, runner.getAcceptedCount());
+        assertEquals(0, runner.getRejectedCount());
+    }
+
+    @Test
+    public void rejectsWithRetryAfterWhenQueueIsFull() throws Exception {
+        BoundedAsyncRunner runner = new BoundedAsyncRunner(1, 1,
+            BoundedAsyncRunner.OverflowPolicy.REJECT, 3);
+        server = new TestServer(runner, 300);
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+
+        int[] statuses = runClients(10);
+
+        int ok = 0;
+        int busy = 0;
+        for (int status : statuses) {
+            if (status == 200) {
+                ok++;
+            } else if (status == 503) {
+                busy++;
+            }
+        }
+        assertTrue(ok >= 1);
+        assertTrue(busy >= 1);
+        assertEquals(10, ok + busy);
+        assertEquals(busy, runner.getRejectedCount());
+        assertEquals("3", server.lastRetryAfter);
+    }
+
+    @Test
+    public void dropOldestAnswersWaitingConnection() throws Exception {
+        BoundedAsyncRunner runner = new BoundedAsyncRunner(1, 2,
+            BoundedAsyncRunner.OverflowPolicy.DROP_OLDEST, 1);
+        server = new TestServer(runner, 300);
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+
+        int[] statuses = runClients(8);
+
+        int busy = 0;
+        for (int status : statuses) {
+            if (status == 503) {
+                busy++;
+            }
+        }
+        assertTrue(busy >= 1);
+        assertEquals(busy, runner.getDroppedCount());
+        assertEquals(0, runner.getRejectedCount());
+    }
+
+    @Test
+    public void idleKeepAliveConnectionsDoNotStarveNewRequests() throws Exception {
+        int workers = 2;
+        BoundedAsyncRunner runner = new BoundedAsyncRunner(workers, 16,
+            BoundedAsyncRunner.OverflowPolicy.REJECT, 1);
+        server = new TestServer(runner, 0);
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+
+        // Like browser tabs: one request each, then the connection stays open and quiet
+        List<Socket> idle = new ArrayList<>();
+        try {
+            for (int i = 0; i < workers * 2; i++) {
+                Socket socket = new Socket("127.0.0.1", server.getListeningPort());
+                socket.setSoTimeout(10000);
+                socket.getOutputStream().write(("GET / HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+                idle.add(socket);
+            }
+            for (Socket socket : idle) {
+                String status = readResponse(socket.getInputStream());
+                assertTrue(status, status.startsWith("HTTP/1.1 200 "));
+            }
+
+            long start = System.nanoTime();
+            assertEquals(200, get("/"));
+            long elapsedMs = (System.nanoTime() - start) / 1000000L;
+            assertTrue(elapsedMs + " ms", elapsedMs < BoundedAsyncRunner.RejectableClientHandler.KEEP_ALIVE_IDLE_MS);
+            assertEquals(0, runner.getRejectedCount());
+        } finally {
+            for (Socket socket : idle) {
+                socket.close();
+            }
+        }
+    }
+
+    private int[] runClients(int count) throws InterruptedException {
+        int[] statuses = new int[count];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            Thread client = new Thread(() -> {
+                try {
+                    start.await();
+                    statuses[index] = get("/");
+                } catch (Exception e) {
+                    statuses[index] = -1;
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+        start.countDown();
+        for (Thread client : clients) {
+            client.join();
+        }
+        return statuses;
+    }
+
+    private int get(String path) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.getListeningPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        // One connection per request, so the accept queue sees every client
+        connection.setRequestProperty("Connection", "close");
+        connection.setConnectTimeout(10000);
+        connection.setReadTimeout(10000);
+        try {
+            int status = connection.getResponseCode();
+            if (status == 503) {
+                server.lastRetryAfter = connection.getHeaderField("Retry-After");
+            }
+            InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (body != null) {
+                while (body.read() != -1) {
+                    // drain
+                }
+                body.close();
+            }
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /** Reads one response with a Content-Length body and returns its status line. */
+    private static String readResponse(InputStream in) throws IOException {
+        String status = readLine(in);
+        int length = 0;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (line.toLowerCase(Locale.US).startsWith("content-length:")) {
+                length = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            if (in.read() == -1) {
+                throw new IOException("Body cut short");
+            }
+        }
+        return status;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) {
+                throw new IOException("Connection closed");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private static class TestServer extends NanoHTTPD {
+
+        private final BoundedAsyncRunner runner;
+        private final long handlerDelayMs;
+        private volatile String lastRetryAfter;
+
+        TestServer(BoundedAsyncRunner runner, long handlerDelayMs) {
+            super("127.0.0.1", 0);
+            this.runner = runner;
+            this.handlerDelayMs = handlerDelayMs;
+            setAsyncRunner(runner);
+        }
+
+        @Override
+        protected ClientHandler createClientHandler(Socket finalAccept, InputStream inputStream) {
+            return new BoundedAsyncRunner.RejectableClientHandler(this, inputStream, finalAccept, runner,
+                (in, out, address) -> new HTTPSession(getTempFileManagerFactory().create(), in, out, address));
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            try {
+                Thread.sleep(handlerDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return newFixedLengthResponse("ok");
+        }
+    }
+}
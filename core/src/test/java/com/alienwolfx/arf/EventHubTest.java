@@ -0,0 +1,58 @@
+package com.alienwolfx.arf;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class EventHubTest {
+
+    @Test
+    public void newSubscriberReplaysLatestFrameOfItsTopics() throws Exception {
+        EventHub hub = new EventHub(2, 50);
+        hub.publish("network", bytes("{\"n\":1}"));
+        hub.publish("network", bytes("{\"n\":2}"));
+        hub.publish("sms", bytes("{}"));
+
+        EventHub.Subscription subscription = hub.subscribe(Collections.singleton("network"));
+        assertEquals("retry: 5000\n\n", next(subscription));
+        assertEquals("id: 2\nevent: network\ndata: {\"n\":2}\n\n", next(subscription));
+        // Nothing queued, so the next read is a heartbeat
+        assertEquals(":\n\n", next(subscription));
+        subscription.close();
+        assertEquals(-1, subscription.read(new byte[16], 0, 16));
+    }
+
+    @Test
+    public void subscriberLimitIsEnforcedAndReleasedOnClose() {
+        EventHub hub = new EventHub(1, 50);
+        EventHub.Subscription first = hub.subscribe(Collections.singleton("sms"));
+        assertNotNull(first);
+        assertNull(hub.subscribe(Collections.singleton("sms")));
+        first.close();
+        assertNotNull(hub.subscribe(Collections.singleton("sms")));
+    }
+
+    @Test
+    public void slowSubscriberDropsOldestFrames() throws Exception {
+        EventHub hub = new EventHub(1, 50);
+        EventHub.Subscription subscription = hub.subscribe(Collections.singleton("sms"));
+        for (int i = 0; i < 100; i++) {
+            hub.publish("sms", bytes("{}"));
+        }
+        String first = next(subscription);
+        assertTrue(first, first.startsWith("id: 69\n"));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String next(EventHub.Subscription subscription) throws Exception {
+        byte[] buffer = new byte[256];
+        int n = subscription.read(buffer, 0, buffer.length);
+        return new String(buffer, 0, n, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,83 @@
+package com.alienwolfx.arf;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class GzipEncoderTest {
+
+    private final GzipEncoder encoder = new GzipEncoder(2);
+
+    @Test
+    public void gzipRoundTripsAndCountsBytes() throws IOException {
+        byte[] data = repeat("{\"signalStrength\":-95},", 200);
+
+        byte[] gzipped = encoder.gzip(data, 0, data.length, GzipEncoder.DYNAMIC_LEVEL);
+
+        assertArrayEquals(data, gunzip(gzipped));
+        assertTrue(gzipped.length < data.length / 4);
+        assertEquals(1, encoder.getResponses());
+        assertEquals(data.length, encoder.getBytesIn());
+        assertEquals(gzipped.length, encoder.getBytesOut());
+    }
+
+    @Test
+    public void spliceWrapsOneDeflatedSegmentInFreshLiterals() throws IOException {
+        byte[] data = repeat("{\"type\":\"lte\",\"level\":3},", 100);
+        byte[] segment = encoder.deflateSegment(data, GzipEncoder.CACHED_LEVEL);
+
+        for (String head : new String[] {"{\"sampledAt\":1,\"data\":", "{\"sampledAt\":22,\"data\":"}) {
+            byte[] tail = "}".getBytes(StandardCharsets.UTF_8);
+            byte[] spliced = encoder.splice(head.getBytes(StandardCharsets.UTF_8), segment, data, tail);
+            assertEquals(head + new String(data, StandardCharsets.UTF_8) + "}",
+                new String(gunzip(spliced), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void spliceHandlesEmptySegments() throws IOException {
+        byte[] empty = new byte[0];
+        byte[] segment = encoder.deflateSegment(empty, GzipEncoder.CACHED_LEVEL);
+        byte[] spliced = encoder.splice("[".getBytes(StandardCharsets.UTF_8), segment, empty,
+            "]".getBytes(StandardCharsets.UTF_8));
+        assertEquals("[]", new String(gunzip(spliced), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void parsesAcceptEncoding() {
+        assertTrue(GzipEncoder.accepts("gzip, deflate, br"));
+        assertTrue(GzipEncoder.accepts("deflate, GZIP;q=0.5"));
+        assertTrue(GzipEncoder.accepts("*"));
+        assertFalse(GzipEncoder.accepts(null));
+        assertFalse(GzipEncoder.accepts("identity"));
+        assertFalse(GzipEncoder.accepts("gzip;q=0"));
+        assertFalse(GzipEncoder.accepts("br, gzip; q=0.0"));
+    }
+
+    private static byte[] repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,63 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class JsonCodecTest {
+
+    private final JsonCodec codec = new JsonCodec();
+
+    @Test
+    public void writablesMatchReflectiveOutput() throws IOException {
+        // Quotes, markup and characters outside the BMP exercise escaping and the UTF-8 encoder
+        SmsMessage message = new SmsMessage(7, null, "café <b>\"hi\"</b> 😀\n", 1234, 1, true);
+        SmsRing.Delta delta = new SmsRing.Delta(3, false, Arrays.asList(message), Collections.singletonList(5L));
+        ProcStatReader.Rates rates = new ProcStatReader.Rates(null,
+            Arrays.asList(new ProcStatReader.InterfaceRate("rmnet0", 10, 20, null, 4L)), 12.5, 1024L, null);
+
+        Gson reflective = new Gson();
+        for (Object value : new Object[] {message, delta, rates}) {
+            assertEquals(reflective.toJson(value), new String(codec.encode(value), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void envelopeOmitsNullData() throws IOException {
+        assertEquals("{\"success\":false,\"message\":\"Not found\"}", read(codec.envelope(false, "Not found", null)));
+        assertEquals("{\"success\":true,\"message\":\"Success\",\"data\":[1,2]}",
+            read(codec.envelope(true, "Success", Arrays.asList(1, 2))));
+    }
+
+    @Test
+    public void streamFailsOnceBufferIsReused() throws IOException {
+        InputStream first = codec.envelope(true, "first", null).newInputStream();
+        codec.envelope(true, "second", null);
+        try {
+            first.read();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private static String read(JsonBuffer buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = buffer.newInputStream()) {
+            byte[] chunk = new byte[7];
+            int n;
+            while ((n = in.read(chunk, 0, chunk.length)) != -1) {
+                out.write(chunk, 0, n);
+            }
+        }
+        return out.toString("UTF-8");
+    }
+}
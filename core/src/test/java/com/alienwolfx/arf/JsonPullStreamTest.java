@@ -0,0 +1,67 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class JsonPullStreamTest {
+
+    @Test
+    public void producesCompleteDocumentPieceByPiece() throws IOException {
+        CountingStream stream = new CountingStream(20000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        while ((n = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+
+        JsonObject document = JsonParser.parseString(out.toString(StandardCharsets.UTF_8.name())).getAsJsonObject();
+        JsonArray data = document.getAsJsonArray("data");
+        assertEquals(20000, data.size());
+        assertEquals(19999, data.get(19999).getAsJsonObject().get("id").getAsInt());
+        assertEquals("méssage 5", data.get(5).getAsJsonObject().get("body").getAsString());
+        // Pieces are produced on demand, one per refill
+        assertEquals(200, stream.pieces);
+    }
+
+    private static class CountingStream extends JsonPullStream {
+        private final int rows;
+        private int next;
+        private int pieces;
+
+        CountingStream(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        protected boolean writeNext(JsonWriter writer) throws IOException {
+            pieces++;
+            if (next == 0) {
+                writer.beginObject();
+                writer.name("data").beginArray();
+            }
+            for (int i = 0; i < 100 && next < rows; i++, next++) {
+                writer.beginObject();
+                writer.name("id").value(next);
+                writer.name("body").value("méssage " + next);
+                writer.endObject();
+            }
+            if (next == rows) {
+                writer.endArray();
+                writer.endObject();
+                return false;
+            }
+            return true;
+        }
+    }
+}
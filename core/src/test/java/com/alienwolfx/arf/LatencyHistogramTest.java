@@ -0,0 +1,37 @@
+package com.alienwolfx.arf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void quantilesFallInsideTheirBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(800);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(40000);
+        }
+        histogram.record(2000000);
+
+        long[] counts = histogram.snapshot();
+        assertEquals(100, histogram.getCount());
+        assertEquals(2000000, histogram.getMaxMicros());
+        long p50 = histogram.quantile(counts, 0.5);
+        assertTrue(p50 > 0 && p50 <= 1000);
+        long p99 = histogram.quantile(counts, 0.99);
+        assertTrue(p99 > 25000 && p99 <= 50000);
+        assertEquals(2000000, histogram.quantile(counts, 1.0));
+    }
+
+    @Test
+    public void overflowBucketReportsMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(90000000);
+        assertEquals(90000000, histogram.quantile(histogram.snapshot(), 0.5));
+        assertEquals(0, new LatencyHistogram().quantile(new LatencyHistogram().snapshot(), 0.5));
+    }
+}
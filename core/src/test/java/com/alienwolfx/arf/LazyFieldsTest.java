@@ -0,0 +1,71 @@
+package com.alienwolfx.arf;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LazyFieldsTest {
+
+    private final JsonCodec codec = new JsonCodec();
+
+    @Test
+    public void onlySelectedFieldsAreComputed() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        LazyFields fields = new LazyFields()
+            .add("expensive", () -> {
+                calls.incrementAndGet();
+                return 1;
+            })
+            .add("signalStrength", () -> -95)
+            .add("cells", () -> Collections.singletonList(new CellSignal("lte", 3, -95, -95, null, 12)));
+
+        assertEquals("{\"signalStrength\":-95,\"cells\":[{\"type\":\"lte\",\"level\":3,\"dbm\":-95,\"rsrp\":-95,\"sinr\":12}]}",
+            encode(fields.select(Arrays.asList("cells", "signalStrength", "unknown"))));
+        assertEquals(0, calls.get());
+
+        assertEquals("{\"expensive\":1,\"signalStrength\":-95}",
+            encode(fields.select(Arrays.asList("expensive", "signalStrength"))));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void onceSharesOneSourceAcrossFields() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        Callable<long[]> memory = LazyFields.once(() -> {
+            calls.incrementAndGet();
+            return new long[] {4096, 1024};
+        });
+        LazyFields fields = new LazyFields()
+            .add("totalMemory", () -> memory.call()[0])
+            .add("availableMemory", () -> memory.call()[1])
+            .add("interfaces", () -> Collections.singletonMap("wlan0", Arrays.asList("10.0.0.5", "fe80::1")));
+
+        assertEquals("{\"totalMemory\":4096,\"availableMemory\":1024,"
+            + "\"interfaces\":{\"wlan0\":[\"10.0.0.5\",\"fe80::1\"]}}", encode(fields));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void failingSourceFailsTheEncode() {
+        LazyFields fields = new LazyFields().add("broken", () -> {
+            throw new Exception("binder died");
+        });
+        try {
+            codec.encode(fields);
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("broken"));
+        }
+    }
+
+    private String encode(LazyFields fields) throws IOException {
+        return new String(codec.encode(fields), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,141 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class MetricHistoryTest {
+
+    private static final String[] FIELDS = {"rx", "signal"};
+    private static final long MINUTE = 60 * 1000;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("history", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @Test
+    public void rawPointsSurviveReopen() throws IOException {
+        MetricHistory history = open(10);
+        for (int i = 0; i < 5; i++) {
+            history.record(1000 + i * 1000, new float[] {i * 1.5f, i == 2 ? Float.NaN : -80});
+        }
+        // Staged points are visible before they are flushed
+        assertEquals(5, points(history, MetricHistory.RESOLUTION_RAW, 0, Long.MAX_VALUE).size());
+        history.close();
+
+        history = open(10);
+        JsonArray points = points(history, MetricHistory.RESOLUTION_RAW, 2000, 4000);
+        assertEquals(3, points.size());
+        assertEquals(2000, points.get(0).getAsJsonArray().get(0).getAsLong());
+        assertEquals(1.5, points.get(0).getAsJsonArray().get(1).getAsDouble(), 0);
+        assertTrue(points.get(1).getAsJsonArray().get(2).isJsonNull());
+    }
+
+    @Test
+    public void ringKeepsNewestRecords() throws IOException {
+        MetricHistory history = open(100);
+        for (int i = 0; i < 250; i++) {
+            history.record(i * 1000, new float[] {i, 0});
+        }
+        JsonArray points = points(history, MetricHistory.RESOLUTION_RAW, 0, Long.MAX_VALUE);
+        assertEquals(100, points.size());
+        assertEquals(150000, points.get(0).getAsJsonArray().get(0).getAsLong());
+        assertEquals(MetricHistory.RESOLUTION_ROLLUP, history.resolutionFor(0));
+        assertEquals(MetricHistory.RESOLUTION_RAW, history.resolutionFor(200000));
+    }
+
+    @Test
+    public void rollupAveragesEachMinute() throws IOException {
+        MetricHistory history = open(1000);
+        for (long t = 0; t < 3 * MINUTE; t += 2000) {
+            history.record(t, new float[] {t < MINUTE ? 10 : 20, Float.NaN});
+        }
+        JsonArray points = points(history, MetricHistory.RESOLUTION_ROLLUP, 0, Long.MAX_VALUE);
+        // The third minute is still open
+        assertEquals(2, points.size());
+        assertEquals(MINUTE, points.get(1).getAsJsonArray().get(0).getAsLong());
+        assertEquals(20, points.get(1).getAsJsonArray().get(1).getAsDouble(), 0);
+        assertTrue(points.get(1).getAsJsonArray().get(2).isJsonNull());
+    }
+
+    @Test
+    public void closeKeepsTheOpenRollupMinute() throws IOException {
+        MetricHistory history = open(1000);
+        history.record(0, new float[] {10, -80});
+        history.record(30000, new float[] {20, -80});
+        history.close();
+
+        history = open(1000);
+        JsonArray points = points(history, MetricHistory.RESOLUTION_ROLLUP, 0, Long.MAX_VALUE);
+        assertEquals(1, points.size());
+        assertEquals(15, points.get(0).getAsJsonArray().get(1).getAsDouble(), 0);
+    }
+
+    @Test
+    public void clockStepBackRestartsTheTier() throws IOException {
+        MetricHistory history = open(100);
+        long now = 1790000000000L;
+        for (int i = 0; i < 5; i++) {
+            history.record(now + i * 1000, new float[] {i, 0});
+        }
+        history.close();
+
+        // Booted without a real-time clock
+        history = open(100);
+        history.record(5000, new float[] {7, 0});
+        history.record(6000, new float[] {8, 0});
+        JsonArray points = points(history, MetricHistory.RESOLUTION_RAW, 0, 10000);
+        assertEquals(2, points.size());
+        assertEquals(5000, points.get(0).getAsJsonArray().get(0).getAsLong());
+        assertEquals(2, points(history, MetricHistory.RESOLUTION_RAW, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void weekQueryIsFast() throws IOException {
+        MetricHistory history = new MetricHistory(dir, FIELDS, 1800, 7 * 24 * 60, MINUTE);
+        history.open();
+        for (long t = 0; t < 7 * 24 * 60 * MINUTE + MINUTE; t += 30000) {
+            history.record(t, new float[] {t % 1000, -90});
+        }
+        long start = System.nanoTime();
+        JsonArray points = points(history, MetricHistory.RESOLUTION_ROLLUP, 0, Long.MAX_VALUE);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertEquals(7 * 24 * 60, points.size());
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < 1000);
+    }
+
+    private MetricHistory open(int rawCapacity) throws IOException {
+        MetricHistory history = new MetricHistory(dir, FIELDS, rawCapacity, 1000, MINUTE);
+        history.open();
+        return history;
+    }
+
+    private static JsonArray points(MetricHistory history, String resolution, long from, long to) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = history.query(resolution, from, to)) {
+            byte[] buffer = new byte[16 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        JsonObject document = JsonParser.parseString(out.toString(StandardCharsets.UTF_8.name())).getAsJsonObject();
+        return document.getAsJsonObject("data").getAsJsonArray("points");
+    }
+}
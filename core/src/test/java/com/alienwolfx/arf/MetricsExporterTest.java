@@ -0,0 +1,75 @@
+package com.alienwolfx.arf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.*;
+
+public class MetricsExporterTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("proc-self", "");
+        assertTrue(root.delete());
+        assertTrue(root.mkdirs());
+    }
+
+    @Test
+    public void routeIsRecordedWhenBodyCloses() throws Exception {
+        ApiRegistry registry = new ApiRegistry();
+        ApiRoute route = new ApiRoute(Collections.singleton(NanoHTTPD.Method.GET), true, 0, session -> null);
+        registry.register(1000, route);
+        RouteMetrics metrics = route.getMetrics();
+
+        long start = metrics.begin();
+        NanoHTTPD.Response response = metrics.track(NanoHTTPD.newFixedLengthResponse(
+            NanoHTTPD.Response.Status.NOT_FOUND, "application/json", "{\"success\":false}"), start);
+        assertEquals(1, metrics.getInFlight());
+        try (InputStream data = response.getData()) {
+            byte[] buffer = new byte[64];
+            while (data.read(buffer) >= 0) {
+                // drain
+            }
+        }
+        response.close();
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(17, metrics.getResponseBytes());
+        assertEquals(1, metrics.getStatusCount(404));
+
+        String text = new MetricsExporter(root).begin().writeRoutes(registry.getRoutes()).getText();
+        assertTrue(text, text.contains("# TYPE arf_http_request_duration_seconds histogram\n"));
+        assertTrue(text, text.contains("arf_http_requests_total{route=\"1000\"} 1\n"));
+        assertTrue(text, text.contains("arf_http_errors_total{route=\"1000\",status=\"404\"} 1\n"));
+        assertTrue(text, text.contains("arf_http_request_duration_seconds_bucket{route=\"1000\",le=\"+Inf\"} 1\n"));
+        assertTrue(text, text.contains("arf_http_response_bytes_total{route=\"1000\"} 17\n"));
+    }
+
+    @Test
+    public void processGaugesComeFromProcSelf() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(new File(root, "status"))) {
+            out.write("Name:\tarf\nState:\tS\nThreads:\t23\nVmRSS:\t1 kB\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        File fd = new File(root, "fd");
+        assertTrue(fd.mkdir());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(new File(fd, Integer.toString(i)).createNewFile());
+        }
+
+        String text = new MetricsExporter(root).begin().writeProcess(7).getText();
+        assertTrue(text, text.contains("arf_process_threads 23\n"));
+        assertTrue(text, text.contains("arf_process_open_fds 3\n"));
+        assertTrue(text, text.contains("arf_process_gc_total 7\n"));
+        assertFalse(new MetricsExporter(root).begin().writeProcess(-1).getText().contains("gc_total"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.alienwolfx.arf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ProcStatReaderTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = File.createTempFile("proc", "");
+        assertTrue(root.delete());
+        assertTrue(new File(root, "proc/net").mkdirs());
+        assertTrue(new File(root, "sys").mkdirs());
+    }
+
+    @Test
+    public void computesRatesFromSuccessiveReadings() throws IOException {
+        ProcStatReader reader = new ProcStatReader(new File(root, "proc"), new File(root, "sys"));
+        install("a");
+        ProcStatReader.Rates first = reader.sample(1000);
+        assertNull(first.getIntervalMs());
+        assertNull(first.getCpuUsagePercent());
+        assertEquals(3, first.getInterfaces().size());
+        assertEquals(Long.valueOf(300000), first.getMemAvailableKb());
+
+        install("b");
+        ProcStatReader.Rates second = reader.sample(3000);
+        assertEquals(Long.valueOf(2000), second.getIntervalMs());
+
+        ProcStatReader.InterfaceRate rmnet = second.getInterfaces().get(1);
+        assertEquals("rmnet_data0", rmnet.getName());
+        assertEquals(7000000, rmnet.getRxBytes());
+        assertEquals(Long.valueOf(1000000), rmnet.getRxBytesPerSecond());
+        assertEquals(Long.valueOf(50000), rmnet.getTxBytesPerSecond());
+
+        // wlan0's counters were reset, so no rate for this interval
+        ProcStatReader.InterfaceRate wlan = second.getInterfaces().get(2);
+        assertEquals("wlan0", wlan.getName());
+        assertNull(wlan.getRxBytesPerSecond());
+
+        assertEquals(40.0, second.getCpuUsagePercent(), 0.001);
+        // No MemAvailable line: free + buffers + cached
+        assertEquals(Long.valueOf(230000), second.getMemAvailableKb());
+        assertEquals(Long.valueOf(949500), second.getMemTotalKb());
+    }
+
+    @Test
+    public void peekKeepsTheSampleBaseline() throws IOException {
+        ProcStatReader reader = new ProcStatReader(new File(root, "proc"), new File(root, "sys"));
+        install("a");
+        reader.sample(1000);
+
+        install("b");
+        assertEquals(Long.valueOf(1000), reader.peek(2000).getIntervalMs());
+        ProcStatReader.Rates sampled = reader.sample(3000);
+        assertEquals(Long.valueOf(2000), sampled.getIntervalMs());
+        assertEquals(Long.valueOf(1000000), sampled.getInterfaces().get(1).getRxBytesPerSecond());
+    }
+
+    @Test
+    public void fallsBackToSysfsWithoutProcNetDev() throws IOException {
+        File statistics = new File(root, "sys/eth0/statistics");
+        assertTrue(statistics.mkdirs());
+        write(new File(statistics, "rx_bytes"), "1000\n");
+        write(new File(statistics, "tx_bytes"), "500\n");
+        ProcStatReader reader = new ProcStatReader(new File(root, "proc"), new File(root, "sys"));
+        reader.sample(1000);
+
+        write(new File(statistics, "rx_bytes"), "3000\n");
+        write(new File(statistics, "tx_bytes"), "1500\n");
+        ProcStatReader.Rates rates = reader.sample(2000);
+        assertEquals(1, rates.getInterfaces().size());
+        assertEquals(Long.valueOf(2000), rates.getInterfaces().get(0).getRxBytesPerSecond());
+        assertEquals(Long.valueOf(1000), rates.getInterfaces().get(0).getTxBytesPerSecond());
+        assertNull(rates.getCpuUsagePercent());
+    }
+
+    @Test
+    public void steadyStateReadingDoesNotAllocate() throws IOException {
+        install("a");
+        ProcStatReader reader = new ProcStatReader(new File(root, "proc"), new File(root, "sys"));
+        reader.readCounters(1);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1000; i++) {
+            reader.readCounters(i + 2);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 16 * 1024);
+    }
+
+    private void install(String fixture) throws IOException {
+        for (String name : new String[] {"net/dev", "stat", "meminfo"}) {
+            try (InputStream in = getClass().getResourceAsStream("/proc/" + fixture + "/" + name);
+                 OutputStream out = new FileOutputStream(new File(root, "proc/" + name))) {
+                byte[] buffer = new byte[4096];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            }
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.alienwolfx.arf;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShellSessionPoolTest {
+
+    private final ShellSessionPool pool = new ShellSessionPool(2, 5000, "sh");
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void separatesStreamsAndReportsExitStatus() throws Exception {
+        ShellProcess.Capture capture = exec("printf partial; echo oops >&2; exit 4", 5000, 0);
+        assertEquals("partial", capture.getStdout());
+        assertEquals("oops\n", capture.getStderr());
+        assertEquals(4, capture.await(0).getExitCode());
+
+        // exit only left the subshell, so the same session keeps working
+        capture = exec("echo 'it''s' \"$((1 + 2))\"", 5000, 0);
+        assertEquals("its 3\n", capture.getStdout());
+        assertEquals(0, capture.await(0).getExitCode());
+    }
+
+    @Test
+    public void syntaxErrorFailsCommandNotSession() throws Exception {
+        ShellProcess.Capture capture = exec("echo \"unterminated", 5000, 0);
+        assertNotEquals(0, capture.await(0).getExitCode());
+        assertFalse(capture.await(0).isTimedOut());
+        assertEquals("ok\n", exec("echo ok", 5000, 0).getStdout());
+    }
+
+    @Test
+    public void hungCommandIsKilledAndSessionReplaced() throws Exception {
+        long start = System.currentTimeMillis();
+        ShellProcess.Capture capture = exec("echo before; sleep 30", 300, 0);
+        assertTrue(capture.await(0).isTimedOut());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals("after\n", exec("echo after", 5000, 0).getStdout());
+    }
+
+    @Test
+    public void outputIsCappedAtMaxBytes() throws Exception {
+        ShellProcess.Capture capture = exec("head -c 100000 /dev/zero | tr '\\0' x", 5000, 1000);
+        assertTrue(capture.await(0).isTruncated());
+        assertEquals(1000, capture.getStdout().length());
+        assertEquals("next\n", exec("echo next", 5000, 0).getStdout());
+    }
+
+    @Test
+    public void failsFastWhenEverySessionIsBusy() throws Exception {
+        ShellSessionPool single = new ShellSessionPool(1, 100, "sh");
+        Thread holder = new Thread(() -> {
+            try {
+                single.exec("sleep 2", 5000, 0, new ShellProcess.Capture());
+            } catch (Exception ignored) {
+            }
+        });
+        holder.start();
+        try {
+            Thread.sleep(200);
+            long start = System.currentTimeMillis();
+            try {
+                single.exec("echo late", 5000, 0, new ShellProcess.Capture());
+                fail("Expected Busy");
+            } catch (ShellSessionPool.Busy e) {
+                assertTrue(System.currentTimeMillis() - start < 1000);
+            }
+        } finally {
+            holder.join();
+            single.close();
+        }
+    }
+
+    private ShellProcess.Capture exec(String command, long timeoutMs, long maxBytes) throws Exception {
+        ShellProcess.Capture capture = new ShellProcess.Capture();
+        pool.exec(command, timeoutMs, maxBytes, capture);
+        return capture;
+    }
+}
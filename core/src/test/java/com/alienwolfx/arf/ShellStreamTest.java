@@ -0,0 +1,78 @@
+package com.alienwolfx.arf;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ShellStreamTest {
+
+    @Test
+    public void framesBothStreamsAndEndsWithExitTrailer() throws IOException {
+        List<JsonObject> frames = run("echo out; echo err >&2; exit 3", 5000, 1024);
+        StringBuilder stdout = new StringBuilder();
+        StringBuilder stderr = new StringBuilder();
+        for (JsonObject frame : frames.subList(0, frames.size() - 1)) {
+            String type = frame.get("type").getAsString();
+            (type.equals("stdout") ? stdout : stderr).append(frame.get("data").getAsString());
+        }
+        assertEquals("out\n", stdout.toString());
+        assertEquals("err\n", stderr.toString());
+
+        JsonObject exit = frames.get(frames.size() - 1);
+        assertEquals("exit", exit.get("type").getAsString());
+        assertEquals(3, exit.get("exitCode").getAsInt());
+        assertFalse(exit.get("timedOut").getAsBoolean());
+    }
+
+    @Test
+    public void chattyStderrDoesNotStallStdout() throws IOException {
+        // Far more than a pipe buffer on stderr before anything reaches stdout
+        List<JsonObject> frames = run("head -c 1000000 /dev/zero | tr '\\0' x >&2; echo done", 10000, 0);
+        JsonObject exit = frames.get(frames.size() - 1);
+        assertEquals(0, exit.get("exitCode").getAsInt());
+        assertEquals(1000005, exit.get("bytes").getAsLong());
+    }
+
+    @Test
+    public void maxBytesTruncatesAndKills() throws IOException {
+        long start = System.currentTimeMillis();
+        List<JsonObject> frames = run("yes", 10000, 100000);
+        JsonObject exit = frames.get(frames.size() - 1);
+        assertTrue(exit.get("truncated").getAsBoolean());
+        assertEquals(100000, exit.get("bytes").getAsLong());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void timeoutKillsProcessTree() throws IOException {
+        long start = System.currentTimeMillis();
+        // The background sleep inherits the pipes; the shell alone dying would not end the stream
+        List<JsonObject> frames = run("sleep 30 & echo started; wait", 500, 0);
+        JsonObject exit = frames.get(frames.size() - 1);
+        assertTrue(exit.get("timedOut").getAsBoolean());
+        assertEquals("started\n", frames.get(0).get("data").getAsString());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    private static List<JsonObject> run(String command, long timeoutMs, long maxBytes) throws IOException {
+        List<JsonObject> frames = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ShellStream(command, timeoutMs, maxBytes), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                frames.add(JsonParser.parseString(line).getAsJsonObject());
+            }
+        }
+        return frames;
+    }
+}
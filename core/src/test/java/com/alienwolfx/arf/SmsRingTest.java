@@ -0,0 +1,109 @@
+package com.alienwolfx.arf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SmsRingTest {
+
+    @Test
+    public void deltaContainsOnlyChangesSinceVersion() {
+        SmsRing ring = new SmsRing(3, 1000);
+        assertTrue(ring.update(Arrays.asList(sms(2, 200), sms(1, 100)), true));
+        long primed = ring.getVersion();
+
+        assertFalse(ring.update(Arrays.asList(sms(2, 200), sms(1, 100)), true));
+        assertEquals(primed, ring.getVersion());
+        assertTrue(messages(ring.since(primed)).isEmpty());
+
+        assertTrue(ring.update(Arrays.asList(sms(3, 300), sms(2, 200), sms(1, 100)), true));
+        List<SmsMessage> delta = messages(ring.since(primed));
+        assertEquals(1, delta.size());
+        assertEquals(3, delta.get(0).getId());
+    }
+
+    @Test
+    public void deletionInsideWindowIsReported() {
+        SmsRing ring = new SmsRing(2, 1000);
+        ring.update(Arrays.asList(sms(3, 300), sms(2, 200)), false);
+        long version = ring.getVersion();
+
+        // 2 aged out behind 4; not a deletion
+        ring.update(Arrays.asList(sms(4, 400), sms(3, 300)), false);
+        assertTrue(deleted(ring.since(version)).isEmpty());
+        version = ring.getVersion();
+
+        ring.update(Arrays.asList(sms(4, 400), sms(1, 100)), false);
+        assertEquals(Arrays.asList(3L), deleted(ring.since(version)));
+    }
+
+    @Test
+    public void staleOrUnknownVersionRequestsResync() {
+        SmsRing ring = new SmsRing(2, 1000);
+        ring.update(Arrays.asList(sms(1, 100)), true);
+
+        assertTrue(resync(ring.since(0)));
+        assertTrue(resync(ring.since(ring.getVersion() + 5)));
+        assertFalse(resync(ring.since(ring.getVersion())));
+        assertEquals(1, messages(ring.since(0)).size());
+    }
+
+    @Test
+    public void selectFallsBackWhenWindowIsNotAuthoritative() {
+        SmsRing ring = new SmsRing(3, 1000);
+        assertNull(ring.select(SmsRing.TYPE_ANY, null, null, 2));
+
+        ring.update(Arrays.asList(sms(3, 300), sms(2, 200), sms(1, 100)), false);
+        assertEquals(Arrays.asList(3L, 2L), ids(ring.select(SmsRing.TYPE_ANY, null, null, 2)));
+        assertEquals(Arrays.asList(2L, 1L), ids(ring.select(SmsRing.TYPE_ANY, at(300), null, 2)));
+        // Older messages may exist beyond the window
+        assertNull(ring.select(SmsRing.TYPE_ANY, at(200), null, 2));
+        assertEquals(Arrays.asList(2L, 3L), ids(ring.select(SmsRing.TYPE_ANY, null, at(150), 5)));
+        assertNull(ring.select(SmsRing.TYPE_ANY, null, at(50), 5));
+    }
+
+    @Test
+    public void pagesThroughMessagesSharingATimestamp() {
+        SmsRing ring = new SmsRing(10, 1000);
+        ring.update(Arrays.asList(sms(5, 500), sms(4, 200), sms(3, 200), sms(2, 200), sms(1, 100)), true);
+
+        assertEquals(Arrays.asList(5L, 4L), ids(ring.select(SmsRing.TYPE_ANY, null, null, 2)));
+        assertEquals(Arrays.asList(3L, 2L), ids(ring.select(SmsRing.TYPE_ANY, new SmsPosition(200, 4L), null, 2)));
+        assertEquals(Arrays.asList(1L), ids(ring.select(SmsRing.TYPE_ANY, new SmsPosition(200, 2L), null, 2)));
+        assertEquals(Arrays.asList(4L, 5L), ids(ring.select(SmsRing.TYPE_ANY, null, new SmsPosition(200, 3L), 2)));
+        // Without an id the whole millisecond is skipped, as before
+        assertEquals(Arrays.asList(1L), ids(ring.select(SmsRing.TYPE_ANY, at(200), null, 2)));
+    }
+
+    private static SmsPosition at(long timestamp) {
+        return new SmsPosition(timestamp, null);
+    }
+
+    private static SmsMessage sms(long id, long timestamp) {
+        return new SmsMessage(id, "+100", "body " + id, timestamp, 1, false);
+    }
+
+    private static List<Long> ids(SmsListStream.Rows rows) {
+        List<Long> ids = new ArrayList<>();
+        while (rows.next()) {
+            ids.add(rows.id());
+        }
+        return ids;
+    }
+
+    private static List<SmsMessage> messages(SmsRing.Delta delta) {
+        return delta.getMessages();
+    }
+
+    private static List<Long> deleted(SmsRing.Delta delta) {
+        return delta.getDeleted();
+    }
+
+    private static boolean resync(SmsRing.Delta delta) {
+        return delta.isResync();
+    }
+}
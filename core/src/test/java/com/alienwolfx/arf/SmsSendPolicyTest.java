@@ -0,0 +1,114 @@
+package com.alienwolfx.arf;
+
+import com.alienwolfx.arf.SmsSendPolicy.Report;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class SmsSendPolicyTest {
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    private final SmsSendPolicy policy = new SmsSendPolicy(20, 7 * DAY_MS);
+
+    @Test
+    public void deferredBulkMessageIsRetriedWhenItsSlotComes() {
+        assertEquals(0, policy.reserve(false, 10000));
+        assertEquals(2000, policy.reserve(false, 11000));
+        // Urgent traffic neither waits nor pushes the bulk slot back
+        assertEquals(0, policy.reserve(true, 11500));
+        assertEquals(500, policy.reserve(false, 12500));
+        assertEquals(0, policy.reserve(false, 13000));
+        assertEquals(3000, policy.reserve(false, 13000));
+    }
+
+    @Test
+    public void restartNeverResendsAMessageHandedToTheRadio() {
+        assertEquals(SmsSender.STATUS_UNCONFIRMED, SmsSendPolicy.afterRestart(SmsSender.STATUS_SENDING));
+        assertEquals(SmsSender.STATUS_QUEUED, SmsSendPolicy.afterRestart(SmsSender.STATUS_QUEUED));
+        assertEquals(SmsSender.STATUS_SENT, SmsSendPolicy.afterRestart(SmsSender.STATUS_SENT));
+        assertEquals(SmsSender.STATUS_FAILED, SmsSendPolicy.afterRestart(SmsSender.STATUS_FAILED));
+    }
+
+    @Test
+    public void restartDropsOnlyFinishedMessagesPastRetention() {
+        long now = 30 * DAY_MS;
+        assertTrue(policy.isExpired(SmsSender.STATUS_DELIVERED, now - 8 * DAY_MS, now));
+        assertTrue(policy.isExpired(SmsSender.STATUS_UNCONFIRMED, now - 8 * DAY_MS, now));
+        assertFalse(policy.isExpired(SmsSender.STATUS_DELIVERED, now - 6 * DAY_MS, now));
+        // A backlog still waiting to go is kept however old it is
+        assertFalse(policy.isExpired(SmsSender.STATUS_QUEUED, now - 8 * DAY_MS, now));
+    }
+
+    @Test
+    public void multipartMessageIsSentAndDeliveredOnlyOnceEveryPartIs() {
+        String status = SmsSender.STATUS_SENDING;
+        status = SmsSendPolicy.afterSent(status, true, 1, 2);
+        assertEquals(SmsSender.STATUS_SENDING, status);
+        // A delivery report can overtake the last part's sent report
+        assertEquals(SmsSender.STATUS_SENDING, SmsSendPolicy.afterDelivery(status, Report.DELIVERED, 1, 2));
+        status = SmsSendPolicy.afterSent(status, true, 2, 2);
+        assertEquals(SmsSender.STATUS_SENT, status);
+
+        status = SmsSendPolicy.afterDelivery(status, Report.DELIVERED, 1, 2);
+        assertEquals(SmsSender.STATUS_SENT, status);
+        status = SmsSendPolicy.afterDelivery(status, Report.DELIVERED, 2, 2);
+        assertEquals(SmsSender.STATUS_DELIVERED, status);
+    }
+
+    @Test
+    public void failedPartFailsTheMessageForGood() {
+        String status = SmsSendPolicy.afterSent(SmsSender.STATUS_SENDING, false, 0, 2);
+        assertEquals(SmsSender.STATUS_FAILED, status);
+        assertEquals(SmsSender.STATUS_FAILED, SmsSendPolicy.afterSent(status, true, 1, 2));
+        assertEquals(SmsSender.STATUS_FAILED, SmsSendPolicy.afterDelivery(status, Report.DELIVERED, 1, 1));
+
+        assertEquals(SmsSender.STATUS_FAILED, SmsSendPolicy.afterDelivery(SmsSender.STATUS_SENT, Report.FAILED, 0, 1));
+        // Reports for a message restarted mid-send do not claim it went
+        assertEquals(SmsSender.STATUS_UNCONFIRMED,
+            SmsSendPolicy.afterSent(SmsSender.STATUS_UNCONFIRMED, true, 1, 1));
+    }
+
+    @Test
+    public void temporaryReportKeepsThePartOpenUntilTheFinalOne() {
+        assertEquals(Report.DELIVERED, SmsSendPolicy.classify(0x00, false));
+        assertEquals(Report.DELIVERED, SmsSendPolicy.classify(0x1f, false));
+        // Congestion, SME busy and the like: the service centre is still trying
+        assertEquals(Report.PENDING, SmsSendPolicy.classify(0x20, false));
+        assertEquals(Report.PENDING, SmsSendPolicy.classify(0x3f, false));
+        assertEquals(Report.FAILED, SmsSendPolicy.classify(0x40, false));
+        assertEquals(Report.FAILED, SmsSendPolicy.classify(0x60, false));
+        assertEquals(Report.DELIVERED, SmsSendPolicy.classify(0, true));
+        assertEquals(Report.PENDING, SmsSendPolicy.classify(2 << 24, true));
+        assertEquals(Report.FAILED, SmsSendPolicy.classify(3 << 24, true));
+
+        String status = SmsSendPolicy.afterDelivery(SmsSender.STATUS_SENT, SmsSendPolicy.classify(0x30, false), 0, 1);
+        assertEquals(SmsSender.STATUS_SENT, status);
+        status = SmsSendPolicy.afterDelivery(status, SmsSendPolicy.classify(0x00, false), 1, 1);
+        assertEquals(SmsSender.STATUS_DELIVERED, status);
+    }
+
+    @Test
+    public void jobStatusCountsEachMessageOnce() throws IOException {
+        SmsSender.JobStatus job = new SmsSender.JobStatus("job", 1000, new ArrayList<SmsSender.MessageStatus>());
+        String[] statuses = {SmsSender.STATUS_QUEUED, SmsSender.STATUS_QUEUED, SmsSender.STATUS_SENDING,
+            SmsSender.STATUS_SENT, SmsSender.STATUS_DELIVERED, SmsSender.STATUS_FAILED, SmsSender.STATUS_UNCONFIRMED};
+        for (int i = 0; i < statuses.length; i++) {
+            job.count(statuses[i]);
+            job.add(new SmsSender.MessageStatus(i + 1, "+100" + i, statuses[i],
+                SmsSender.STATUS_FAILED.equals(statuses[i]) ? 1 : null));
+        }
+
+        assertEquals(7, job.getTotal());
+        assertEquals(2, job.getQueued());
+        String json = new String(new JsonCodec().encode(job), StandardCharsets.UTF_8);
+        assertTrue(json, json.startsWith("{\"jobId\":\"job\",\"created\":1000,\"total\":7,\"queued\":2,"
+            + "\"sending\":1,\"sent\":1,\"delivered\":1,\"failed\":1,\"unconfirmed\":1,\"messages\":["));
+        assertTrue(json, json.contains("{\"id\":6,\"address\":\"+1005\",\"status\":\"failed\",\"errorCode\":1}"));
+    }
+}
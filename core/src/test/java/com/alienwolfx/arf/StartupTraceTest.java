@@ -0,0 +1,37 @@
+package com.alienwolfx.arf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StartupTraceTest {
+
+    @Test
+    public void ordersPhasesFromTheEarliestMark() {
+        StartupTrace trace = new StartupTrace();
+        long now = System.nanoTime();
+        trace.markAt(StartupTrace.BOUND, now);
+        trace.markAt("boot_completed", now - 1500000000L);
+        trace.markAt(StartupTrace.READY, now + 250000000L);
+
+        Map<String, Long> phases = trace.getPhaseMillis();
+        assertEquals(Arrays.asList("boot_completed", StartupTrace.BOUND, StartupTrace.READY),
+            new ArrayList<>(phases.keySet()));
+        assertEquals(Long.valueOf(1500), phases.get(StartupTrace.BOUND));
+        assertEquals(1750, trace.getMillisBetween("boot_completed", StartupTrace.READY));
+        assertEquals(-1, trace.getMillisBetween(StartupTrace.BOUND, StartupTrace.FIRST_RESPONSE));
+    }
+
+    @Test
+    public void keepsTheFirstTimeOfEachPhase() {
+        StartupTrace trace = new StartupTrace();
+        trace.markAt(StartupTrace.BOUND, 1000000L);
+        trace.markAt(StartupTrace.FIRST_RESPONSE, 3000000L);
+        trace.mark(StartupTrace.FIRST_RESPONSE);
+        assertEquals(2, trace.getMillisBetween(StartupTrace.BOUND, StartupTrace.FIRST_RESPONSE));
+    }
+}
@@ -0,0 +1,43 @@
+package com.alienwolfx.arf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StaticAssetsTest {
+
+    @Test
+    public void normalizesPathsInsideTheRoot() {
+        assertEquals("index.html", StaticAssets.normalize("/"));
+        assertEquals("docs/index.html", StaticAssets.normalize("/docs/"));
+        assertEquals("js/app.js", StaticAssets.normalize("/js/app.js"));
+        assertNull(StaticAssets.normalize("/../secret"));
+        assertNull(StaticAssets.normalize("/js/./app.js"));
+        assertNull(StaticAssets.normalize("/js//app.js"));
+        assertNull(StaticAssets.normalize("/js\\..\\app.js"));
+        assertNull(StaticAssets.normalize("relative"));
+    }
+
+    @Test
+    public void parsesSingleByteRanges() {
+        assertArrayEquals(new long[] {0, 99}, StaticAssets.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[] {500, 999}, StaticAssets.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[] {900, 999}, StaticAssets.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[] {0, 999}, StaticAssets.parseRange("bytes=-5000", 1000));
+        assertArrayEquals(new long[] {990, 999}, StaticAssets.parseRange("bytes=990-5000", 1000));
+    }
+
+    @Test
+    public void ignoresOrRejectsOtherRanges() {
+        assertNull(StaticAssets.parseRange(null, 1000));
+        assertNull(StaticAssets.parseRange("bytes=0-1,5-6", 1000));
+        assertNull(StaticAssets.parseRange("items=0-1", 1000));
+        assertNull(StaticAssets.parseRange("bytes=9-2", 1000));
+        assertNull(StaticAssets.parseRange("bytes=a-b", 1000));
+
+        long[] unsatisfiable = StaticAssets.parseRange("bytes=1000-", 1000);
+        assertNotNull(unsatisfiable);
+        assertEquals(0, unsatisfiable.length);
+        assertEquals(0, StaticAssets.parseRange("bytes=-0", 1000).length);
+    }
+}
@@ -0,0 +1,179 @@
+package com.alienwolfx.arf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.*;
+
+public class StockApiProxyTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean blocking;
+    private NanoHTTPD stock;
+    private StockApiProxy proxy;
+
+    @Before
+    public void setUp() throws IOException {
+        // Stands in for the vendor daemon: counts calls and echoes what it was sent
+        stock = new NanoHTTPD(0) {
+            @Override
+            public Response serve(IHTTPSession session) {
+                calls.incrementAndGet();
+                if (session.getMethod() == Method.POST) {
+                    // Unread body bytes would be taken for the next request on the kept-alive connection
+                    try {
+                        session.parseBody(new HashMap<String, String>());
+                    } catch (IOException | ResponseException e) {
+                        return newFixedLengthResponse(Response.Status.BAD_REQUEST, "text/plain", e.getMessage());
+                    }
+                }
+                if (blocking && session.getMethod() == Method.GET) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (session.getUri().equals("/private")) {
+                    Response response = newFixedLengthResponse(Response.Status.OK, "application/json", "{}");
+                    response.addHeader("Cache-Control", "no-store");
+                    return response;
+                }
+                String body = "{\"uri\":\"" + session.getUri() + "\",\"query\":\"" + session.getQueryParameterString()
+                    + "\",\"method\":\"" + session.getMethod() + "\",\"call\":" + calls.get() + "}";
+                return newFixedLengthResponse(Response.Status.OK, "application/json", body);
+            }
+        };
+        stock.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        proxy = new StockApiProxy("http://127.0.0.1:" + stock.getListeningPort() + "/", 2, 2000, 5000,
+            60000, 16, 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        stock.stop();
+    }
+
+    @Test
+    public void coalescesIdenticalGetsInFlight() throws Exception {
+        blocking = true;
+        ExecutorService clients = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<StockApiProxy.Reply>> replies = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                replies.add(clients.submit(() -> proxy.get("/goform/get", "cmd=signal", noHeaders(), false)));
+            }
+            // Let every client reach the proxy before upstream answers
+            long deadline = System.currentTimeMillis() + 5000;
+            while (proxy.getCoalesced() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<StockApiProxy.Reply> reply : replies) {
+                assertEquals(200, reply.get(5, TimeUnit.SECONDS).getStatus());
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, proxy.getUpstreamCalls());
+        assertEquals(5, proxy.getCoalesced());
+    }
+
+    @Test
+    public void cachesGetsPerQueryAndCookie() throws IOException {
+        String first = body(proxy.get("/goform/get", "cmd=a", noHeaders(), false));
+        assertTrue(first, first.contains("\"query\":\"cmd=a\""));
+        assertEquals(first, body(proxy.get("/goform/get", "cmd=a", noHeaders(), false)));
+        assertEquals(1, proxy.getCacheHits());
+
+        proxy.get("/goform/get", "cmd=b", noHeaders(), false);
+        proxy.get("/goform/get", "cmd=a", Collections.singletonMap("cookie", "stok=1"), false);
+        assertEquals(3, calls.get());
+
+        String fresh = body(proxy.get("/goform/get", "cmd=a", noHeaders(), true));
+        assertTrue(fresh, fresh.contains("\"call\":4"));
+    }
+
+    @Test
+    public void doesNotCacheWhatUpstreamMarksUncacheable() throws IOException {
+        proxy.get("/private", null, noHeaders(), false);
+        proxy.get("/private", null, noHeaders(), false);
+        assertEquals(2, calls.get());
+        assertEquals(0, proxy.getCacheHits());
+    }
+
+    @Test
+    public void postsGoThroughAndDropTheCache() throws IOException {
+        proxy.get("/goform/get", "cmd=a", noHeaders(), false);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("content-type", "application/x-www-form-urlencoded");
+        String posted = body(proxy.post("/goform/set", null, headers, "application/x-www-form-urlencoded",
+            "goformId=REBOOT".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(posted, posted.contains("\"method\":\"POST\""));
+
+        proxy.get("/goform/get", "cmd=a", noHeaders(), false);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void getOverlappingAPostIsNotCached() throws Exception {
+        blocking = true;
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            Future<StockApiProxy.Reply> read = client.submit(() -> proxy.get("/goform/get", "cmd=a", noHeaders(), false));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (calls.get() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            proxy.post("/goform/set", null, noHeaders(), "application/x-www-form-urlencoded",
+                "goformId=REBOOT".getBytes(StandardCharsets.UTF_8));
+            release.countDown();
+            assertEquals(200, read.get(5, TimeUnit.SECONDS).getStatus());
+        } finally {
+            client.shutdownNow();
+        }
+
+        proxy.get("/goform/get", "cmd=a", noHeaders(), false);
+        assertEquals(3, calls.get());
+        assertEquals(0, proxy.getCacheHits());
+    }
+
+    @Test
+    public void reportsUnreachableUpstream() {
+        stock.stop();
+        try {
+            proxy.get("/goform/get", null, noHeaders(), false);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals(1, proxy.getFailures());
+        }
+    }
+
+    private static Map<String, String> noHeaders() {
+        return Collections.emptyMap();
+    }
+
+    private static String body(StockApiProxy.Reply reply) {
+        return new String(reply.getBody(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,285 @@
+package com.alienwolfx.arf;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Canned providers for running {@link ArfServer} on a desktop JVM. Every call sleeps for
+ * the configured latency plus up to {@code jitterMs}, standing in for binder round trips
+ * and provider queries on a real device.
+ */
+public class FakeProviders {
+
+    private static final LinkState LINK = new LinkState("MOBILE", true, true, true,
+        Collections.singletonMap("rmnet0", Collections.singletonList("10.0.0.2")),
+        Arrays.asList("8.8.8.8", "8.8.4.4"), System.currentTimeMillis());
+
+    private final long latencyMs;
+    private final long jitterMs;
+
+    private FakeProviders(long latencyMs, long jitterMs) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+    }
+
+    public static Providers create(long latencyMs, long jitterMs, int smsCount) {
+        return create(latencyMs, jitterMs, smsCount, null, null);
+    }
+
+    /** {@code assets} and {@code stockApi} are used as-is; either may be null. */
+    public static Providers create(long latencyMs, long jitterMs, int smsCount, AssetSource assets,
+                                   StockApiProxy stockApi) {
+        FakeProviders fakes = new FakeProviders(latencyMs, jitterMs);
+        return new Providers(fakes.new Device(), fakes.new Network(),
+            fakes.new Sms(smsCount, 200), fakes.new Sender(), assets, stockApi);
+    }
+
+    private void pause() {
+        long delay = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** A field value that costs one simulated system-service round trip to read. */
+    private <T> Callable<T> slow(final T value) {
+        return () -> {
+            pause();
+            return value;
+        };
+    }
+
+    private class Device implements DeviceProvider {
+
+        @Override
+        public DeviceInfo getDeviceInfo() {
+            pause();
+            return new DeviceInfo("Host JVM", System.getProperty("java.vendor"),
+                System.getProperty("java.version"), "HOST0000", "000000000000000", "");
+        }
+
+        @Override
+        public SimInfo getSimInfo() {
+            pause();
+            return new SimInfo("Fake Carrier", "us", "310260", 5, "8901260000000000000");
+        }
+
+        @Override
+        public SystemResources getSystemResources() {
+            pause();
+            Runtime runtime = Runtime.getRuntime();
+            return new SystemResources(runtime.maxMemory() / (1024 * 1024), runtime.freeMemory() / (1024 * 1024),
+                64 * 1024, 32 * 1024);
+        }
+
+        @Override
+        public LazyFields getDeviceFields() {
+            return new LazyFields()
+                .add("model", () -> "Host JVM")
+                .add("manufacturer", () -> System.getProperty("java.vendor"))
+                .add("version", () -> System.getProperty("java.version"))
+                .add("serial", () -> "HOST0000")
+                .add("imei", slow("000000000000000"))
+                .add("esn", () -> "");
+        }
+
+        @Override
+        public LazyFields getSimFields() {
+            return new LazyFields()
+                .add("carrierName", slow("Fake Carrier"))
+                .add("countryIso", () -> "us")
+                .add("simOperator", () -> "310260")
+                .add("simState", () -> 5)
+                .add("simSerialNumber", slow("8901260000000000000"));
+        }
+
+        @Override
+        public LazyFields getResourceFields() {
+            final Runtime runtime = Runtime.getRuntime();
+            return new LazyFields()
+                .add("totalMemory", () -> runtime.maxMemory() / (1024 * 1024))
+                .add("availableMemory", () -> runtime.freeMemory() / (1024 * 1024))
+                .add("totalStorage", slow(64 * 1024))
+                .add("availableStorage", slow(32 * 1024));
+        }
+
+        @Override
+        public long getGcCount() {
+            long total = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                total += Math.max(0, bean.getCollectionCount());
+            }
+            return total;
+        }
+
+        @Override
+        public void start(Listener listener) {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    private class Network implements NetworkProvider {
+
+        @Override
+        public NetworkStats getNetworkStats() {
+            pause();
+            long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            return new NetworkStats(uptime * 10, uptime * 2, uptime * 20, uptime * 4, LINK,
+                "310260", "310", "260", -95,
+                Collections.singletonList(new CellSignal("lte", 3, -95, -95, -10, 12)));
+        }
+
+        @Override
+        public LazyFields getNetworkFields() {
+            final long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            return new LazyFields()
+                .add("mobileRxBytes", slow(uptime * 10))
+                .add("mobileTxBytes", slow(uptime * 2))
+                .add("totalRxBytes", slow(uptime * 20))
+                .add("totalTxBytes", slow(uptime * 4))
+                .add("networkType", LINK::getTransport)
+                .add("connected", LINK::isConnected)
+                .add("metered", LINK::isMetered)
+                .add("validated", LINK::isValidated)
+                .add("operator", () -> "310260")
+                .add("mcc", () -> "310")
+                .add("mnc", () -> "260")
+                .add("signalStrength", () -> -95)
+                .add("cells", slow(Collections.singletonList(new CellSignal("lte", 3, -95, -95, -10, 12))))
+                .add("ipAddresses", LINK::getIpAddresses)
+                .add("interfaces", LINK::getInterfaces)
+                .add("dnsServers", LINK::getDnsServers);
+        }
+
+        @Override
+        public void start(Listener listener) {
+            listener.onLinkChanged(LINK);
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    private class Sms implements SmsProvider {
+        // Newest first, like the provider's default sort
+        private final List<SmsMessage> messages;
+        private final SmsRing ring;
+
+        Sms(int count, int windowSize) {
+            long now = System.currentTimeMillis();
+            messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                messages.add(new SmsMessage(count - i, "+1555000" + (i % 100),
+                    "Test message " + (count - i), now - i * 60000L, i % 3 == 0 ? TYPE_SENT : TYPE_INBOX, true));
+            }
+            ring = new SmsRing(windowSize, now);
+        }
+
+        @Override
+        public SmsRing getRing() {
+            return ring;
+        }
+
+        @Override
+        public SmsListStream.Rows query(int type, SmsPosition before, SmsPosition after, int limit,
+                boolean ascending) {
+            pause();
+            List<SmsMessage> picked = new ArrayList<>();
+            for (SmsMessage message : messages) {
+                if ((type == SmsRing.TYPE_ANY || message.getType() == type)
+                        && (before == null || before.isOlder(message.getTimestamp(), message.getId()))
+                        && (after == null || after.isNewer(message.getTimestamp(), message.getId()))) {
+                    picked.add(message);
+                }
+            }
+            if (ascending) {
+                Collections.reverse(picked);
+            }
+            return new ListRows(picked.subList(0, Math.min(limit, picked.size())));
+        }
+
+        @Override
+        public void start(Listener listener) {
+            List<SmsMessage> window = messages.subList(0, Math.min(ring.getCapacity(), messages.size()));
+            ring.update(new ArrayList<>(window), window.size() == messages.size());
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    private class Sender implements SmsSender {
+        private final Map<String, SmsSender.JobStatus> jobs = new ConcurrentHashMap<>();
+
+        @Override
+        public String submit(List<String> addresses, List<String> bodies, boolean urgent) {
+            pause();
+            String jobId = UUID.randomUUID().toString();
+            JobStatus status = new JobStatus(jobId, System.currentTimeMillis(), null);
+            for (int i = 0; i < addresses.size(); i++) {
+                status.count(STATUS_SENT);
+            }
+            jobs.put(jobId, status);
+            return jobId;
+        }
+
+        @Override
+        public JobStatus getJob(String jobId, boolean details) {
+            return jobs.get(jobId);
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    private static final class ListRows implements SmsListStream.Rows {
+        private final List<SmsMessage> messages;
+        private int position = -1;
+        private SmsMessage current;
+
+        ListRows(List<SmsMessage> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public boolean next() {
+            if (++position >= messages.size()) {
+                return false;
+            }
+            current = messages.get(position);
+            return true;
+        }
+
+        @Override public long id() { return current.getId(); }
+        @Override public String address() { return current.getAddress(); }
+        @Override public String body() { return current.getBody(); }
+        @Override public long timestamp() { return current.getTimestamp(); }
+        @Override public int type() { return current.getType(); }
+        @Override public boolean read() { return current.isRead(); }
+        @Override public void close() { }
+    }
+}
@@ -0,0 +1,63 @@
+package com.alienwolfx.arf;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Starts {@link ArfServer} on a desktop JVM with {@link FakeProviders}.
+ *
+ * <pre>
+ * --port 8000 --latency-ms 5 --jitter-ms 10 --sms 5000 --data-dir build/host-data --webui-dir webui/dist
+ * --stock-url http://192.168.100.1 --admission off
+ * </pre>
+ */
+public class HostLauncher {
+
+    public static void main(String[] args) throws Exception {
+        int port = 8000;
+        long latencyMs = 0;
+        long jitterMs = 0;
+        int smsCount = 1000;
+        File dataDir = new File("build/host-data");
+        File webuiDir = null;
+        String stockUrl = null;
+        boolean admission = true;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(value); break;
+                case "--latency-ms": latencyMs = Long.parseLong(value); break;
+                case "--jitter-ms": jitterMs = Long.parseLong(value); break;
+                case "--sms": smsCount = Integer.parseInt(value); break;
+                case "--data-dir": dataDir = new File(value); break;
+                case "--webui-dir": webuiDir = new File(value); break;
+                case "--stock-url": stockUrl = value; break;
+                case "--admission": admission = !"off".equals(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (!dataDir.isDirectory() && !dataDir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + dataDir);
+        }
+
+        AssetSource assets = webuiDir != null ? new DirectoryAssetSource(webuiDir) : null;
+        // Same limits as on the device: two connections, 1s cache
+        StockApiProxy stockApi = stockUrl != null
+            ? new StockApiProxy(stockUrl, 2, 2000, 10000, 1000, 64, 1024 * 1024)
+            : null;
+        final ArfServer server = new ArfServer(port, dataDir,
+            FakeProviders.create(latencyMs, jitterMs, smsCount, assets, stockApi),
+            admission ? ArfServer.newAdmissionControl() : null);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            stopped.countDown();
+        }));
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+        System.out.println("Listening on http://127.0.0.1:" + server.getListeningPort()
+            + " (latency " + latencyMs + "ms + up to " + jitterMs + "ms)");
+        stopped.await();
+    }
+}
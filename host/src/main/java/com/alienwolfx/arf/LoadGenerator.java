@@ -0,0 +1,205 @@
+package com.alienwolfx.arf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop HTTP load generator. Requests are issued on a fixed schedule regardless of how
+ * fast the server answers, and latency is measured from the scheduled start, so a server
+ * that falls behind shows up as latency rather than as a quietly lower request rate.
+ *
+ * <pre>
+ * --url http://127.0.0.1:8000 --rate 200 --duration 30 --concurrency 64
+ * --mix 1000=4,1001=2,1002=2,1005=1,1006=1,1007=1,/metrics=1
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final String DEFAULT_MIX = "1000=4,1001=2,1002=2,1005=1,1006=1,1007=1,/metrics=1";
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private final String baseUrl;
+    private final double rate;
+    private final long durationMs;
+    private final int concurrency;
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+    private final String[] schedule;
+    private long elapsedNanos;
+
+    /** @param mix endpoint path to relative weight, e.g. {@code /api/v1/1000 -> 4} */
+    public LoadGenerator(String baseUrl, double rate, long durationMs, int concurrency, Map<String, Integer> mix) {
+        if (rate <= 0 || durationMs <= 0 || concurrency < 1 || mix.isEmpty()) {
+            throw new IllegalArgumentException("rate, duration, concurrency and mix must be positive");
+        }
+        this.baseUrl = baseUrl;
+        this.rate = rate;
+        this.durationMs = durationMs;
+        this.concurrency = concurrency;
+        List<String> slots = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            endpoints.put(entry.getKey(), new Endpoint(entry.getKey()));
+            for (int i = 0; i < entry.getValue(); i++) {
+                slots.add(entry.getKey());
+            }
+        }
+        this.schedule = slots.toArray(new String[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://127.0.0.1:8000";
+        double rate = 100;
+        long durationSeconds = 30;
+        int concurrency = 64;
+        String mix = DEFAULT_MIX;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--url": url = value; break;
+                case "--rate": rate = Double.parseDouble(value); break;
+                case "--duration": durationSeconds = Long.parseLong(value); break;
+                case "--concurrency": concurrency = Integer.parseInt(value); break;
+                case "--mix": mix = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        LoadGenerator generator = new LoadGenerator(url, rate, durationSeconds * 1000, concurrency, parseMix(mix));
+        generator.run();
+        System.out.print(generator.report());
+    }
+
+    /** Parses {@code 1000=4,/metrics=1}; bare function numbers map to {@code /api/v1/NNNN}. */
+    public static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("=");
+            String path = pair[0].startsWith("/") ? pair[0] : "/api/v1/" + pair[0];
+            mix.put(path, pair.length > 1 ? Integer.parseInt(pair[1]) : 1);
+        }
+        return mix;
+    }
+
+    public void run() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        Random random = new Random(42);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long total = (long) (rate * durationMs / 1000);
+        long begin = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            final long scheduled = begin + i * intervalNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final Endpoint endpoint = endpoints.get(schedule[random.nextInt(schedule.length)]);
+            workers.execute(() -> endpoint.call(baseUrl, scheduled));
+        }
+        workers.shutdown();
+        workers.awaitTermination(durationMs + READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        workers.shutdownNow();
+        elapsedNanos = System.nanoTime() - begin;
+    }
+
+    public Map<String, Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public String report() {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "target %.1f req/s for %d s, concurrency %d%n",
+            rate, durationMs / 1000, concurrency));
+        out.append(String.format(Locale.US, "%-16s %8s %9s %8s %9s %9s %9s %9s%n",
+            "endpoint", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        long requests = 0;
+        long errors = 0;
+        for (Endpoint endpoint : endpoints.values()) {
+            LatencyHistogram latency = endpoint.latency;
+            long[] counts = latency.snapshot();
+            out.append(String.format(Locale.US, "%-16s %8d %9.1f %7.2f%% %9.1f %9.1f %9.1f %9.1f%n",
+                endpoint.path, latency.getCount(), latency.getCount() / seconds, endpoint.getErrorRate() * 100,
+                latency.quantile(counts, 0.5) / 1000.0, latency.quantile(counts, 0.9) / 1000.0,
+                latency.quantile(counts, 0.99) / 1000.0, latency.getMaxMicros() / 1000.0));
+            requests += latency.getCount();
+            errors += endpoint.errors.get();
+        }
+        out.append(String.format(Locale.US, "total %d requests, %.1f req/s, %.2f%% errors%n",
+            requests, requests / seconds, requests == 0 ? 0 : errors * 100.0 / requests));
+        return out.toString();
+    }
+
+    /** Latency and error counts for one path; non-2xx/304 responses and I/O failures are errors. */
+    public static class Endpoint {
+        private final String path;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+
+        Endpoint(String path) {
+            this.path = path;
+        }
+
+        void call(String baseUrl, long scheduled) {
+            boolean ok = false;
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+                connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+                connection.setReadTimeout(READ_TIMEOUT_MS);
+                int status = connection.getResponseCode();
+                ok = (status >= 200 && status < 300) || status == 304;
+                // Drain the body so the connection can be reused for keep-alive
+                InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+                if (body != null) {
+                    try (InputStream in = body) {
+                        byte[] buffer = new byte[8192];
+                        while (in.read(buffer) != -1) {
+                            // discard
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+            latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled));
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getRequests() {
+            return latency.getCount();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public double getErrorRate() {
+            long requests = latency.getCount();
+            return requests == 0 ? 0 : (double) errors.get() / requests;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+}
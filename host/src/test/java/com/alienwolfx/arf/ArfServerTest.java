@@ -0,0 +1,408 @@
+package com.alienwolfx.arf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.junit.Assert.*;
+
+/**
+ * Boots the full server on the host JVM with fake providers and drives it over HTTP.
+ */
+public class ArfServerTest {
+
+    private static final String APP_JS = "console.log('arf');\n";
+
+    private File dataDir;
+    private File webuiDir;
+    private NanoHTTPD stock;
+    private ArfServer server;
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        dataDir = createTempDir("arf-host");
+        webuiDir = createTempDir("arf-webui");
+        write(new File(webuiDir, "index.html"), "<!doctype html><title>Arf</title>".getBytes(StandardCharsets.UTF_8));
+        write(new File(webuiDir, "app.0123abcd.js"), APP_JS.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(APP_JS.getBytes(StandardCharsets.UTF_8));
+        }
+        write(new File(webuiDir, "app.0123abcd.js.gz"), gzipped.toByteArray());
+
+        stock = new NanoHTTPD(0) {
+            @Override
+            public Response serve(IHTTPSession session) {
+                return newFixedLengthResponse(Response.Status.OK, "application/json",
+                    "{\"result\":\"" + session.getUri() + "?" + session.getQueryParameterString() + "\"}");
+            }
+        };
+        stock.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        StockApiProxy stockApi = new StockApiProxy("http://127.0.0.1:" + stock.getListeningPort(), 2, 2000, 5000,
+            60000, 16, 1024 * 1024);
+
+        server = new ArfServer(0, dataDir,
+            FakeProviders.create(0, 0, 500, new DirectoryAssetSource(webuiDir), stockApi));
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        baseUrl = "http://127.0.0.1:" + server.getListeningPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        stock.stop();
+        deleteDir(dataDir);
+        deleteDir(webuiDir);
+    }
+
+    @Test
+    public void servesProviderBackedRoutes() throws IOException {
+        String device = get("/api/v1/1000");
+        assertTrue(device, device.contains("\"success\":true"));
+        assertTrue(device, device.contains("Host JVM"));
+
+        String sim = get("/api/v1/1005");
+        assertTrue(sim, sim.contains("Fake Carrier"));
+
+        String sms = get("/api/v1/1002?box=all&limit=3");
+        assertTrue(sms, sms.contains("Test message 500"));
+        assertFalse(sms, sms.contains("Test message 497"));
+    }
+
+    @Test
+    public void networkStatsIncludeLinkAndCells() throws IOException {
+        String network = get("/api/v1/1006");
+        assertTrue(network, network.contains("\"interfaces\":{\"rmnet0\":[\"10.0.0.2\"]}"));
+        assertTrue(network, network.contains("\"ipAddresses\":[\"10.0.0.2\"]"));
+        assertTrue(network, network.contains("\"rsrp\":-95"));
+    }
+
+    @Test
+    public void fieldsProjectTelemetryRoutes() throws IOException {
+        assertEquals("{\"success\":true,\"message\":\"Success\",\"data\":{\"signalStrength\":-95}}",
+            get("/api/v1/1006?fields=signalStrength"));
+        assertEquals("{\"success\":true,\"message\":\"Success\",\"data\":{\"model\":\"Host JVM\",\"serial\":\"HOST0000\"}}",
+            get("/api/v1/1000?fields=serial,model"));
+
+        String unknown = get("/api/v1/1005?fields=carrierName,bogus");
+        assertTrue(unknown, unknown.contains("Unknown field: bogus"));
+    }
+
+    @Test
+    public void pagesPastTheWindowThroughTheProvider() throws IOException {
+        // 500 fake messages one minute apart; the window holds the newest 200
+        long before = System.currentTimeMillis() - 400 * 60000L - 30000;
+        String sms = get("/api/v1/1002?box=all&limit=2&before=" + before);
+        assertTrue(sms, sms.contains("\"success\":true"));
+        assertTrue(sms, sms.contains("Test message 99"));
+        assertTrue(sms, sms.contains("\"beforeId\":98}"));
+    }
+
+    @Test
+    public void versionEtagsDoNotMatchAcrossRestarts() throws IOException {
+        HttpURLConnection first = open("/api/v1/1002?limit=2", "identity");
+        String before = first.getHeaderField("ETag");
+        read(first.getInputStream());
+        server.stop();
+        server = new ArfServer(0, dataDir, FakeProviders.create(0, 0, 500));
+        server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+        baseUrl = "http://127.0.0.1:" + server.getListeningPort();
+
+        HttpURLConnection revalidate = (HttpURLConnection) new URL(baseUrl + "/api/v1/1002?limit=2").openConnection();
+        revalidate.setRequestProperty("If-None-Match", before);
+        assertEquals(200, revalidate.getResponseCode());
+        read(revalidate.getInputStream());
+    }
+
+    @Test
+    public void smsDeltaRevalidatesAgainstItsOwnEtag() throws IOException {
+        HttpURLConnection delta = open("/api/v1/1008?since=0", "identity");
+        String etag = delta.getHeaderField("ETag");
+        read(delta.getInputStream());
+
+        HttpURLConnection revalidate = (HttpURLConnection) new URL(baseUrl + "/api/v1/1008?since=0").openConnection();
+        revalidate.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, revalidate.getResponseCode());
+    }
+
+    @Test
+    public void exportsMetricsWithGcCount() throws IOException {
+        get("/api/v1/1000");
+        String metrics = get("/metrics");
+        assertTrue(metrics, metrics.contains("arf_http_requests_total{route=\"1000\"} 1"));
+        assertTrue(metrics, metrics.contains("arf_process_gc_total"));
+    }
+
+    @Test
+    public void gzipsLargeBufferedBodiesWhenAccepted() throws IOException {
+        HttpURLConnection metrics = open("/metrics", "gzip, deflate");
+        assertEquals("gzip", metrics.getHeaderField("Content-Encoding"));
+        assertEquals("Accept-Encoding", metrics.getHeaderField("Vary"));
+        String text = read(new GZIPInputStream(metrics.getInputStream()));
+        assertTrue(text, text.contains("arf_http_gzip_responses_total"));
+
+        HttpURLConnection refused = open("/metrics", "gzip;q=0");
+        assertNull(refused.getHeaderField("Content-Encoding"));
+        assertTrue(read(refused.getInputStream()).contains("arf_http_gzip_output_bytes_total"));
+
+        // Small bodies are not worth the CPU
+        HttpURLConnection device = open("/api/v1/1000", "gzip");
+        assertNull(device.getHeaderField("Content-Encoding"));
+        assertTrue(read(device.getInputStream()).contains("Host JVM"));
+    }
+
+    @Test
+    public void gzipVariantsHaveTheirOwnEtags() throws IOException {
+        for (String path : new String[] {"/api/v1/1002?box=all&limit=20", "/app.0123abcd.js"}) {
+            HttpURLConnection identity = open(path, "identity");
+            String identityEtag = identity.getHeaderField("ETag");
+            read(identity.getInputStream());
+            HttpURLConnection gzipped = open(path, "gzip");
+            assertEquals("gzip", gzipped.getHeaderField("Content-Encoding"));
+            String gzipEtag = gzipped.getHeaderField("ETag");
+            read(gzipped.getInputStream());
+            assertNotEquals(identityEtag, gzipEtag);
+            assertTrue(gzipEtag, gzipEtag.endsWith("-gz\""));
+
+            HttpURLConnection revalidate = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            revalidate.setRequestProperty("Accept-Encoding", "gzip");
+            revalidate.setRequestProperty("If-None-Match", gzipEtag);
+            assertEquals(304, revalidate.getResponseCode());
+        }
+    }
+
+    @Test
+    public void servesWebUiAssets() throws IOException {
+        HttpURLConnection index = open("/", "gzip");
+        assertEquals("text/html; charset=utf-8", index.getContentType());
+        assertEquals("no-cache", index.getHeaderField("Cache-Control"));
+        assertEquals("<!doctype html><title>Arf</title>", read(index.getInputStream()));
+
+        HttpURLConnection gzipped = open("/app.0123abcd.js", "gzip");
+        assertEquals("gzip", gzipped.getHeaderField("Content-Encoding"));
+        assertEquals(StaticAssets.CACHE_IMMUTABLE, gzipped.getHeaderField("Cache-Control"));
+        assertEquals(APP_JS, read(new GZIPInputStream(gzipped.getInputStream())));
+
+        HttpURLConnection range = (HttpURLConnection) new URL(baseUrl + "/app.0123abcd.js").openConnection();
+        range.setRequestProperty("Range", "bytes=8-10");
+        assertEquals(206, range.getResponseCode());
+        assertNull(range.getHeaderField("Content-Encoding"));
+        assertEquals("bytes 8-10/" + APP_JS.length(), range.getHeaderField("Content-Range"));
+        assertEquals("log", read(range.getInputStream()));
+
+        HttpURLConnection revalidate = (HttpURLConnection) new URL(baseUrl + "/index.html").openConnection();
+        revalidate.setRequestProperty("If-None-Match", index.getHeaderField("ETag"));
+        assertEquals(304, revalidate.getResponseCode());
+
+        String missing = get("/missing.js");
+        assertTrue(missing, missing.contains("404 Not Found"));
+        assertTrue(get("/api/v1/1000").contains("Host JVM"));
+    }
+
+    @Test
+    public void proxiesTheStockApiAlsoInBatches() throws IOException {
+        assertEquals("{\"result\":\"/goform/get?cmd=signal&multi_data=1\"}",
+            get("/api/v1/1014?path=/goform/get&cmd=signal&multi_data=1"));
+        String missingPath = get("/api/v1/1014?cmd=signal");
+        assertTrue(missingPath, missingPath.contains("path must start with /"));
+
+        // Same upstream request as above, so it comes from the proxy cache
+        String body = postBatch("{\"requests\":[{\"funcNo\":1014,\"params\":"
+            + "{\"path\":\"/goform/get\",\"cmd\":\"signal\",\"multi_data\":\"1\"}}]}");
+        assertTrue(body, body.contains("\"body\":{\"result\":\"/goform/get?cmd=signal&multi_data=1\"}"));
+
+        String metrics = get("/metrics");
+        assertTrue(metrics, metrics.contains("arf_stock_api_calls_total 1"));
+        assertTrue(metrics, metrics.contains("arf_stock_api_cache_hits_total 1"));
+    }
+
+    @Test
+    public void rateLimitsExpensiveRoutesPerClient() throws IOException {
+        int status = 200;
+        HttpURLConnection connection = null;
+        for (int i = 0; i < 20 && status == 200; i++) {
+            connection = (HttpURLConnection) new URL(baseUrl + "/api/v1/1011?metric=cpu").openConnection();
+            status = connection.getResponseCode();
+            read(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+        }
+        assertEquals(429, status);
+        assertNotNull(connection.getHeaderField("Retry-After"));
+        // Other routes have their own buckets
+        assertEquals(200, open("/api/v1/1000", "identity").getResponseCode());
+        assertTrue(get("/metrics").contains("arf_http_rejected_total{reason=\"rate_limit\"} 1"));
+    }
+
+    @Test
+    public void admitsBatchItemsOnTheirOwnRoutes() throws IOException {
+        StringBuilder request = new StringBuilder("{\"requests\":[");
+        for (int i = 0; i < 16; i++) {
+            request.append(i > 0 ? "," : "").append("{\"funcNo\":1011,\"params\":{\"metric\":\"cpu\"}}");
+        }
+        String body = postBatch(request.append("]}").toString());
+
+        int admitted = body.split("\"status\":200", -1).length - 1;
+        assertTrue(body, admitted > 0 && admitted <= 10);
+        assertTrue(body, body.contains("\"status\":429") || body.contains("\"status\":503"));
+    }
+
+    @Test
+    public void reportsReadinessWithTheStartupTrace() throws IOException {
+        String ready = get("/ready");
+        assertTrue(ready, ready.contains("\"ready\":true"));
+        assertTrue(ready, ready.contains("\"bound\":0"));
+        assertFalse(ready, ready.contains("first_response"));
+
+        get("/api/v1/1000");
+        ready = get("/ready");
+        assertTrue(ready, ready.contains("\"first_response\":"));
+        assertFalse(ready, ready.contains("\"bindToFirstResponseMs\":-1"));
+        assertTrue(get("/metrics").contains("arf_startup_phase_seconds{phase=\"ready\"}"));
+    }
+
+    @Test
+    public void answers503UntilTheProvidersHaveStarted() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Providers fakes = FakeProviders.create(0, 0, 10);
+        final DeviceProvider device = fakes.getDevice();
+        // Holds up start() the way a slow TelephonyModel would
+        DeviceProvider slowDevice = (DeviceProvider) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {DeviceProvider.class}, (proxy, method, args) -> {
+                if (method.getName().equals("start")) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                return method.invoke(device, args);
+            });
+        File warmingDir = createTempDir("arf-warming");
+        final ArfServer warming = new ArfServer(0, warmingDir, new Providers(slowDevice, fakes.getNetwork(),
+            fakes.getSms(), fakes.getSmsSender(), new DirectoryAssetSource(webuiDir), null));
+        Thread starter = new Thread(() -> {
+            try {
+                warming.start(NanoHTTPD.SOCKET_READ_TIMEOUT, true);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        starter.start();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!warming.getStartupTrace().has(StartupTrace.BOUND) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            String url = "http://127.0.0.1:" + warming.getListeningPort();
+            assertEquals(503, status(url + "/api/v1/1000"));
+            assertEquals(503, status(url + "/ready"));
+            assertEquals(200, status(url + "/index.html"));
+
+            release.countDown();
+            starter.join(5000);
+            assertEquals(200, status(url + "/ready"));
+            assertEquals(200, status(url + "/api/v1/1000"));
+        } finally {
+            release.countDown();
+            warming.stop();
+            deleteDir(warmingDir);
+        }
+    }
+
+    @Test
+    public void loadGeneratorReportsPerEndpointResults() throws InterruptedException {
+        LoadGenerator generator = new LoadGenerator(baseUrl, 100, 1000, 8,
+            LoadGenerator.parseMix("1000=2,1007=1,9999=1"));
+        generator.run();
+
+        LoadGenerator.Endpoint device = generator.getEndpoints().get("/api/v1/1000");
+        LoadGenerator.Endpoint missing = generator.getEndpoints().get("/api/v1/9999");
+        long total = 0;
+        for (LoadGenerator.Endpoint endpoint : generator.getEndpoints().values()) {
+            total += endpoint.getRequests();
+        }
+        assertEquals(100, total);
+        assertEquals(0, device.getErrors());
+        assertTrue(device.getRequests() > 0);
+        assertEquals(missing.getRequests(), missing.getErrors());
+        assertTrue(generator.report(), generator.report().contains("/api/v1/1007"));
+    }
+
+    private static int status(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        int status = connection.getResponseCode();
+        read(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+        return status;
+    }
+
+    private String postBatch(String json) throws IOException {
+        HttpURLConnection batch = (HttpURLConnection) new URL(baseUrl + "/api/v1/batch").openConnection();
+        batch.setRequestMethod("POST");
+        batch.setDoOutput(true);
+        batch.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = batch.getOutputStream()) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(200, batch.getResponseCode());
+        return read(batch.getInputStream());
+    }
+
+    private String get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        return read(connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream());
+    }
+
+    private HttpURLConnection open(String path, String acceptEncoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        assertEquals(200, connection.getResponseCode());
+        return connection;
+    }
+
+    private static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        assertTrue(dir.delete() && dir.mkdirs());
+        return dir;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream body = in) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = body.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}